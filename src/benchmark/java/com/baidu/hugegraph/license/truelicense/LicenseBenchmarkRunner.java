@@ -0,0 +1,72 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.File;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.baidu.hugegraph.util.E;
+
+/**
+ * Run the license benchmarks once per thread count, the report of each run
+ * is saved as json to "<output>/license-benchmark-<threads>-threads.json".
+ * The jmh profilers like "gc" can be enabled by the optional 4th argument.
+ */
+public class LicenseBenchmarkRunner {
+
+    private static final String NO_PROFILER = "none";
+
+    public static void main(String[] args) throws RunnerException {
+        E.checkArgument(args.length >= 2,
+                        "Usage: LicenseBenchmarkRunner <threads,...> " +
+                        "<output> [include] [profilers|none]");
+        // The regexp of benchmarks to run, all license benchmarks by default
+        String include = args.length > 2 ? args[2] : "License\\w*Benchmark";
+        String profilers = args.length > 3 ? args[3] : NO_PROFILER;
+        File output = new File(args[1]);
+        E.checkState(output.isDirectory() || output.mkdirs(),
+                     "Failed to create output directory '%s'", output);
+
+        for (String threads : args[0].split(",")) {
+            int count = Integer.parseInt(threads.trim());
+            File result = new File(output, String.format(
+                                   "license-benchmark-%s-threads.json", count));
+            ChainedOptionsBuilder builder = new OptionsBuilder()
+                                           .include(include)
+                                           .threads(count)
+                                           .resultFormat(ResultFormatType.JSON)
+                                           .result(result.getPath());
+            for (String profiler : profilers.split(",")) {
+                profiler = profiler.trim();
+                if (!profiler.isEmpty() && !NO_PROFILER.equals(profiler)) {
+                    builder.addProfiler(profiler);
+                }
+            }
+            Options options = builder.build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.prefs.Preferences;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.apache.commons.codec.Charsets;
+import org.apache.commons.io.FileUtils;
+
+import com.baidu.hugegraph.license.LicenseInstallParam;
+import com.baidu.hugegraph.license.LicenseManager.VerifyCallback;
+import com.baidu.hugegraph.license.truelicense.TrueLicenseCreator.CustomKeyStoreParam;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import de.schlichtherle.license.CipherParam;
+import de.schlichtherle.license.DefaultCipherParam;
+import de.schlichtherle.license.DefaultLicenseParam;
+import de.schlichtherle.license.KeyStoreParam;
+import de.schlichtherle.license.LicenseContent;
+import de.schlichtherle.license.LicenseParam;
+
+/**
+ * Shared setup of license benchmarks, which use the test key stores and
+ * write licenses to temporary files
+ */
+final class LicenseBenchmarkUtil {
+
+    static final String DIR = "src/test/resources/";
+    static final String SERVER_ID = "server-1";
+
+    private static final Charset CHARSET = Charsets.UTF_8;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final X500Principal ISSUER = new X500Principal(
+            "CN=liningrui, OU=baidu, O=hugegraph, L=beijing, ST=beijing, C=cn");
+
+    private LicenseBenchmarkUtil() {
+    }
+
+    /**
+     * Write a copy of the config with license_path pointing to a temporary
+     * file, return the path of the new config
+     */
+    static String tempConfig(String config, File license)
+                             throws IOException {
+        File file = new File(DIR + config);
+        ObjectNode node = (ObjectNode) MAPPER.readTree(
+                          FileUtils.readFileToString(file, CHARSET));
+        node.put("license_path", license.getPath());
+
+        File temp = File.createTempFile("license-config", ".json");
+        temp.deleteOnExit();
+        FileUtils.writeStringToFile(temp, MAPPER.writeValueAsString(node),
+                                    CHARSET);
+        return temp.getPath();
+    }
+
+    static File tempLicense() throws IOException {
+        File license = File.createTempFile("hugegraph-benchmark", ".license");
+        license.deleteOnExit();
+        return license;
+    }
+
+    static File createLicense() throws IOException {
+        File license = tempLicense();
+        String config = tempConfig("create-license.json", license);
+        TrueLicenseCreator.build(config).create();
+        return license;
+    }
+
+    /**
+     * Build the license content with the specified number of servers in
+     * the extra params
+     */
+    static LicenseContent newContent(int servers) throws IOException {
+        List<Map<String, Object>> params = new ArrayList<>(servers);
+        for (int i = 0; i < servers; i++) {
+            Map<String, Object> param = new HashMap<>();
+            param.put("id", "server-" + i);
+            param.put("graphs", 3);
+            param.put("ip", "10.0." + (i / 256) % 256 + "." + i % 256);
+            param.put("mac", String.format("6c-92-bf-3a-%02x-%02x",
+                                           (i >> 8) & 0xff, i & 0xff));
+            params.add(param);
+        }
+
+        LicenseContent content = new LicenseContent();
+        content.setHolder(ISSUER);
+        content.setIssuer(ISSUER);
+        content.setSubject("hugegraph-evaluation");
+        content.setIssued(new Date(1564588800000L));
+        content.setNotBefore(new Date(1564588800000L));
+        content.setNotAfter(new Date(1880121600000L));
+        content.setConsumerType("user");
+        content.setConsumerAmount(1);
+        content.setInfo("description");
+        content.setExtra(MAPPER.writeValueAsString(params));
+        return content;
+    }
+
+    static TrueLicenseManager newManager(File license) throws IOException {
+        String config = tempConfig("verify-license.json", license);
+        LicenseInstallParam param = MAPPER.readValue(
+                                    FileUtils.readFileToString(
+                                    new File(config), CHARSET),
+                                    LicenseInstallParam.class);
+        VerifyCallback callback = params -> {
+            if (params.matchParam(SERVER_ID) == null) {
+                throw new IllegalStateException(String.format(
+                          "The current server id '%s' is not authorized",
+                          SERVER_ID));
+            }
+        };
+        return new TrueLicenseManager(wrapLicenseParam(param), param,
+                                      callback);
+    }
+
+    private static LicenseParam wrapLicenseParam(LicenseInstallParam param) {
+        // Don't share the preferences node with the library and tests
+        Preferences preferences = Preferences.userRoot().node(
+                                  "/com/baidu/hugegraph/license/benchmark");
+        CipherParam cipherParam = new DefaultCipherParam(
+                                  param.storePassword());
+        KeyStoreParam keyStoreParam = new CustomKeyStoreParam(
+                                      TrueLicenseManager.class,
+                                      param.publicKeyPath(),
+                                      param.publicAlias(),
+                                      param.storePassword(),
+                                      null);
+        return new DefaultLicenseParam(param.subject(), preferences,
+                                       keyStoreParam, cipherParam);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.schlichtherle.license.LicenseContent;
+import de.schlichtherle.xml.PersistenceService;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LicenseDecodeBenchmark {
+
+    @Param({"1", "100", "10000"})
+    private int extraParams;
+
+    private String extra;
+    private String content;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        LicenseContent content = LicenseBenchmarkUtil.newContent(
+                                 this.extraParams);
+        this.extra = (String) content.getExtra();
+        this.content = PersistenceService.store2String(content);
+    }
+
+    @Benchmark
+    public LicenseContent decode() {
+        return LicenseContentDecoder.fastDecode(this.content);
+    }
+
+    @Benchmark
+    public Object decodeWithXmlDecoder() throws Exception {
+        return LicenseContentDecoder.xmlDecode(this.content);
+    }
+
+    @Benchmark
+    public ExtraParamIndex parseExtraParams() {
+        return TrueLicenseManager.readExtraParamIndex(this.extra);
+    }
+
+    @Benchmark
+    public ExtraParamIndex parseExtraParamsWithCache() {
+        return TrueLicenseManager.parseExtraParamIndex(this.extra);
+    }
+}
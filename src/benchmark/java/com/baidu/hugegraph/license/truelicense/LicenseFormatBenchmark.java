@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.baidu.hugegraph.license.truelicense.TrueLicenseCreator.CustomKeyStoreParam;
+
+import de.schlichtherle.license.DefaultCipherParam;
+import de.schlichtherle.license.KeyStoreParam;
+import de.schlichtherle.license.LicenseContent;
+import de.schlichtherle.license.LicenseNotary;
+import de.schlichtherle.license.PrivacyGuard;
+import de.schlichtherle.xml.GenericCertificate;
+
+/**
+ * Compare the size and decode time of the XML license, binary license and
+ * license bundle with the same content, the key sizes are printed in the
+ * benchmark log. A node verifies only its own entry of the bundle.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LicenseFormatBenchmark {
+
+    private static final String PASSWORD = "a123456";
+    // The server id existing in the extra params of any size
+    private static final String SERVER_ID = "server-0";
+
+    @Param({"1", "100", "10000"})
+    private int extraParams;
+
+    private PrivacyGuard guard;
+    private LicenseNotary notary;
+    private PublicKey publicKey;
+    private byte[] xmlKey;
+    private byte[] binaryKey;
+    private byte[] bundleKey;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        LicenseContent content = LicenseBenchmarkUtil.newContent(
+                                 this.extraParams);
+        KeyStoreParam privateParam = new CustomKeyStoreParam(
+                                     TrueLicenseCreator.class,
+                                     LicenseBenchmarkUtil.DIR +
+                                     "privateKeys.store",
+                                     "privatekey", PASSWORD, PASSWORD);
+        KeyStoreParam publicParam = new CustomKeyStoreParam(
+                                    TrueLicenseManager.class,
+                                    LicenseBenchmarkUtil.DIR +
+                                    "publicCerts.store",
+                                    "publiccert", PASSWORD, null);
+        this.guard = new PrivacyGuard(new DefaultCipherParam(PASSWORD));
+        this.xmlKey = this.guard.cert2key(new ConcurrentLicenseNotary(
+                                          privateParam).sign(content));
+        PrivateKey privateKey = KeyStoreCache.privateKey(privateParam);
+        this.binaryKey = BinaryLicense.sign(content, privateKey).toBytes();
+        this.bundleKey = LicenseBundle.sign(content, privateKey,
+                                            SignatureProviders.of(privateKey))
+                                      .toBytes();
+        this.notary = new ConcurrentLicenseNotary(publicParam);
+        this.publicKey = KeyStoreCache.publicKey(publicParam);
+        System.out.printf("License size with %s extra params: xml %s " +
+                          "bytes, binary %s bytes, bundle %s bytes%n",
+                          this.extraParams, this.xmlKey.length,
+                          this.binaryKey.length, this.bundleKey.length);
+    }
+
+    @Benchmark
+    public LicenseContent decodeXmlLicense() throws Exception {
+        GenericCertificate certificate = this.guard.key2cert(this.xmlKey);
+        return LicenseContentDecoder.decode(certificate.getEncoded());
+    }
+
+    @Benchmark
+    public LicenseContent decodeBinaryLicense() {
+        return BinaryLicense.parse(this.binaryKey).decode();
+    }
+
+    @Benchmark
+    public LicenseContent verifyXmlLicense() throws Exception {
+        GenericCertificate certificate = this.guard.key2cert(this.xmlKey);
+        this.notary.verify(certificate);
+        return LicenseContentDecoder.decode(certificate.getEncoded());
+    }
+
+    @Benchmark
+    public LicenseContent verifyBinaryLicense() throws Exception {
+        BinaryLicense license = BinaryLicense.parse(this.binaryKey);
+        license.verify(this.publicKey);
+        return license.decode();
+    }
+
+    @Benchmark
+    public LicenseContent verifyBundleEntry() throws Exception {
+        byte[] entry = LicenseBundle.parse(this.bundleKey).entry(SERVER_ID);
+        BinaryLicense license = BinaryLicense.parse(entry);
+        license.verify(this.publicKey);
+        return license.decode();
+    }
+}
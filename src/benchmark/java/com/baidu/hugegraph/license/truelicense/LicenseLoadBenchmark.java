@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.baidu.hugegraph.license.truelicense.TrueLicenseCreator.CustomKeyStoreParam;
+
+import de.schlichtherle.license.DefaultCipherParam;
+import de.schlichtherle.license.KeyStoreParam;
+import de.schlichtherle.license.LicenseContent;
+import de.schlichtherle.license.PrivacyGuard;
+import de.schlichtherle.xml.GenericCertificate;
+
+/**
+ * Compare loading the XML license file to LicenseContent by the streams of
+ * TrueLicense and by the channel read and byte buffers, run it with
+ * -Dbenchmark.profilers=gc to see the allocated bytes per operation
+ * (gc.alloc.rate.norm). The signature check is the same for both and not
+ * included.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LicenseLoadBenchmark {
+
+    private static final String PASSWORD = "a123456";
+    // The max size read by LicenseManager.loadLicenseKey()
+    private static final int LEGACY_MAX_SIZE = 1024 * 1024;
+
+    @Param({"1", "100", "10000"})
+    private int extraParams;
+
+    private File license;
+    private PrivacyGuard legacyGuard;
+    private ByteBufferPrivacyGuard guard;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        LicenseContent content = LicenseBenchmarkUtil.newContent(
+                                 this.extraParams);
+        KeyStoreParam privateParam = new CustomKeyStoreParam(
+                                     TrueLicenseCreator.class,
+                                     LicenseBenchmarkUtil.DIR +
+                                     "privateKeys.store",
+                                     "privatekey", PASSWORD, PASSWORD);
+        this.legacyGuard = new PrivacyGuard(new DefaultCipherParam(PASSWORD));
+        this.guard = new ByteBufferPrivacyGuard(new DefaultCipherParam(
+                                                PASSWORD));
+        byte[] key = this.legacyGuard.cert2key(new ConcurrentLicenseNotary(
+                                               privateParam).sign(content));
+        this.license = LicenseBenchmarkUtil.tempLicense();
+        FileUtils.writeByteArrayToFile(this.license, key);
+    }
+
+    @Benchmark
+    public LicenseContent loadByStreams() throws Exception {
+        byte[] key = legacyLoadLicenseKey(this.license);
+        GenericCertificate certificate = this.legacyGuard.key2cert(key);
+        return LicenseContentDecoder.decode(certificate.getEncoded());
+    }
+
+    @Benchmark
+    public LicenseContent loadByBuffers() throws Exception {
+        byte[] key = TrueLicenseManager.readLicenseKey(this.license);
+        GenericCertificate certificate = this.guard.key2cert(key);
+        return LicenseContentDecoder.decode(certificate.getEncoded());
+    }
+
+    /**
+     * The same as LicenseManager.loadLicenseKey(), which is protected
+     */
+    private static byte[] legacyLoadLicenseKey(File file) throws IOException {
+        int size = Math.min((int) file.length(), LEGACY_MAX_SIZE);
+        byte[] key = new byte[size];
+        try (InputStream input = new FileInputStream(file)) {
+            input.read(key);
+        }
+        return key;
+    }
+}
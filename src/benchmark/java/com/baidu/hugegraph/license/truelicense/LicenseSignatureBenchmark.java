@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.baidu.hugegraph.license.truelicense.TrueLicenseCreator.CustomKeyStoreParam;
+
+import de.schlichtherle.license.KeyStoreParam;
+import de.schlichtherle.license.LicenseContent;
+
+/**
+ * Compare the sign and verify cost of the signature algorithms: the DSA
+ * and EC P-256 keys are from the test key stores, and the RSA 2048 key is
+ * generated since there is no RSA key store
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LicenseSignatureBenchmark {
+
+    private static final String PASSWORD = "a123456";
+
+    @Param({SignatureProviders.SHA1_WITH_DSA,
+            SignatureProviders.SHA256_WITH_ECDSA,
+            SignatureProviders.SHA256_WITH_RSA})
+    private String algorithm;
+
+    private LicenseContent content;
+    private PrivateKey privateKey;
+    private PublicKey publicKey;
+    private SignatureProvider provider;
+    private byte[] key;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        switch (this.algorithm) {
+            case SignatureProviders.SHA1_WITH_DSA:
+                this.loadKeys("privateKeys.store", "publicCerts.store");
+                break;
+            case SignatureProviders.SHA256_WITH_ECDSA:
+                this.loadKeys("ecPrivateKeys.store", "ecPublicCerts.store");
+                break;
+            default:
+                KeyPairGenerator generator = KeyPairGenerator.getInstance(
+                                             "RSA");
+                generator.initialize(2048);
+                KeyPair pair = generator.generateKeyPair();
+                this.privateKey = pair.getPrivate();
+                this.publicKey = pair.getPublic();
+                break;
+        }
+        this.content = LicenseBenchmarkUtil.newContent(1);
+        this.provider = SignatureProviders.get(this.algorithm);
+        this.key = BinaryLicense.sign(this.content, this.privateKey,
+                                      this.provider).toBytes();
+    }
+
+    private void loadKeys(String privateStore, String publicStore)
+                          throws Exception {
+        KeyStoreParam privateParam = new CustomKeyStoreParam(
+                                     TrueLicenseCreator.class,
+                                     LicenseBenchmarkUtil.DIR + privateStore,
+                                     "privatekey", PASSWORD, PASSWORD);
+        KeyStoreParam publicParam = new CustomKeyStoreParam(
+                                    TrueLicenseManager.class,
+                                    LicenseBenchmarkUtil.DIR + publicStore,
+                                    "publiccert", PASSWORD, null);
+        this.privateKey = KeyStoreCache.privateKey(privateParam);
+        this.publicKey = KeyStoreCache.publicKey(publicParam);
+    }
+
+    @Benchmark
+    public byte[] sign() throws Exception {
+        return BinaryLicense.sign(this.content, this.privateKey,
+                                  this.provider).toBytes();
+    }
+
+    @Benchmark
+    public BinaryLicense verify() throws Exception {
+        BinaryLicense license = BinaryLicense.parse(this.key);
+        license.verify(this.publicKey);
+        return license;
+    }
+}
@@ -19,20 +19,56 @@
 
 package com.baidu.hugegraph.cmd;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
 import org.apache.commons.io.FileUtils;
 
+import com.baidu.hugegraph.license.truelicense.LicenseFormat;
 import com.baidu.hugegraph.license.truelicense.TrueLicenseCreator;
+import com.baidu.hugegraph.license.truelicense.TrueLicensePipeline;
 
 public class GenerateLicense {
 
     private static final String DIR = "src/main/resources/";
 
-    public static void main(String[] args) throws IOException {
-        String configPath = DIR + "create-license.json";
+    private static final String PIPELINE = "--pipeline";
+    private static final String STDIN = "-";
+    private static final int PIPELINE_CAPACITY_PER_WORKER = 4;
+
+    /**
+     * Usage:
+     *   GenerateLicense [config] [xml|binary|bundle] [signature-algorithm]
+     *   GenerateLicense --pipeline [input|-] [parallelism]
+     * The pipeline mode reads NDJSON create params from the input file or
+     * stdin, and prints a json result line per record to stdout.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && PIPELINE.equals(args[0])) {
+            String input = args.length > 1 ? args[1] : STDIN;
+            int parallelism = args.length > 2 ?
+                              Integer.parseInt(args[2]) :
+                              Runtime.getRuntime().availableProcessors();
+            System.exit(pipeline(input, parallelism) ? 0 : 1);
+        }
+
+        String configPath = args.length > 0 ?
+                            args[0] : DIR + "create-license.json";
         TrueLicenseCreator creator = TrueLicenseCreator.build(configPath);
+        if (args.length > 1) {
+            creator.format(LicenseFormat.parse(args[1]));
+        }
+        if (args.length > 2) {
+            creator.signatureAlgorithm(args[2]);
+        }
         creator.create();
 
         @SuppressWarnings("deprecation")
@@ -40,4 +76,26 @@ public class GenerateLicense {
         System.out.printf("Generate license from config '%s':\n%s\n",
                           configPath, configContent);
     }
+
+    private static boolean pipeline(String input, int parallelism)
+                                    throws IOException, InterruptedException {
+        TrueLicensePipeline pipeline = new TrueLicensePipeline(
+                                       parallelism,
+                                       parallelism *
+                                       PIPELINE_CAPACITY_PER_WORKER);
+        InputStream in = STDIN.equals(input) ?
+                         System.in : new FileInputStream(input);
+        try (BufferedReader reader = new BufferedReader(
+                                     new InputStreamReader(
+                                     in, StandardCharsets.UTF_8))) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(
+                                               System.out,
+                                               StandardCharsets.UTF_8));
+            TrueLicensePipeline.Summary summary = pipeline.run(reader,
+                                                               writer);
+            // The results are on stdout, so print the summary to stderr
+            System.err.println(summary);
+            return summary.failures() == 0L;
+        }
+    }
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.cmd;
+
+import com.baidu.hugegraph.license.truelicense.TrueLicenseBatchCreator;
+import com.baidu.hugegraph.license.truelicense.TrueLicenseBatchCreator.BatchResult;
+import com.baidu.hugegraph.license.truelicense.TrueLicenseBatchCreator.Result;
+import com.baidu.hugegraph.util.E;
+
+public class GenerateLicenseBatch {
+
+    public static void main(String[] args) {
+        E.checkArgument(args.length >= 1,
+                        "Usage: GenerateLicenseBatch <manifest> " +
+                        "[parallelism]");
+        String manifestPath = args[0];
+        int parallelism = args.length > 1 ?
+                          Integer.parseInt(args[1]) :
+                          Runtime.getRuntime().availableProcessors();
+
+        TrueLicenseBatchCreator creator = TrueLicenseBatchCreator.build(
+                                          manifestPath, parallelism);
+        BatchResult batch = creator.create();
+        for (Result result : batch.results()) {
+            System.out.println(result);
+        }
+        System.out.printf("Generate licenses from manifest '%s' with " +
+                          "parallelism %s:\n%s\n",
+                          manifestPath, parallelism, batch);
+        if (batch.failures() > 0L) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+
+import com.baidu.hugegraph.license.LicenseManager;
+import com.baidu.hugegraph.license.LicenseParams;
+import com.baidu.hugegraph.util.E;
+import com.baidu.hugegraph.util.Log;
+
+/**
+ * AsyncLicenseManager runs the blocking operations of a LicenseManager on
+ * an executor and returns futures, so event loop threads never block on
+ * license checks. Concurrent calls of the same operation are coalesced:
+ * callers share the in-flight one instead of queueing up new ones.
+ */
+public class AsyncLicenseManager implements AutoCloseable {
+
+    private static final Logger LOG = Log.logger(AsyncLicenseManager.class);
+
+    private final LicenseManager manager;
+    private final Executor executor;
+    // Only shutdown the executor created by this manager
+    private final boolean ownExecutor;
+
+    private final AtomicReference<CompletableFuture<LicenseParams>> installing;
+    private final AtomicReference<CompletableFuture<Void>> uninstalling;
+    private final AtomicReference<CompletableFuture<LicenseParams>> verifying;
+
+    /**
+     * Run on virtual threads if the JVM supports, otherwise on a pool of
+     * daemon threads
+     */
+    public AsyncLicenseManager(LicenseManager manager) {
+        this(manager, defaultExecutor(), true);
+    }
+
+    public AsyncLicenseManager(LicenseManager manager, Executor executor) {
+        this(manager, executor, false);
+    }
+
+    private AsyncLicenseManager(LicenseManager manager, Executor executor,
+                                boolean ownExecutor) {
+        E.checkNotNull(manager, "manager");
+        E.checkNotNull(executor, "executor");
+        this.manager = manager;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+        this.installing = new AtomicReference<>();
+        this.uninstalling = new AtomicReference<>();
+        this.verifying = new AtomicReference<>();
+    }
+
+    public LicenseManager manager() {
+        return this.manager;
+    }
+
+    public CompletableFuture<LicenseParams> installLicense() {
+        return this.coalesce(this.installing, this.manager::installLicense);
+    }
+
+    public CompletableFuture<Void> uninstallLicense() {
+        return this.coalesce(this.uninstalling, () -> {
+            this.manager.uninstallLicense();
+            return null;
+        });
+    }
+
+    public CompletableFuture<LicenseParams> verifyLicense() {
+        return this.coalesce(this.verifying, this.manager::verifyLicense);
+    }
+
+    @Override
+    public void close() {
+        if (this.ownExecutor) {
+            ((ExecutorService) this.executor).shutdown();
+        }
+    }
+
+    private <T> CompletableFuture<T> coalesce(
+                AtomicReference<CompletableFuture<T>> inFlight,
+                Callable<T> task) {
+        CompletableFuture<T> future;
+        while ((future = inFlight.get()) == null) {
+            CompletableFuture<T> created = new CompletableFuture<>();
+            if (inFlight.compareAndSet(null, created)) {
+                this.execute(inFlight, created, task);
+                future = created;
+                break;
+            }
+        }
+        // Return a dependent future so callers can't complete the shared one
+        return future.thenApply(result -> result);
+    }
+
+    private <T> void execute(AtomicReference<CompletableFuture<T>> inFlight,
+                             CompletableFuture<T> future, Callable<T> task) {
+        try {
+            this.executor.execute(() -> {
+                T result;
+                try {
+                    result = task.call();
+                } catch (Throwable e) {
+                    // Detach before completing so that callbacks start anew
+                    inFlight.compareAndSet(future, null);
+                    future.completeExceptionally(e);
+                    return;
+                }
+                inFlight.compareAndSet(future, null);
+                future.complete(result);
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.compareAndSet(future, null);
+            future.completeExceptionally(e);
+        }
+    }
+
+    static ExecutorService defaultExecutor() {
+        try {
+            // Executors.newVirtualThreadPerTaskExecutor() since Java 21
+            Method method = Executors.class.getMethod(
+                            "newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOG.debug("Virtual threads are not supported, use thread pool");
+        }
+        // At most one task per operation is running due to coalescing
+        return Executors.newCachedThreadPool(
+               new BasicThreadFactory.Builder()
+                                     .namingPattern("license-async-%d")
+                                     .daemon(true)
+                                     .build());
+    }
+}
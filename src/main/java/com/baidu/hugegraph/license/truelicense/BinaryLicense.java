@@ -0,0 +1,413 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.security.auth.x500.X500Principal;
+
+import com.baidu.hugegraph.util.E;
+
+import de.schlichtherle.license.LicenseContent;
+import de.schlichtherle.xml.GenericCertificateIntegrityException;
+
+/**
+ * BinaryLicense is the compact license format, which is a signed and
+ * length-prefixed encoding of LicenseContent:
+ * <pre>
+ *   magic "HGLB" | version (1 byte) | flags (1 byte) |
+ *   content length (int) | content |
+ *   algorithm length (int) | algorithm | signature length (int) | signature
+ * </pre>
+ * The content is the sequence of subject, holder, issuer, issued,
+ * notBefore, notAfter, consumerType, consumerAmount, info and extra, each
+ * string is an int length (-1 for null) followed by the utf-8 bytes, and
+ * each date is a long of epoch millis (Long.MIN_VALUE for null). The
+ * content of large license like the one with thousands of servers in extra
+ * params is deflated, then it's prefixed by the int length of the raw
+ * content and the flags has FLAG_DEFLATED set. The signature covers all
+ * bytes from the magic to the end of the content.
+ */
+public final class BinaryLicense {
+
+    public static final byte VERSION = 1;
+    public static final byte FLAG_DEFLATED = 0x01;
+
+    private static final byte[] MAGIC = {'H', 'G', 'L', 'B'};
+    private static final int HEADER_LENGTH = MAGIC.length + 2;
+    private static final int CONTENT_OFFSET = HEADER_LENGTH + 4;
+    private static final int DEFLATE_THRESHOLD = 1024;
+    private static final int MAX_FIELD_LENGTH = 64 * 1024 * 1024;
+    private static final int BUF_SIZE = 8 * 1024;
+
+    private static final Charset CHARSET = StandardCharsets.UTF_8;
+    private static final int NULL_LENGTH = -1;
+    private static final long NULL_DATE = Long.MIN_VALUE;
+
+    // The bytes from the magic to the end of content, which are signed
+    private final byte[] signed;
+    private final byte flags;
+    private final String algorithm;
+    private final byte[] signature;
+
+    private BinaryLicense(byte[] signed, String algorithm, byte[] signature) {
+        this.signed = signed;
+        this.flags = signed[MAGIC.length + 1];
+        this.algorithm = algorithm;
+        this.signature = signature;
+    }
+
+    public static boolean isBinary(byte[] key) {
+        if (key == null || key.length < HEADER_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (key[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encode the content and sign it with the default signature provider
+     * of the private key
+     */
+    public static BinaryLicense sign(LicenseContent content, PrivateKey key)
+                                     throws GeneralSecurityException {
+        E.checkNotNull(key, "key");
+        return sign(content, key, SignatureProviders.of(key));
+    }
+
+    /**
+     * Encode the content and sign it with the private key by the provider
+     */
+    public static BinaryLicense sign(LicenseContent content, PrivateKey key,
+                                     SignatureProvider provider)
+                                     throws GeneralSecurityException {
+        E.checkNotNull(content, "content");
+        E.checkNotNull(key, "key");
+        E.checkNotNull(provider, "provider");
+        E.checkArgument(provider.supports(key),
+                        "The signature algorithm '%s' can't use %s key",
+                        provider.algorithm(), key.getAlgorithm());
+        byte[] body = encodeContent(content);
+        byte flags = 0;
+        if (body.length >= DEFLATE_THRESHOLD) {
+            body = deflate(body);
+            flags |= FLAG_DEFLATED;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(CONTENT_OFFSET + body.length);
+        buffer.put(MAGIC).put(VERSION).put(flags);
+        buffer.putInt(body.length).put(body);
+        byte[] signed = buffer.array();
+
+        Signature signature = provider.signature();
+        signature.initSign(key);
+        signature.update(signed);
+        return new BinaryLicense(signed, provider.algorithm(),
+                                 signature.sign());
+    }
+
+    /**
+     * Parse the license key without verifying the signature
+     * @throws IllegalArgumentException if the key is not a valid binary
+     *                                  license
+     */
+    public static BinaryLicense parse(byte[] key) {
+        E.checkArgument(isBinary(key), "Invalid binary license header");
+        byte version = key[MAGIC.length];
+        E.checkArgument(version == VERSION,
+                        "Unsupported binary license version %s, expect %s",
+                        version, VERSION);
+        byte flags = key[MAGIC.length + 1];
+        E.checkArgument((flags & ~FLAG_DEFLATED) == 0,
+                        "Unsupported binary license flags %s", flags);
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(key);
+            ((Buffer) buffer).position(HEADER_LENGTH);
+            int contentLength = readLength(buffer);
+            ((Buffer) buffer).position(buffer.position() + contentLength);
+            byte[] signed = Arrays.copyOf(key, buffer.position());
+
+            String algorithm = readString(buffer);
+            E.checkArgument(algorithm != null,
+                            "The signature algorithm can't be null");
+            byte[] signature = readBytes(buffer);
+            E.checkArgument(signature != null, "The signature can't be null");
+            E.checkArgument(!buffer.hasRemaining(),
+                            "Unexpected %s trailing bytes of binary license",
+                            buffer.remaining());
+            return new BinaryLicense(signed, algorithm, signature);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException |
+                 IllegalArgumentException e) {
+            throw new IllegalArgumentException(
+                      "Invalid binary license: " + e.getMessage(), e);
+        }
+    }
+
+    public byte[] toBytes() {
+        byte[] algorithm = this.algorithm.getBytes(CHARSET);
+        ByteBuffer buffer = ByteBuffer.allocate(this.signed.length +
+                                                4 + algorithm.length +
+                                                4 + this.signature.length);
+        buffer.put(this.signed);
+        buffer.putInt(algorithm.length).put(algorithm);
+        buffer.putInt(this.signature.length).put(this.signature);
+        return buffer.array();
+    }
+
+    public String algorithm() {
+        return this.algorithm;
+    }
+
+    public boolean deflated() {
+        return (this.flags & FLAG_DEFLATED) != 0;
+    }
+
+    /**
+     * The encoded content without the header, which is inflated if the
+     * content is deflated
+     */
+    public byte[] content() {
+        if (this.deflated()) {
+            return inflate(this.signed, CONTENT_OFFSET);
+        }
+        return Arrays.copyOfRange(this.signed, CONTENT_OFFSET,
+                                  this.signed.length);
+    }
+
+    /**
+     * Verify the signature with the public key by the provider of the
+     * recorded algorithm
+     * @throws GenericCertificateIntegrityException if mismatched like
+     *                                              the legacy certificate
+     */
+    public void verify(PublicKey key) throws GeneralSecurityException {
+        E.checkNotNull(key, "key");
+        Signature signature = SignatureProviders.of(this.algorithm, key)
+                                                .signature();
+        signature.initVerify(key);
+        signature.update(this.signed);
+        if (!signature.verify(this.signature)) {
+            throw new GenericCertificateIntegrityException();
+        }
+    }
+
+    public LicenseContent decode() {
+        if (this.deflated()) {
+            return decodeContent(this.content());
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(this.signed);
+        ((Buffer) buffer).position(CONTENT_OFFSET);
+        return decodeContent(buffer);
+    }
+
+    /**
+     * Decode the content returned by content()
+     */
+    public static LicenseContent decodeContent(byte[] content) {
+        return decodeContent(ByteBuffer.wrap(content));
+    }
+
+    static byte[] encodeContent(LicenseContent content) {
+        Object extra = content.getExtra();
+        E.checkArgument(extra == null || extra instanceof String,
+                        "Only string extra is supported by binary " +
+                        "license, but got %s", extra == null ?
+                                               null : extra.getClass());
+        byte[][] strings = {
+            bytes(content.getSubject()),
+            bytes(name(content.getHolder())),
+            bytes(name(content.getIssuer())),
+            bytes(content.getConsumerType()),
+            bytes(content.getInfo()),
+            bytes((String) extra)
+        };
+        int size = 3 * 8 + 4;
+        for (byte[] string : strings) {
+            size += 4 + (string == null ? 0 : string.length);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        writeBytes(buffer, strings[0]);
+        writeBytes(buffer, strings[1]);
+        writeBytes(buffer, strings[2]);
+        writeDate(buffer, content.getIssued());
+        writeDate(buffer, content.getNotBefore());
+        writeDate(buffer, content.getNotAfter());
+        writeBytes(buffer, strings[3]);
+        buffer.putInt(content.getConsumerAmount());
+        writeBytes(buffer, strings[4]);
+        writeBytes(buffer, strings[5]);
+        return buffer.array();
+    }
+
+    private static LicenseContent decodeContent(ByteBuffer buffer) {
+        try {
+            LicenseContent content = new LicenseContent();
+            content.setSubject(readString(buffer));
+            content.setHolder(principal(readString(buffer)));
+            content.setIssuer(principal(readString(buffer)));
+            content.setIssued(readDate(buffer));
+            content.setNotBefore(readDate(buffer));
+            content.setNotAfter(readDate(buffer));
+            content.setConsumerType(readString(buffer));
+            content.setConsumerAmount(buffer.getInt());
+            content.setInfo(readString(buffer));
+            content.setExtra(readString(buffer));
+            E.checkArgument(!buffer.hasRemaining(),
+                            "Unexpected %s trailing bytes of content",
+                            buffer.remaining());
+            return content;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException |
+                 IllegalArgumentException e) {
+            throw new IllegalArgumentException(
+                      "Invalid binary license content: " + e.getMessage(), e);
+        }
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(
+                                           raw.length / 4 + 64);
+            // The length of raw content to allocate the inflated bytes
+            output.write(raw.length >>> 24);
+            output.write(raw.length >>> 16);
+            output.write(raw.length >>> 8);
+            output.write(raw.length);
+            byte[] buffer = new byte[BUF_SIZE];
+            while (!deflater.finished()) {
+                int size = deflater.deflate(buffer);
+                output.write(buffer, 0, size);
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes, int offset) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset,
+                                            bytes.length - offset);
+        int length = buffer.getInt();
+        E.checkArgument(length >= 0 && length <= MAX_FIELD_LENGTH,
+                        "Invalid inflated content length %s", length);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, buffer.position(), buffer.remaining());
+            byte[] raw = new byte[length];
+            int size = 0;
+            while (size < length && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, size, length - size);
+                if (inflated == 0 && (inflater.needsInput() ||
+                                      inflater.needsDictionary())) {
+                    break;
+                }
+                size += inflated;
+            }
+            E.checkArgument(size == length && inflater.finished() &&
+                            inflater.getRemaining() == 0,
+                            "Invalid deflated content");
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException(
+                      "Invalid deflated content: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static String name(X500Principal principal) {
+        return principal == null ? null : principal.getName();
+    }
+
+    private static X500Principal principal(String name) {
+        return name == null ? null : new X500Principal(name);
+    }
+
+    private static byte[] bytes(String string) {
+        return string == null ? null : string.getBytes(CHARSET);
+    }
+
+    private static void writeBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(NULL_LENGTH);
+        } else {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static void writeDate(ByteBuffer buffer, Date date) {
+        buffer.putLong(date == null ? NULL_DATE : date.getTime());
+    }
+
+    private static int readLength(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        E.checkArgument(length >= 0 && length <= buffer.remaining() &&
+                        length <= MAX_FIELD_LENGTH,
+                        "Invalid field length %s", length);
+        return length;
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        if (buffer.getInt(buffer.position()) == NULL_LENGTH) {
+            buffer.getInt();
+            return null;
+        }
+        byte[] bytes = new byte[readLength(buffer)];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        if (buffer.getInt(buffer.position()) == NULL_LENGTH) {
+            buffer.getInt();
+            return null;
+        }
+        int length = readLength(buffer);
+        String string = new String(buffer.array(), buffer.arrayOffset() +
+                                   buffer.position(), length, CHARSET);
+        ((Buffer) buffer).position(buffer.position() + length);
+        return string;
+    }
+
+    private static Date readDate(ByteBuffer buffer) {
+        long time = buffer.getLong();
+        return time == NULL_DATE ? null : new Date(time);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import javax.crypto.Cipher;
+
+import de.schlichtherle.license.CipherParam;
+import de.schlichtherle.license.PrivacyGuard;
+import de.schlichtherle.xml.GenericCertificate;
+import de.schlichtherle.xml.PersistenceService;
+
+/**
+ * ByteBufferPrivacyGuard decrypts and inflates the license key over byte
+ * buffers instead of the stream chain of PrivacyGuard: the key is decrypted
+ * into one buffer, the gzip member is inflated into an array of the exact
+ * size recorded in its trailer, and the certificate is decoded from the
+ * text by LicenseContentDecoder without XMLDecoder. The key with optional
+ * gzip header fields is still decoded by the streams like PrivacyGuard.
+ *
+ * Like PrivacyGuard it isn't thread safe, since the cipher is shared.
+ */
+public class ByteBufferPrivacyGuard extends PrivacyGuard {
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int GZIP_HEADER_LENGTH = 10;
+    private static final int GZIP_TRAILER_LENGTH = 8;
+    private static final int MAX_CERTIFICATE_LENGTH = 64 * 1024 * 1024;
+
+    public ByteBufferPrivacyGuard(CipherParam param) {
+        super(param);
+    }
+
+    @Override
+    public GenericCertificate key2cert(byte[] key) throws Exception {
+        return this.key2cert(ByteBuffer.wrap(key));
+    }
+
+    /**
+     * Decrypt, inflate and decode the remaining bytes of the key, the
+     * position of the key is moved to its limit
+     */
+    // The cipher of PrivacyGuard is deprecated for subclasses only
+    @SuppressWarnings("deprecation")
+    public GenericCertificate key2cert(ByteBuffer key) throws Exception {
+        Cipher cipher = this.getCipher4Decryption();
+        ByteBuffer decrypted = ByteBuffer.allocate(cipher.getOutputSize(
+                                                   key.remaining()));
+        cipher.doFinal(key, decrypted);
+        ((Buffer) decrypted).flip();
+
+        byte[] text = inflate(decrypted);
+        if (text == null) {
+            // Optional gzip header fields, which PrivacyGuard never writes
+            try (InputStream input = new GZIPInputStream(
+                                     new ByteArrayInputStream(
+                                     decrypted.array(),
+                                     decrypted.arrayOffset(),
+                                     decrypted.remaining()))) {
+                return (GenericCertificate) PersistenceService.load(input);
+            }
+        }
+        return LicenseContentDecoder.decodeCertificate(
+               new String(text, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Inflate the single gzip member in the heap buffer
+     * @return null if the gzip header has optional fields
+     */
+    private static byte[] inflate(ByteBuffer gzip) throws ZipException {
+        int start = gzip.position();
+        int end = gzip.limit();
+        if (end - start < GZIP_HEADER_LENGTH + GZIP_TRAILER_LENGTH) {
+            throw new ZipException("Not in GZIP format");
+        }
+        ByteBuffer buffer = gzip.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if ((buffer.getShort(start) & 0xffff) != GZIP_MAGIC) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if (buffer.get(start + 2) != Deflater.DEFLATED) {
+            throw new ZipException("Unsupported compression method");
+        }
+        if (buffer.get(start + 3) != 0) {
+            return null;
+        }
+        int crc = buffer.getInt(end - GZIP_TRAILER_LENGTH);
+        int length = buffer.getInt(end - 4);
+        if (length < 0 || length > MAX_CERTIFICATE_LENGTH) {
+            throw new ZipException("Invalid GZIP content length " + length);
+        }
+
+        Inflater inflater = new Inflater(true);
+        try {
+            // The trailer is the dummy input byte required by nowrap mode
+            int offset = gzip.arrayOffset() + start + GZIP_HEADER_LENGTH;
+            inflater.setInput(gzip.array(), offset,
+                              end - start - GZIP_HEADER_LENGTH);
+            byte[] raw = new byte[length];
+            int size = 0;
+            while (size < length && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, size, length - size);
+                if (inflated == 0 && (inflater.needsInput() ||
+                                      inflater.needsDictionary())) {
+                    break;
+                }
+                size += inflated;
+            }
+            if (size == length && !inflater.finished()) {
+                /*
+                 * The output may be full before the end of the last block
+                 * is read, e.g. an empty final block after a sync flush,
+                 * inflate once more which must not produce any byte
+                 */
+                size += inflater.inflate(new byte[1]);
+            }
+            if (size != length || !inflater.finished() ||
+                inflater.getRemaining() != GZIP_TRAILER_LENGTH) {
+                throw new ZipException("Corrupt GZIP content");
+            }
+            CRC32 checksum = new CRC32();
+            checksum.update(raw, 0, length);
+            if ((int) checksum.getValue() != crc) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            ZipException exception = new ZipException(
+                                     "Invalid GZIP content: " +
+                                     e.getMessage());
+            exception.initCause(e);
+            throw exception;
+        } finally {
+            inflater.end();
+        }
+    }
+}
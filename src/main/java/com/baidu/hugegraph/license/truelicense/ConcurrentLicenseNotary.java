@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.CertificateException;
+
+import com.baidu.hugegraph.util.E;
+
+import de.schlichtherle.license.KeyStoreParam;
+import de.schlichtherle.license.LicenseNotary;
+import de.schlichtherle.license.LicenseNotaryException;
+import de.schlichtherle.xml.GenericCertificate;
+
+/**
+ * LicenseNotary which can be shared by multiple threads, the keys are
+ * shared through KeyStoreCache instead of being loaded by each notary.
+ * Certificates are signed by the signature provider, and verified by the
+ * provider of the algorithm recorded in the certificate.
+ */
+public class ConcurrentLicenseNotary extends LicenseNotary {
+
+    private final SignatureProvider provider;
+
+    public ConcurrentLicenseNotary(KeyStoreParam param) {
+        this(param, null);
+    }
+
+    /**
+     * @param provider the provider to sign certificates, use the default
+     *                 provider of the private key if null
+     */
+    public ConcurrentLicenseNotary(KeyStoreParam param,
+                                   SignatureProvider provider) {
+        super(param);
+        this.provider = provider;
+    }
+
+    /**
+     * Get the provider to sign with the private key
+     */
+    public SignatureProvider signatureProvider(PrivateKey key) {
+        if (this.provider == null) {
+            return SignatureProviders.of(key);
+        }
+        E.checkArgument(this.provider.supports(key),
+                        "The signature algorithm '%s' can't use %s key",
+                        this.provider.algorithm(), key.getAlgorithm());
+        return this.provider;
+    }
+
+    @Override
+    public GenericCertificate sign(Object content) throws Exception {
+        PrivateKey key = this.getPrivateKey();
+        Signature signature = this.signatureProvider(key).signature();
+        GenericCertificate certificate = new GenericCertificate();
+        certificate.sign(content, key, signature);
+        return certificate;
+    }
+
+    @Override
+    public void verify(GenericCertificate certificate) throws Exception {
+        PublicKey key = this.getPublicKey();
+        // The legacy certificates are signed by SHA1withDSA
+        String algorithm = certificate.getSignatureAlgorithm();
+        if (algorithm == null) {
+            algorithm = SignatureProviders.SHA1_WITH_DSA;
+        }
+        SignatureProvider provider = SignatureProviders.of(algorithm, key);
+        certificate.verify(key, provider.signature());
+    }
+
+    @Override
+    protected PublicKey getPublicKey() throws LicenseNotaryException,
+                                              IOException,
+                                              CertificateException,
+                                              NoSuchAlgorithmException {
+        return KeyStoreCache.publicKey(this.getKeyStoreParam());
+    }
+
+    @Override
+    protected PrivateKey getPrivateKey() throws LicenseNotaryException,
+                                                IOException,
+                                                CertificateException,
+                                                NoSuchAlgorithmException,
+                                                UnrecoverableKeyException {
+        return KeyStoreCache.privateKey(this.getKeyStoreParam());
+    }
+}
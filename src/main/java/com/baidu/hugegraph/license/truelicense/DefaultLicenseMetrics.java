@@ -0,0 +1,193 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The built-in LicenseMetrics, counters and timers are backed by LongAdder
+ * so that concurrent verifications don't contend on them. The histogram of
+ * a timer has a bucket per power of two nanoseconds, so the percentiles are
+ * the upper bounds of buckets and at most 2x of the real values.
+ */
+public class DefaultLicenseMetrics implements LicenseMetrics,
+                                              LicenseMetricsMXBean {
+
+    public static final String DOMAIN = "com.baidu.hugegraph.license";
+
+    private final Map<String, LongAdder> counters;
+    private final Map<String, Timer> timers;
+
+    public DefaultLicenseMetrics() {
+        this.counters = new ConcurrentHashMap<>();
+        this.timers = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public void updateTimer(String name, long nanos) {
+        Timer timer = this.timers.get(name);
+        if (timer == null) {
+            timer = this.timers.computeIfAbsent(name, k -> new Timer());
+        }
+        timer.update(nanos);
+    }
+
+    @Override
+    public void incrementCounter(String name) {
+        LongAdder counter = this.counters.get(name);
+        if (counter == null) {
+            counter = this.counters.computeIfAbsent(name, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    public long counter(String name) {
+        LongAdder counter = this.counters.get(name);
+        return counter == null ? 0L : counter.sum();
+    }
+
+    public TimerSnapshot timer(String name) {
+        Timer timer = this.timers.get(name);
+        return timer == null ? new Timer().snapshot() : timer.snapshot();
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> counters = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> e : this.counters.entrySet()) {
+            counters.put(e.getKey(), e.getValue().sum());
+        }
+        return counters;
+    }
+
+    @Override
+    public Map<String, TimerSnapshot> getTimers() {
+        Map<String, TimerSnapshot> timers = new TreeMap<>();
+        for (Map.Entry<String, Timer> e : this.timers.entrySet()) {
+            timers.put(e.getKey(), e.getValue().snapshot());
+        }
+        return timers;
+    }
+
+    @Override
+    public void reset() {
+        this.counters.clear();
+        this.timers.clear();
+    }
+
+    /**
+     * Register to the platform MBean server with object name
+     * "com.baidu.hugegraph.license:type=LicenseMetrics,name={name}"
+     */
+    public ObjectName registerMBean(String name) {
+        try {
+            ObjectName objectName = objectName(name);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException(String.format(
+                      "Failed to register license metrics '%s'", name), e);
+        }
+    }
+
+    public void unregisterMBean(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.unregisterMBean(objectName(name));
+        } catch (JMException e) {
+            throw new IllegalStateException(String.format(
+                      "Failed to unregister license metrics '%s'", name), e);
+        }
+    }
+
+    private static ObjectName objectName(String name) throws JMException {
+        return new ObjectName(String.format("%s:type=LicenseMetrics,name=%s",
+                                            DOMAIN, ObjectName.quote(name)));
+    }
+
+    private static final class Timer {
+
+        private static final int BUCKETS = 64;
+
+        private final LongAdder count;
+        private final LongAdder total;
+        private final LongAccumulator max;
+        private final LongAdder[] buckets;
+
+        public Timer() {
+            this.count = new LongAdder();
+            this.total = new LongAdder();
+            this.max = new LongAccumulator(Math::max, 0L);
+            this.buckets = new LongAdder[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                this.buckets[i] = new LongAdder();
+            }
+        }
+
+        public void update(long nanos) {
+            if (nanos < 0L) {
+                nanos = 0L;
+            }
+            this.count.increment();
+            this.total.add(nanos);
+            this.max.accumulate(nanos);
+            // The bucket 0 holds 0, and the bucket i holds [2^(i-1), 2^i)
+            this.buckets[BUCKETS - Long.numberOfLeadingZeros(nanos)]
+                .increment();
+        }
+
+        public TimerSnapshot snapshot() {
+            long[] counts = new long[BUCKETS];
+            long count = 0L;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = this.buckets[i].sum();
+                count += counts[i];
+            }
+            long max = this.max.get();
+            return new TimerSnapshot(count, this.total.sum(), max,
+                                     percentile(counts, count, 0.5D, max),
+                                     percentile(counts, count, 0.99D, max),
+                                     percentile(counts, count, 0.999D, max));
+        }
+
+        private static long percentile(long[] counts, long count,
+                                       double quantile, long max) {
+            long rank = (long) Math.ceil(count * quantile);
+            long seen = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0L) {
+                    return Math.min((1L << i) - 1L, max);
+                }
+            }
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.baidu.hugegraph.license.LicenseExtraParam;
+import com.baidu.hugegraph.license.LicenseParams;
+
+/**
+ * ExtraParamIndex is the immutable index of license extra params by server
+ * id, ip and mac, it's built once per verified certificate so that verify
+ * callbacks can match the current server without scanning extra params.
+ */
+public final class ExtraParamIndex {
+
+    private final List<LicenseExtraParam> params;
+    private final Map<String, LicenseExtraParam> ids;
+    private final Map<String, List<LicenseExtraParam>> ips;
+    private final Map<String, List<LicenseExtraParam>> macs;
+
+    public ExtraParamIndex(List<LicenseExtraParam> params) {
+        this.params = Collections.unmodifiableList(params);
+        this.ids = new HashMap<>(capacity(params.size()));
+        Map<String, List<LicenseExtraParam>> ips = new HashMap<>();
+        Map<String, List<LicenseExtraParam>> macs = new HashMap<>();
+        for (LicenseExtraParam param : params) {
+            if (param.id() != null) {
+                // Keep the first one like LicenseParams.matchParam() does
+                this.ids.putIfAbsent(param.id(), param);
+            }
+            String ip = normalizeIp(param.ip());
+            if (ip != null) {
+                ips.computeIfAbsent(ip, k -> new ArrayList<>(1)).add(param);
+            }
+            String mac = normalizeMac(param.mac());
+            if (mac != null) {
+                macs.computeIfAbsent(mac, k -> new ArrayList<>(1)).add(param);
+            }
+        }
+        this.ips = freeze(ips);
+        this.macs = freeze(macs);
+    }
+
+    public static ExtraParamIndex of(LicenseParams params) {
+        if (params instanceof IndexedLicenseParams) {
+            return ((IndexedLicenseParams) params).index();
+        }
+        List<LicenseExtraParam> extraParams = params.extraParams();
+        if (extraParams == null) {
+            extraParams = Collections.emptyList();
+        }
+        return new ExtraParamIndex(extraParams);
+    }
+
+    public List<LicenseExtraParam> params() {
+        return this.params;
+    }
+
+    public int size() {
+        return this.params.size();
+    }
+
+    public LicenseExtraParam matchId(String id) {
+        return this.ids.get(id);
+    }
+
+    public List<LicenseExtraParam> matchIp(String ip) {
+        return match(this.ips, normalizeIp(ip));
+    }
+
+    public List<LicenseExtraParam> matchMac(String mac) {
+        return match(this.macs, normalizeMac(mac));
+    }
+
+    public boolean containsIp(String ip) {
+        return !this.matchIp(ip).isEmpty();
+    }
+
+    public boolean containsMac(String mac) {
+        return !this.matchMac(mac).isEmpty();
+    }
+
+    /**
+     * Normalize ip to lower case without blanks, return null if it's empty
+     */
+    public static String normalizeIp(String ip) {
+        if (StringUtils.isBlank(ip)) {
+            return null;
+        }
+        return ip.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Normalize mac like "6C-92-BF-3A-FE-B0" or "6c:92:bf:3a:fe:b0" to the
+     * same key "6c92bf3afeb0", return null if it's empty
+     */
+    public static String normalizeMac(String mac) {
+        if (StringUtils.isBlank(mac)) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(12);
+        for (int i = 0; i < mac.length(); i++) {
+            char c = mac.charAt(i);
+            if (c == ':' || c == '-' || c == '.' ||
+                Character.isWhitespace(c)) {
+                continue;
+            }
+            sb.append(Character.toLowerCase(c));
+        }
+        return sb.toString();
+    }
+
+    private static List<LicenseExtraParam> match(
+                   Map<String, List<LicenseExtraParam>> index, String key) {
+        if (key == null) {
+            return Collections.emptyList();
+        }
+        List<LicenseExtraParam> params = index.get(key);
+        return params == null ? Collections.emptyList() : params;
+    }
+
+    private static Map<String, List<LicenseExtraParam>> freeze(
+                   Map<String, List<LicenseExtraParam>> index) {
+        Map<String, List<LicenseExtraParam>> frozen;
+        frozen = new HashMap<>(capacity(index.size()));
+        for (Map.Entry<String, List<LicenseExtraParam>> e : index.entrySet()) {
+            frozen.put(e.getKey(), Collections.unmodifiableList(e.getValue()));
+        }
+        return frozen;
+    }
+
+    private static int capacity(int size) {
+        return (int) (size / 0.75F) + 1;
+    }
+}
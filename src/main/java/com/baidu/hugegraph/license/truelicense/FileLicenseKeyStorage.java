@@ -0,0 +1,193 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Objects;
+
+import com.baidu.hugegraph.util.E;
+
+/**
+ * Keep the license key in a file of the specified directory. The key is
+ * written to a temporary file and then renamed atomically, so readers see
+ * either the old key or the new one. The loaded key is cached until the
+ * file is changed, so a verification costs a stat instead of a read.
+ *
+ * The file is changed if its file key (the inode), modified time or size
+ * changed. Like the racy check of git, a file modified within the time
+ * granularity of the file system before it was read is read again, since
+ * a rewrite of the same size in the same tick changes none of them.
+ */
+public class FileLicenseKeyStorage implements LicenseKeyStorage {
+
+    // The modified time of some file systems is in seconds, or 2s of FAT
+    private static final long TIME_GRANULARITY = 2000L;
+
+    private final Path file;
+    private volatile Cached cached;
+
+    public FileLicenseKeyStorage(String directory, String name) {
+        E.checkArgument(name != null && !name.isEmpty(),
+                        "The name of license key file can't be empty");
+        File dir = new File(directory);
+        E.checkArgument(dir.isDirectory() || dir.mkdirs(),
+                        "Failed to create directory '%s'", directory);
+        this.file = dir.toPath().resolve(name + ".key");
+        this.cached = null;
+    }
+
+    public Path file() {
+        return this.file;
+    }
+
+    @Override
+    public byte[] load() throws IOException {
+        Stat stat = this.stat();
+        if (stat == null) {
+            return null;
+        }
+        Cached cached = this.cached;
+        if (cached == null || !cached.stat.equals(stat) ||
+            stat.racy(cached.loadedAt)) {
+            long now = System.currentTimeMillis();
+            cached = new Cached(Files.readAllBytes(this.file), stat, now);
+            this.cached = cached;
+        }
+        return cached.key.clone();
+    }
+
+    /**
+     * The file key, modified time and size of the file, plus the digest
+     * of the key if the file is just modified, null if it doesn't exist
+     */
+    @Override
+    public Object version() throws IOException {
+        Stat stat = this.stat();
+        if (stat == null || !stat.racy(System.currentTimeMillis())) {
+            return stat;
+        }
+        byte[] key = this.load();
+        return key == null ? null :
+               Arrays.asList(stat, VerifiedLicenseCache.digest(key));
+    }
+
+    @Override
+    public synchronized void store(byte[] key) throws IOException {
+        Path temp = Files.createTempFile(this.file.getParent(),
+                                         this.file.getFileName().toString(),
+                                         ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(
+                                       temp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(key);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, this.file, StandardCopyOption.ATOMIC_MOVE,
+                           StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, this.file,
+                           StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        this.cached = null;
+    }
+
+    @Override
+    public synchronized void remove() throws IOException {
+        Files.deleteIfExists(this.file);
+        this.cached = null;
+    }
+
+    private Stat stat() throws IOException {
+        try {
+            return new Stat(Files.readAttributes(this.file,
+                                                 BasicFileAttributes.class));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static final class Stat {
+
+        private final Object fileKey;
+        private final long modified;
+        private final long size;
+
+        public Stat(BasicFileAttributes attrs) {
+            this.fileKey = attrs.fileKey();
+            this.modified = attrs.lastModifiedTime().toMillis();
+            this.size = attrs.size();
+        }
+
+        /**
+         * Whether the file may be rewritten without any change of the stat
+         * after the specified time
+         */
+        public boolean racy(long time) {
+            return time - this.modified <= TIME_GRANULARITY;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Stat)) {
+                return false;
+            }
+            Stat other = (Stat) obj;
+            return Objects.equals(this.fileKey, other.fileKey) &&
+                   this.modified == other.modified &&
+                   this.size == other.size;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.fileKey, this.modified, this.size);
+        }
+    }
+
+    private static final class Cached {
+
+        private final byte[] key;
+        private final Stat stat;
+        private final long loadedAt;
+
+        public Cached(byte[] key, Stat stat, long loadedAt) {
+            this.key = key;
+            this.stat = stat;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
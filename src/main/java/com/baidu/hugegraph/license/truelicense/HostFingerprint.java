@@ -0,0 +1,175 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import com.baidu.hugegraph.license.LicenseExtraParam;
+
+/**
+ * HostFingerprint is the immutable snapshot of the local host values which
+ * are limited by license extra params: the ips and macs of the network
+ * interfaces, the cpus, the physical memory (ram) and the max jvm memory.
+ * The ips and macs are normalized like ExtraParamIndex, so that they can
+ * be matched in constant time. The ram and memory are in MB.
+ */
+public final class HostFingerprint {
+
+    private final Set<String> ips;
+    private final Set<String> macs;
+    private final int cpus;
+    private final long ram;
+    private final long memory;
+    private final long collectedAt;
+
+    public HostFingerprint(Set<String> ips, Set<String> macs, int cpus,
+                           long ram, long memory, long collectedAt) {
+        this.ips = Collections.unmodifiableSet(ips);
+        this.macs = Collections.unmodifiableSet(macs);
+        this.cpus = cpus;
+        this.ram = ram;
+        this.memory = memory;
+        this.collectedAt = collectedAt;
+    }
+
+    public Set<String> ips() {
+        return this.ips;
+    }
+
+    public Set<String> macs() {
+        return this.macs;
+    }
+
+    public int cpus() {
+        return this.cpus;
+    }
+
+    /**
+     * The physical memory in MB, 0 if it's unknown
+     */
+    public long ram() {
+        return this.ram;
+    }
+
+    /**
+     * The max memory of jvm in MB
+     */
+    public long memory() {
+        return this.memory;
+    }
+
+    public long collectedAt() {
+        return this.collectedAt;
+    }
+
+    public boolean containsIp(String ip) {
+        String key = ExtraParamIndex.normalizeIp(ip);
+        return key != null && this.ips.contains(key);
+    }
+
+    public boolean containsMac(String mac) {
+        String key = ExtraParamIndex.normalizeMac(mac);
+        return key != null && this.macs.contains(key);
+    }
+
+    /**
+     * Find the extra param of this host by the ips and macs of this host,
+     * return null if none of them is in the license
+     */
+    public LicenseExtraParam match(ExtraParamIndex index) {
+        for (String ip : this.ips) {
+            List<LicenseExtraParam> params = index.matchIp(ip);
+            if (!params.isEmpty()) {
+                return params.get(0);
+            }
+        }
+        for (String mac : this.macs) {
+            List<LicenseExtraParam> params = index.matchMac(mac);
+            if (!params.isEmpty()) {
+                return params.get(0);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check the ip, mac, cpus, ram and memory of the extra param against
+     * this host, the unset (0) or NO_LIMIT limits are not checked.
+     * @throws IllegalStateException if this host is not authorized
+     */
+    public void check(LicenseExtraParam param) {
+        if (param.ip() != null && !param.ip().trim().isEmpty() &&
+            !this.containsIp(param.ip())) {
+            throw new IllegalStateException(String.format(
+                      "The server ip '%s' is not found on this host %s",
+                      param.ip(), this.ips));
+        }
+        if (param.mac() != null && !param.mac().trim().isEmpty() &&
+            !this.containsMac(param.mac())) {
+            throw new IllegalStateException(String.format(
+                      "The server mac '%s' is not found on this host %s",
+                      param.mac(), this.macs));
+        }
+        checkLimit("cpus", this.cpus, param.cpus());
+        if (this.ram > 0L) {
+            checkLimit("ram(MB)", this.ram, param.ram());
+        }
+        checkLimit("memory(MB)", this.memory, param.memory());
+    }
+
+    private static void checkLimit(String name, long actual, int limit) {
+        if (limit == LicenseExtraParam.NO_LIMIT || limit == 0) {
+            return;
+        }
+        if (actual > limit) {
+            throw new IllegalStateException(String.format(
+                      "The %s '%s' of this host exceeded authorized " +
+                      "limit '%s'", name, actual, limit));
+        }
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof HostFingerprint)) {
+            return false;
+        }
+        // The collected time is not a part of fingerprint
+        HostFingerprint other = (HostFingerprint) object;
+        return this.cpus == other.cpus && this.ram == other.ram &&
+               this.memory == other.memory && this.ips.equals(other.ips) &&
+               this.macs.equals(other.macs);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.ips, this.macs, this.cpus, this.ram,
+                            this.memory);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HostFingerprint{ips=%s, macs=%s, cpus=%s, " +
+                             "ram=%sMB, memory=%sMB}", this.ips, this.macs,
+                             this.cpus, this.ram, this.memory);
+    }
+}
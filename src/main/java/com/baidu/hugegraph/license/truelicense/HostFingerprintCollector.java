@@ -0,0 +1,247 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+
+import com.baidu.hugegraph.license.LicenseExtraParam;
+import com.baidu.hugegraph.license.LicenseParams;
+import com.baidu.hugegraph.util.Bytes;
+import com.baidu.hugegraph.util.Log;
+
+/**
+ * HostFingerprintCollector collects the fingerprint of local host once and
+ * refreshes it on a daemon thread, so that verify callbacks can read it
+ * with a volatile read instead of walking the network interfaces on every
+ * check. The hardware address of each interface is read only once, the
+ * following refreshes just enumerate interfaces and reuse the known macs.
+ */
+public class HostFingerprintCollector implements AutoCloseable {
+
+    private static final Logger LOG = Log.logger(
+                                      HostFingerprintCollector.class);
+
+    private static final long NO_REFRESH = 0L;
+
+    private final long interval;
+    private final ScheduledExecutorService executor;
+
+    // The normalized macs of interfaces by name and index, null if no mac
+    private Map<String, String> macs;
+    private volatile HostFingerprint fingerprint;
+
+    public HostFingerprintCollector() {
+        this(NO_REFRESH);
+    }
+
+    /**
+     * @param interval the interval in milliseconds to refresh fingerprint
+     *                 after start(), no background refresh if it's <= 0
+     */
+    public HostFingerprintCollector(long interval) {
+        this.interval = interval;
+        if (interval > NO_REFRESH) {
+            this.executor = new ScheduledThreadPoolExecutor(1,
+                            new BasicThreadFactory.Builder()
+                                                  .namingPattern(
+                                                   "host-fingerprint")
+                                                  .daemon(true)
+                                                  .build());
+        } else {
+            this.executor = null;
+        }
+        this.macs = Collections.emptyMap();
+        this.fingerprint = null;
+    }
+
+    /**
+     * Collect the fingerprint on the calling thread, then schedule the
+     * background refresh if enabled
+     */
+    public void start() {
+        this.refresh();
+        if (this.executor != null) {
+            this.executor.scheduleWithFixedDelay(this::refreshQuietly,
+                                                 this.interval,
+                                                 this.interval,
+                                                 TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Get the last collected fingerprint, collect it if never collected
+     */
+    public HostFingerprint fingerprint() {
+        HostFingerprint fingerprint = this.fingerprint;
+        if (fingerprint == null) {
+            fingerprint = this.refresh();
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Collect the fingerprint now and publish it
+     */
+    public synchronized HostFingerprint refresh() {
+        Set<String> ips = new HashSet<>();
+        Map<String, String> macs = new HashMap<>();
+        try {
+            Enumeration<NetworkInterface> nics = this.networkInterfaces();
+            while (nics != null && nics.hasMoreElements()) {
+                NetworkInterface nic = nics.nextElement();
+                String key = nic.getName() + "#" + nic.getIndex();
+                String mac;
+                if (this.macs.containsKey(key)) {
+                    mac = this.macs.get(key);
+                } else {
+                    mac = formatMac(this.hardwareAddress(nic));
+                }
+                macs.put(key, mac);
+
+                Enumeration<InetAddress> addresses = nic.getInetAddresses();
+                while (addresses.hasMoreElements()) {
+                    InetAddress address = addresses.nextElement();
+                    if (address.isLoopbackAddress() ||
+                        address.isAnyLocalAddress()) {
+                        continue;
+                    }
+                    ips.add(normalizeIp(address.getHostAddress()));
+                }
+            }
+        } catch (SocketException e) {
+            throw new IllegalStateException(
+                      "Failed to collect network interfaces", e);
+        }
+        this.macs = macs;
+
+        Set<String> macSet = new HashSet<>();
+        for (String mac : macs.values()) {
+            if (mac != null) {
+                macSet.add(mac);
+            }
+        }
+        Runtime runtime = Runtime.getRuntime();
+        HostFingerprint fingerprint = new HostFingerprint(
+                                      ips, macSet,
+                                      runtime.availableProcessors(),
+                                      this.totalMemory() / Bytes.MB,
+                                      runtime.maxMemory() / Bytes.MB,
+                                      System.currentTimeMillis());
+        this.fingerprint = fingerprint;
+        return fingerprint;
+    }
+
+    /**
+     * Match the extra param of this host in the license params, then check
+     * the limits of it, which is intended to be called by verify callbacks
+     * @throws IllegalStateException if this host is not authorized
+     */
+    public LicenseExtraParam check(LicenseParams params) {
+        HostFingerprint host = this.fingerprint();
+        LicenseExtraParam param = host.match(ExtraParamIndex.of(params));
+        if (param == null) {
+            throw new IllegalStateException(String.format(
+                      "This host is not authorized, ips %s, macs %s",
+                      host.ips(), host.macs()));
+        }
+        host.check(param);
+        return param;
+    }
+
+    protected Enumeration<NetworkInterface> networkInterfaces()
+                                                throws SocketException {
+        return NetworkInterface.getNetworkInterfaces();
+    }
+
+    /**
+     * Read the hardware address of the interface, it's an ioctl call on
+     * linux and is only called for the new interfaces
+     */
+    protected byte[] hardwareAddress(NetworkInterface nic)
+                                     throws SocketException {
+        return nic.getHardwareAddress();
+    }
+
+    /**
+     * The total physical memory in bytes, 0 if it's unknown
+     */
+    @SuppressWarnings("deprecation")
+    protected long totalMemory() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os)
+                   .getTotalPhysicalMemorySize();
+        }
+        return 0L;
+    }
+
+    private void refreshQuietly() {
+        try {
+            this.refresh();
+        } catch (Throwable e) {
+            // Keep the last fingerprint and retry in the next round
+            LOG.warn("Failed to refresh host fingerprint", e);
+        }
+    }
+
+    private static String formatMac(byte[] address) {
+        if (address == null || address.length == 0) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(address.length * 2);
+        for (byte b : address) {
+            sb.append(Character.forDigit((b >> 4) & 0x0f, 16));
+            sb.append(Character.forDigit(b & 0x0f, 16));
+        }
+        return sb.toString();
+    }
+
+    private static String normalizeIp(String ip) {
+        // Remove the scope id of ipv6 address like "fe80:0:0:0:1%eth0"
+        int scope = ip.indexOf('%');
+        if (scope >= 0) {
+            ip = ip.substring(0, scope);
+        }
+        return ExtraParamIndex.normalizeIp(ip);
+    }
+}
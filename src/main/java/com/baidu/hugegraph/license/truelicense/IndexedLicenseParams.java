@@ -0,0 +1,51 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.util.Date;
+
+import com.baidu.hugegraph.license.LicenseExtraParam;
+import com.baidu.hugegraph.license.LicenseParams;
+
+/**
+ * LicenseParams with the extra params index, matchParam() is an O(1) lookup
+ */
+public class IndexedLicenseParams extends LicenseParams {
+
+    private final ExtraParamIndex index;
+
+    public IndexedLicenseParams(String subject, String description,
+                                Date issued, Date notBefore, Date notAfter,
+                                String consumerType, int consumerAmount,
+                                ExtraParamIndex index) {
+        super(subject, description, issued, notBefore, notAfter,
+              consumerType, consumerAmount, index.params());
+        this.index = index;
+    }
+
+    public ExtraParamIndex index() {
+        return this.index;
+    }
+
+    @Override
+    public LicenseExtraParam matchParam(String id) {
+        return this.index.matchId(id);
+    }
+}
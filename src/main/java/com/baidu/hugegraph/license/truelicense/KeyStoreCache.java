@@ -0,0 +1,214 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.CertificateException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.baidu.hugegraph.license.truelicense.TrueLicenseCreator.CustomKeyStoreParam;
+
+import de.schlichtherle.license.KeyStoreParam;
+import de.schlichtherle.license.LicenseNotary;
+import de.schlichtherle.license.LicenseNotaryException;
+
+/**
+ * KeyStoreCache keeps the keys decoded from key stores in memory, so that
+ * notaries built repeatedly in one JVM don't read and decrypt the key store
+ * again. The entries are keyed by key store, alias and passwords, and the
+ * entry of a key store file is reloaded once its modification time or
+ * length changes. Key stores loaded from class path are never reloaded.
+ */
+public final class KeyStoreCache {
+
+    private static final int CAPACITY = 32;
+    private static final long DEFAULT_CHECK_INTERVAL = 1000L;
+
+    private static final Map<List<Object>, Entry> CACHE =
+                                                  new ConcurrentHashMap<>();
+
+    // The interval in milliseconds to check whether key store file changed
+    private static volatile long checkInterval = DEFAULT_CHECK_INTERVAL;
+
+    private KeyStoreCache() {
+    }
+
+    public static PublicKey publicKey(KeyStoreParam param)
+                                      throws LicenseNotaryException,
+                                             IOException,
+                                             CertificateException,
+                                             NoSuchAlgorithmException {
+        return entry(param).publicKey();
+    }
+
+    public static PrivateKey privateKey(KeyStoreParam param)
+                                        throws LicenseNotaryException,
+                                               IOException,
+                                               CertificateException,
+                                               NoSuchAlgorithmException,
+                                               UnrecoverableKeyException {
+        return entry(param).privateKey();
+    }
+
+    public static int size() {
+        return CACHE.size();
+    }
+
+    public static void invalidate() {
+        CACHE.clear();
+    }
+
+    static void checkInterval(long interval) {
+        checkInterval = interval;
+    }
+
+    private static Entry entry(KeyStoreParam param) {
+        List<Object> key = Arrays.asList(param, param.getAlias(),
+                                         param.getStorePwd(),
+                                         param.getKeyPwd());
+        long now = System.currentTimeMillis();
+        Entry entry = CACHE.get(key);
+        if (entry != null && now - entry.checkedAt < checkInterval) {
+            return entry;
+        }
+
+        File file = storeFile(param);
+        long modified = file == null ? 0L : file.lastModified();
+        long length = file == null ? 0L : file.length();
+        if (entry != null && entry.same(modified, length)) {
+            entry.checkedAt = now;
+            return entry;
+        }
+
+        if (entry == null && CACHE.size() >= CAPACITY) {
+            CACHE.clear();
+        }
+        // The keys are loaded lazily, so it's cheap to compute under lock
+        return CACHE.compute(key, (k, old) -> {
+            if (old != null && old.same(modified, length)) {
+                old.checkedAt = now;
+                return old;
+            }
+            return new Entry(param, modified, length, now);
+        });
+    }
+
+    private static File storeFile(KeyStoreParam param) {
+        if (param instanceof CustomKeyStoreParam) {
+            return new File(((CustomKeyStoreParam) param).storePath());
+        }
+        return null;
+    }
+
+    private static final class Entry {
+
+        private final KeyLoader loader;
+        private final long modified;
+        private final long length;
+        private volatile long checkedAt;
+        private volatile PublicKey publicKey;
+        private volatile PrivateKey privateKey;
+
+        public Entry(KeyStoreParam param, long modified, long length,
+                     long checkedAt) {
+            this.loader = new KeyLoader(param);
+            this.modified = modified;
+            this.length = length;
+            this.checkedAt = checkedAt;
+            this.publicKey = null;
+            this.privateKey = null;
+        }
+
+        public boolean same(long modified, long length) {
+            return this.modified == modified && this.length == length;
+        }
+
+        public PublicKey publicKey() throws LicenseNotaryException,
+                                            IOException,
+                                            CertificateException,
+                                            NoSuchAlgorithmException {
+            PublicKey key = this.publicKey;
+            if (key == null) {
+                synchronized (this) {
+                    key = this.publicKey;
+                    if (key == null) {
+                        key = this.loader.getPublicKey();
+                        this.publicKey = key;
+                    }
+                }
+            }
+            return key;
+        }
+
+        public PrivateKey privateKey() throws LicenseNotaryException,
+                                              IOException,
+                                              CertificateException,
+                                              NoSuchAlgorithmException,
+                                              UnrecoverableKeyException {
+            PrivateKey key = this.privateKey;
+            if (key == null) {
+                synchronized (this) {
+                    key = this.privateKey;
+                    if (key == null) {
+                        key = this.loader.getPrivateKey();
+                        this.privateKey = key;
+                    }
+                }
+            }
+            return key;
+        }
+    }
+
+    /**
+     * Load keys with the same checks as LicenseNotary, the key store is read
+     * at most once per loader and shared by the public and private key
+     */
+    private static final class KeyLoader extends LicenseNotary {
+
+        public KeyLoader(KeyStoreParam param) {
+            super(param);
+        }
+
+        @Override
+        protected PublicKey getPublicKey() throws LicenseNotaryException,
+                                                  IOException,
+                                                  CertificateException,
+                                                  NoSuchAlgorithmException {
+            return super.getPublicKey();
+        }
+
+        @Override
+        protected PrivateKey getPrivateKey() throws LicenseNotaryException,
+                                                    IOException,
+                                                    CertificateException,
+                                                    NoSuchAlgorithmException,
+                                                    UnrecoverableKeyException {
+            return super.getPrivateKey();
+        }
+    }
+}
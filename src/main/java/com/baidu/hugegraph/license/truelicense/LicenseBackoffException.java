@@ -0,0 +1,51 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+/**
+ * LicenseBackoffException is thrown by TrueLicenseManager.verifyLicense()
+ * instead of verifying again during the backoff of a failure, the failure
+ * is its cause. It's created once per failure without the stack trace, so
+ * the threads rethrowing it don't share a misleading stack.
+ */
+public class LicenseBackoffException extends Exception {
+
+    public LicenseBackoffException(Exception cause, long retryAt) {
+        super(String.format("The license verification is backed off until " +
+                            "%s after failure: %s", retryAt, cause),
+              cause, false, false);
+    }
+
+    /**
+     * Get the failure during whose backoff this is thrown
+     */
+    @Override
+    public synchronized Exception getCause() {
+        return (Exception) super.getCause();
+    }
+
+    /**
+     * Get the failure itself if it's a LicenseBackoffException
+     */
+    public static Exception unwrap(Exception e) {
+        return e instanceof LicenseBackoffException ?
+               ((LicenseBackoffException) e).getCause() : e;
+    }
+}
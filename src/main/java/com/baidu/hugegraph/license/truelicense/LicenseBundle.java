@@ -0,0 +1,339 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import com.baidu.hugegraph.util.E;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.schlichtherle.license.LicenseContent;
+
+/**
+ * LicenseBundle is the license format of large clusters, a small signed
+ * cluster header plus an independently signed entry of each server:
+ * <pre>
+ *   magic "HGLS" | version (1 byte) | flags (1 byte) |
+ *   header length (int) | header |
+ *   entry count (int) | entry offsets (int each, sorted by server id) |
+ *   entries: id length (int) | id | license length (int) | license
+ * </pre>
+ * The header is a BinaryLicense of the content without extra params, and
+ * the license of each entry is a BinaryLicense of the content with only
+ * the extra param of that server. A node looks up its own entry by binary
+ * search of the offsets and verifies only the header and that entry, so
+ * the verify cost of a node doesn't grow with the number of servers. The
+ * offsets and ids aren't signed, the verifier must check that the signed
+ * extra param of the entry is of the server and that the common fields
+ * of the entry equal the header.
+ */
+public final class LicenseBundle {
+
+    public static final byte VERSION = 1;
+
+    private static final byte[] MAGIC = {'H', 'G', 'L', 'S'};
+    private static final int HEADER_LENGTH = MAGIC.length + 2;
+
+    private static final Charset CHARSET = StandardCharsets.UTF_8;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Comparator<byte[]> ID_COMPARATOR =
+                                            LicenseBundle::compareId;
+
+    private final byte[] bytes;
+    private final BinaryLicense header;
+    private final int size;
+    // The position of the first entry offset
+    private final int offsets;
+
+    private LicenseBundle(byte[] bytes, BinaryLicense header, int size,
+                          int offsets) {
+        this.bytes = bytes;
+        this.header = header;
+        this.size = size;
+        this.offsets = offsets;
+    }
+
+    public static boolean isBundle(byte[] key) {
+        if (key == null || key.length < HEADER_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (key[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Split the extra params of the content by server id, then sign the
+     * header and the entry of each server with the private key by the
+     * provider
+     * @throws IllegalArgumentException if the extra params is not a json
+     *                                  array or the server ids are missing
+     *                                  or duplicated
+     */
+    public static LicenseBundle sign(LicenseContent content, PrivateKey key,
+                                     SignatureProvider provider)
+                                     throws GeneralSecurityException {
+        E.checkNotNull(content, "content");
+        Map<byte[], byte[]> entries = new TreeMap<>(ID_COMPARATOR);
+        for (Map.Entry<String, String> param :
+             splitExtraParams(content.getExtra()).entrySet()) {
+            LicenseContent entry = copyContent(content, param.getValue());
+            byte[] license = BinaryLicense.sign(entry, key, provider)
+                                          .toBytes();
+            entries.put(param.getKey().getBytes(CHARSET), license);
+        }
+        byte[] header = BinaryLicense.sign(copyContent(content, null),
+                                           key, provider).toBytes();
+
+        int size = HEADER_LENGTH + 4 + header.length + 4 +
+                   4 * entries.size();
+        for (Map.Entry<byte[], byte[]> entry : entries.entrySet()) {
+            size += 4 + entry.getKey().length + 4 + entry.getValue().length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(MAGIC).put(VERSION).put((byte) 0);
+        buffer.putInt(header.length).put(header);
+        buffer.putInt(entries.size());
+        int offsets = buffer.position();
+        int offset = offsets + 4 * entries.size();
+        for (Map.Entry<byte[], byte[]> entry : entries.entrySet()) {
+            buffer.putInt(offset);
+            offset += 4 + entry.getKey().length + 4 + entry.getValue().length;
+        }
+        for (Map.Entry<byte[], byte[]> entry : entries.entrySet()) {
+            buffer.putInt(entry.getKey().length).put(entry.getKey());
+            buffer.putInt(entry.getValue().length).put(entry.getValue());
+        }
+        return new LicenseBundle(buffer.array(), BinaryLicense.parse(header),
+                                 entries.size(), offsets);
+    }
+
+    /**
+     * Parse the bundle without verifying any signature, the entries are
+     * checked only when they are looked up
+     * @throws IllegalArgumentException if the key is not a valid bundle
+     */
+    public static LicenseBundle parse(byte[] key) {
+        E.checkArgument(isBundle(key), "Invalid license bundle header");
+        byte version = key[MAGIC.length];
+        E.checkArgument(version == VERSION,
+                        "Unsupported license bundle version %s, expect %s",
+                        version, VERSION);
+        byte flags = key[MAGIC.length + 1];
+        E.checkArgument(flags == 0,
+                        "Unsupported license bundle flags %s", flags);
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(key);
+            ((Buffer) buffer).position(HEADER_LENGTH);
+            BinaryLicense header = BinaryLicense.parse(readBytes(buffer));
+            int size = buffer.getInt();
+            E.checkArgument(size >= 0 && size <= buffer.remaining() / 4,
+                            "Invalid entry count %s", size);
+            return new LicenseBundle(key, header, size, buffer.position());
+        } catch (BufferUnderflowException | IndexOutOfBoundsException |
+                 IllegalArgumentException e) {
+            throw new IllegalArgumentException(
+                      "Invalid license bundle: " + e.getMessage(), e);
+        }
+    }
+
+    public byte[] toBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * The signed cluster header, whose content is the common fields of
+     * all the entries without extra params
+     */
+    public BinaryLicense header() {
+        return this.header;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public List<String> ids() {
+        List<String> ids = new ArrayList<>(this.size);
+        for (int i = 0; i < this.size; i++) {
+            ByteBuffer buffer = this.entryBuffer(i);
+            byte[] id = readBytes(buffer);
+            ids.add(new String(id, CHARSET));
+        }
+        return ids;
+    }
+
+    /**
+     * Look up the binary license of the server, which is signed alone
+     * and can be verified and installed like any binary license
+     * @return null if the server is not in the bundle
+     */
+    public byte[] entry(String id) {
+        E.checkNotNull(id, "id");
+        byte[] target = id.getBytes(CHARSET);
+        try {
+            int low = 0;
+            int high = this.size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                ByteBuffer buffer = this.entryBuffer(mid);
+                int length = readLength(buffer);
+                int cmp = compareId(this.bytes, buffer.position(), length,
+                                    target);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    ((Buffer) buffer).position(buffer.position() + length);
+                    return readBytes(buffer);
+                }
+            }
+            return null;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException |
+                 IllegalArgumentException e) {
+            throw new IllegalArgumentException(
+                      "Invalid license bundle entry: " + e.getMessage(), e);
+        }
+    }
+
+    private ByteBuffer entryBuffer(int index) {
+        ByteBuffer buffer = ByteBuffer.wrap(this.bytes);
+        int offset = buffer.getInt(this.offsets + 4 * index);
+        E.checkArgument(offset >= this.offsets + 4 * this.size &&
+                        offset < this.bytes.length,
+                        "Invalid entry offset %s", offset);
+        ((Buffer) buffer).position(offset);
+        return buffer;
+    }
+
+    private static Map<String, String> splitExtraParams(Object extra) {
+        E.checkArgument(extra instanceof String,
+                        "The extra params of license bundle must be a " +
+                        "json string, but got %s",
+                        extra == null ? null : extra.getClass());
+        JsonNode params;
+        try {
+            params = MAPPER.readTree((String) extra);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(
+                      "Invalid extra params: " + e.getMessage(), e);
+        }
+        E.checkArgument(params != null && params.isArray(),
+                        "The extra params of license bundle must be a " +
+                        "json array");
+        Map<String, String> entries = new TreeMap<>();
+        for (JsonNode param : params) {
+            JsonNode id = param.get("id");
+            E.checkArgument(id != null && id.isTextual(),
+                            "The server id is required in each extra " +
+                            "param of license bundle");
+            String entry = "[" + param.toString() + "]";
+            E.checkArgument(entries.put(id.asText(), entry) == null,
+                            "Duplicate server id '%s' in license bundle",
+                            id.asText());
+        }
+        return entries;
+    }
+
+    private static LicenseContent copyContent(LicenseContent content,
+                                              String extra) {
+        LicenseContent copy = new LicenseContent();
+        copy.setSubject(content.getSubject());
+        copy.setHolder(content.getHolder());
+        copy.setIssuer(content.getIssuer());
+        copy.setIssued(content.getIssued());
+        copy.setNotBefore(content.getNotBefore());
+        copy.setNotAfter(content.getNotAfter());
+        copy.setConsumerType(content.getConsumerType());
+        copy.setConsumerAmount(content.getConsumerAmount());
+        copy.setInfo(content.getInfo());
+        copy.setExtra(extra);
+        return copy;
+    }
+
+    /**
+     * Whether the entry content has the same common fields as the header
+     * content, which has no extra params
+     */
+    static boolean matchHeader(LicenseContent header, LicenseContent entry) {
+        return header.getExtra() == null &&
+               Objects.equals(header.getSubject(), entry.getSubject()) &&
+               Objects.equals(header.getHolder(), entry.getHolder()) &&
+               Objects.equals(header.getIssuer(), entry.getIssuer()) &&
+               Objects.equals(header.getIssued(), entry.getIssued()) &&
+               Objects.equals(header.getNotBefore(), entry.getNotBefore()) &&
+               Objects.equals(header.getNotAfter(), entry.getNotAfter()) &&
+               Objects.equals(header.getConsumerType(),
+                              entry.getConsumerType()) &&
+               header.getConsumerAmount() == entry.getConsumerAmount() &&
+               Objects.equals(header.getInfo(), entry.getInfo());
+    }
+
+    private static int compareId(byte[] left, byte[] right) {
+        return -compareId(right, 0, right.length, left);
+    }
+
+    /**
+     * Compare the id in bytes[offset, offset + length) with the target as
+     * unsigned bytes, which is the order of the entries
+     */
+    private static int compareId(byte[] bytes, int offset, int length,
+                                 byte[] target) {
+        int min = Math.min(length, target.length);
+        for (int i = 0; i < min; i++) {
+            int cmp = (bytes[offset + i] & 0xff) - (target[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - target.length;
+    }
+
+    private static int readLength(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        E.checkArgument(length >= 0 && length <= buffer.remaining(),
+                        "Invalid field length %s", length);
+        return length;
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[readLength(buffer)];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
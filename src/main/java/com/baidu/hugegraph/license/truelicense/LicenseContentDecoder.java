@@ -0,0 +1,529 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.beans.XMLDecoder;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.slf4j.Logger;
+
+import com.baidu.hugegraph.util.Log;
+
+import de.schlichtherle.license.LicenseContent;
+import de.schlichtherle.license.LicenseContentException;
+import de.schlichtherle.xml.GenericCertificate;
+import de.schlichtherle.xml.GenericCertificateIsLockedException;
+
+/**
+ * LicenseContentDecoder is to decode the XMLEncoder text of LicenseContent
+ * and the GenericCertificate wrapping it directly, instead of building a
+ * reflective XMLDecoder for each decoding. It only understands the fixed
+ * bean shapes of them and falls back to XMLDecoder if meets any unexpected
+ * element.
+ */
+public final class LicenseContentDecoder {
+
+    private static final Logger LOG = Log.logger(LicenseContentDecoder.class);
+
+    private static final String CHARSET = "UTF-8";
+    private static final int BUF_SIZE = 8 * 1024;
+
+    private static final String CLASS_CONTENT =
+                                LicenseContent.class.getName();
+    private static final String CLASS_DATE = Date.class.getName();
+    private static final String CLASS_PRINCIPAL =
+                                X500Principal.class.getName();
+    private static final String CLASS_CERTIFICATE =
+                                GenericCertificate.class.getName();
+
+    private final String text;
+    private final Map<String, Object> ids;
+    private int pos;
+
+    private LicenseContentDecoder(String text) {
+        this.text = text;
+        this.ids = new HashMap<>();
+        this.pos = 0;
+    }
+
+    public static LicenseContent decode(String text) throws Exception {
+        try {
+            return fastDecode(text);
+        } catch (IllegalArgumentException e) {
+            LOG.debug("Failed to decode license content directly, " +
+                      "fallback to XMLDecoder", e);
+        }
+        Object content = xmlDecode(text);
+        if (!(content instanceof LicenseContent)) {
+            throw new LicenseContentException(String.format(
+                      "Invalid license content type: %s",
+                      content == null ? null : content.getClass()));
+        }
+        return (LicenseContent) content;
+    }
+
+    /**
+     * Decode the text without XMLDecoder
+     * @throws IllegalArgumentException if the text isn't a LicenseContent
+     *         encoded by XMLEncoder
+     */
+    static LicenseContent fastDecode(String text) {
+        LicenseContent content = new LicenseContent();
+        new LicenseContentDecoder(text).readDocument(CLASS_CONTENT,
+                                                     (property, value) -> {
+            setProperty(content, property, value);
+        });
+        return content;
+    }
+
+    public static GenericCertificate decodeCertificate(String text)
+                                                       throws Exception {
+        try {
+            return fastDecodeCertificate(text);
+        } catch (IllegalArgumentException e) {
+            LOG.debug("Failed to decode license certificate directly, " +
+                      "fallback to XMLDecoder", e);
+        }
+        Object certificate = xmlDecode(text);
+        if (!(certificate instanceof GenericCertificate)) {
+            throw new LicenseContentException(String.format(
+                      "Invalid license certificate type: %s",
+                      certificate == null ? null : certificate.getClass()));
+        }
+        return (GenericCertificate) certificate;
+    }
+
+    /**
+     * Decode the text of GenericCertificate without XMLDecoder
+     * @throws IllegalArgumentException if the text isn't a
+     *         GenericCertificate encoded by XMLEncoder
+     */
+    static GenericCertificate fastDecodeCertificate(String text) {
+        GenericCertificate certificate = new GenericCertificate();
+        new LicenseContentDecoder(text).readDocument(CLASS_CERTIFICATE,
+                                                     (property, value) -> {
+            setProperty(certificate, property, value);
+        });
+        return certificate;
+    }
+
+    static Object xmlDecode(String text) throws Exception {
+        InputStream bis = null;
+        XMLDecoder decoder = null;
+        try {
+            bis = new ByteArrayInputStream(text.getBytes(CHARSET));
+            decoder = new XMLDecoder(new BufferedInputStream(bis, BUF_SIZE));
+            return decoder.readObject();
+        } catch (UnsupportedEncodingException e) {
+            throw new LicenseContentException(String.format(
+                      "Unsupported charset: %s", CHARSET));
+        } finally {
+            if (decoder != null) {
+                decoder.close();
+            }
+            try {
+                if (bis != null) {
+                    bis.close();
+                }
+            } catch (Exception e) {
+                LOG.warn("Failed to close stream", e);
+            }
+        }
+    }
+
+    private void readDocument(String clazz,
+                              BiConsumer<String, Object> properties) {
+        this.skipProlog();
+        Tag java = this.readTag();
+        check(java.opening("java"), "Expect <java> but got %s", java);
+
+        Tag object = this.readTag();
+        check(object.opening("object") && clazz.equals(object.attr("class")),
+              "Expect <object> of %s but got %s", clazz, object);
+
+        if (!object.empty) {
+            for (Tag tag = this.readTag(); !tag.closing("object");
+                 tag = this.readTag()) {
+                check(tag.opening("void") && !tag.empty,
+                      "Expect <void> but got %s", tag);
+                String property = tag.attr("property");
+                Object value = this.readValue();
+                this.expectClosing("void");
+                properties.accept(property, value);
+            }
+        }
+        this.expectClosing("java");
+    }
+
+    private Object readValue() {
+        Tag tag = this.readTag();
+        check(!tag.closing, "Expect a value but got %s", tag);
+        switch (tag.name) {
+            case "null":
+                check(tag.empty, "Expect <null/> but got %s", tag);
+                return null;
+            case "string":
+                return tag.empty ? "" : this.readString();
+            case "int":
+                return Integer.valueOf(this.readNumber(tag));
+            case "long":
+                return Long.valueOf(this.readNumber(tag));
+            case "object":
+                return this.readObject(tag);
+            default:
+                throw new IllegalArgumentException(String.format(
+                          "Unsupported value %s", tag));
+        }
+    }
+
+    private Object readObject(Tag tag) {
+        String idref = tag.attr("idref");
+        if (idref != null) {
+            check(tag.empty && this.ids.containsKey(idref),
+                  "Invalid object reference %s", tag);
+            return this.ids.get(idref);
+        }
+        check(!tag.empty, "Unsupported empty object %s", tag);
+
+        String clazz = tag.attr("class");
+        Object value;
+        if (CLASS_DATE.equals(clazz)) {
+            Object time = this.readValue();
+            check(time instanceof Long, "Invalid date value '%s'", time);
+            value = new Date((Long) time);
+        } else if (CLASS_PRINCIPAL.equals(clazz)) {
+            Object name = this.readValue();
+            check(name instanceof String, "Invalid principal '%s'", name);
+            value = new X500Principal((String) name);
+        } else {
+            throw new IllegalArgumentException(String.format(
+                      "Unsupported object class '%s'", clazz));
+        }
+        this.expectClosing("object");
+
+        String id = tag.attr("id");
+        if (id != null) {
+            this.ids.put(id, value);
+        }
+        return value;
+    }
+
+    private String readNumber(Tag tag) {
+        check(!tag.empty, "Expect number but got %s", tag);
+        int end = this.text.indexOf('<', this.pos);
+        if (end < 0) {
+            throw unexpected("Unclosed number", this.pos);
+        }
+        String number = this.text.substring(this.pos, end).trim();
+        this.pos = end;
+        this.expectClosing(tag.name);
+        return number;
+    }
+
+    private String readString() {
+        StringBuilder sb = null;
+        int start = this.pos;
+        while (true) {
+            int end = this.text.indexOf('<', this.pos);
+            if (end < 0) {
+                throw unexpected("Unclosed string", start);
+            }
+            if (this.text.startsWith("</string>", end)) {
+                String value = unescape(this.text, this.pos, end);
+                this.pos = end + "</string>".length();
+                return sb == null ? value : sb.append(value).toString();
+            }
+            // Characters which can't be represented in XML
+            if (sb == null) {
+                sb = new StringBuilder();
+            }
+            sb.append(unescape(this.text, this.pos, end));
+            this.pos = end;
+            Tag tag = this.readTag();
+            check(tag.opening("char") && tag.empty && tag.attr("code") != null,
+                  "Unexpected %s in string", tag);
+            String code = tag.attr("code");
+            check(code.startsWith("#"), "Invalid char code '%s'", code);
+            sb.append((char) Integer.parseInt(code.substring(1), 16));
+        }
+    }
+
+    private void expectClosing(String name) {
+        Tag tag = this.readTag();
+        check(tag.closing(name), "Expect </%s> but got %s", name, tag);
+    }
+
+    private void skipProlog() {
+        this.skipWhitespace();
+        if (this.text.startsWith("<?", this.pos)) {
+            int end = this.text.indexOf("?>", this.pos);
+            check(end > 0, "Unclosed xml declaration");
+            this.pos = end + 2;
+        }
+    }
+
+    private void skipWhitespace() {
+        while (this.pos < this.text.length() &&
+               Character.isWhitespace(this.text.charAt(this.pos))) {
+            this.pos++;
+        }
+    }
+
+    private Tag readTag() {
+        this.skipWhitespace();
+        if (this.pos >= this.text.length() ||
+            this.text.charAt(this.pos) != '<') {
+            throw unexpected("Expect tag", this.pos);
+        }
+        int end = this.text.indexOf('>', this.pos);
+        if (end < 0) {
+            throw unexpected("Unclosed tag", this.pos);
+        }
+
+        int begin = this.pos + 1;
+        this.pos = end + 1;
+
+        boolean closing = this.text.charAt(begin) == '/';
+        if (closing) {
+            begin++;
+        }
+        boolean empty = this.text.charAt(end - 1) == '/';
+        if (empty) {
+            end--;
+        }
+        if (closing && empty) {
+            throw unexpected("Invalid tag", begin);
+        }
+
+        int i = begin;
+        while (i < end && !Character.isWhitespace(this.text.charAt(i))) {
+            i++;
+        }
+        Tag tag = new Tag(this.text.substring(begin, i), closing, empty);
+        while (i < end) {
+            while (i < end && Character.isWhitespace(this.text.charAt(i))) {
+                i++;
+            }
+            if (i >= end) {
+                break;
+            }
+            int eq = this.text.indexOf('=', i);
+            if (eq < 0 || eq >= end) {
+                throw unexpected("Invalid attribute", i);
+            }
+            String key = this.text.substring(i, eq).trim();
+            int quote = eq + 1;
+            if (quote >= end || this.text.charAt(quote) != '"') {
+                throw unexpected("Invalid attribute value", quote);
+            }
+            int close = this.text.indexOf('"', quote + 1);
+            if (close < 0 || close >= end) {
+                throw unexpected("Unclosed attribute", quote);
+            }
+            tag.attrs.put(key, unescape(this.text, quote + 1, close));
+            i = close + 1;
+        }
+        return tag;
+    }
+
+    private static void setProperty(LicenseContent content,
+                                    String property, Object value) {
+        switch (property == null ? "" : property) {
+            case "holder":
+                content.setHolder(cast(property, value, X500Principal.class));
+                break;
+            case "issuer":
+                content.setIssuer(cast(property, value, X500Principal.class));
+                break;
+            case "subject":
+                content.setSubject(cast(property, value, String.class));
+                break;
+            case "issued":
+                content.setIssued(cast(property, value, Date.class));
+                break;
+            case "notBefore":
+                content.setNotBefore(cast(property, value, Date.class));
+                break;
+            case "notAfter":
+                content.setNotAfter(cast(property, value, Date.class));
+                break;
+            case "consumerType":
+                content.setConsumerType(cast(property, value, String.class));
+                break;
+            case "consumerAmount":
+                Integer amount = cast(property, value, Integer.class);
+                check(amount != null, "The consumerAmount can't be null");
+                content.setConsumerAmount(amount);
+                break;
+            case "info":
+                content.setInfo(cast(property, value, String.class));
+                break;
+            case "extra":
+                content.setExtra(value);
+                break;
+            default:
+                throw new IllegalArgumentException(String.format(
+                          "Unsupported property '%s'", property));
+        }
+    }
+
+    // The setters are deprecated for XMLDecoder only, which we replace
+    @SuppressWarnings("deprecation")
+    private static void setProperty(GenericCertificate certificate,
+                                    String property, Object value) {
+        String string = cast(property, value, String.class);
+        try {
+            switch (property == null ? "" : property) {
+                case "encoded":
+                    certificate.setEncoded(string);
+                    break;
+                case "signature":
+                    certificate.setSignature(string);
+                    break;
+                case "signatureAlgorithm":
+                    certificate.setSignatureAlgorithm(string);
+                    break;
+                case "signatureEncoding":
+                    certificate.setSignatureEncoding(string);
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format(
+                              "Unsupported property '%s'", property));
+            }
+        } catch (GenericCertificateIsLockedException e) {
+            // The certificate is locked only after verified
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static <T> T cast(String property, Object value, Class<T> clazz) {
+        check(value == null || clazz.isInstance(value),
+              "Invalid value type of property '%s': %s",
+              property, value == null ? null : value.getClass());
+        return clazz.cast(value);
+    }
+
+    private static String unescape(String text, int begin, int end) {
+        int amp = text.indexOf('&', begin);
+        if (amp < 0 || amp >= end) {
+            return text.substring(begin, end);
+        }
+        StringBuilder sb = new StringBuilder(end - begin);
+        int i = begin;
+        while (amp >= 0 && amp < end) {
+            // Append the plain chars in bulk, the escaped text is large
+            sb.append(text, i, amp);
+            int semicolon = text.indexOf(';', amp);
+            if (semicolon < 0 || semicolon >= end) {
+                throw unexpected("Unclosed entity", amp);
+            }
+            // Match the entity in place without substring for each one
+            int name = amp + 1;
+            if (entity(text, name, semicolon, "lt")) {
+                sb.append('<');
+            } else if (entity(text, name, semicolon, "gt")) {
+                sb.append('>');
+            } else if (entity(text, name, semicolon, "amp")) {
+                sb.append('&');
+            } else if (entity(text, name, semicolon, "quot")) {
+                sb.append('"');
+            } else if (entity(text, name, semicolon, "apos")) {
+                sb.append('\'');
+            } else {
+                String entity = text.substring(name, semicolon);
+                check(entity.startsWith("#"), "Unknown entity '&%s;'",
+                      entity);
+                int code;
+                if (entity.startsWith("#x") || entity.startsWith("#X")) {
+                    code = Integer.parseInt(entity.substring(2), 16);
+                } else {
+                    code = Integer.parseInt(entity.substring(1));
+                }
+                sb.appendCodePoint(code);
+            }
+            i = semicolon + 1;
+            amp = text.indexOf('&', i);
+        }
+        sb.append(text, i, end);
+        return sb.toString();
+    }
+
+    private static boolean entity(String text, int begin, int end,
+                                  String name) {
+        return end - begin == name.length() &&
+               text.startsWith(name, begin);
+    }
+
+    private static IllegalArgumentException unexpected(String message,
+                                                       int position) {
+        return new IllegalArgumentException(String.format(
+                   "%s at position %s", message, position));
+    }
+
+    private static void check(boolean expression, String message,
+                              Object... args) {
+        if (!expression) {
+            throw new IllegalArgumentException(String.format(message, args));
+        }
+    }
+
+    private static final class Tag {
+
+        private final String name;
+        private final boolean closing;
+        private final boolean empty;
+        private final Map<String, String> attrs;
+
+        public Tag(String name, boolean closing, boolean empty) {
+            this.name = name;
+            this.closing = closing;
+            this.empty = empty;
+            this.attrs = new HashMap<>(4);
+        }
+
+        public String attr(String key) {
+            return this.attrs.get(key);
+        }
+
+        public boolean opening(String name) {
+            return !this.closing && this.name.equals(name);
+        }
+
+        public boolean closing(String name) {
+            return this.closing && this.name.equals(name);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("<%s%s%s%s>", this.closing ? "/" : "",
+                                 this.name, this.attrs.isEmpty() ? "" :
+                                 " " + this.attrs, this.empty ? "/" : "");
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import com.baidu.hugegraph.license.LicenseParams;
+
+/**
+ * LicenseExpiryListener is notified by LicenseExpiryScheduler on its
+ * listener thread when the license crosses its validity boundaries, in the
+ * order of the events. The methods must be thread safe.
+ */
+public interface LicenseExpiryListener {
+
+    /**
+     * Called when the license becomes valid, either it's installed within
+     * the validity period or its notBefore is reached
+     */
+    default void onActivated(LicenseParams params) {
+        // pass
+    }
+
+    /**
+     * Called when the remaining time of license reaches a warning
+     * @param remaining the time in milliseconds until the license expires
+     */
+    default void onExpiring(LicenseParams params, long remaining) {
+        // pass
+    }
+
+    /**
+     * Called when the notAfter of license is reached
+     */
+    default void onExpired(LicenseParams params) {
+        // pass
+    }
+}
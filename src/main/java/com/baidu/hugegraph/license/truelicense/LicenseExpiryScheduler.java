@@ -0,0 +1,344 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+
+import com.baidu.hugegraph.license.LicenseManager;
+import com.baidu.hugegraph.license.LicenseParams;
+import com.baidu.hugegraph.util.E;
+import com.baidu.hugegraph.util.Log;
+
+import de.schlichtherle.license.LicenseContentException;
+import de.schlichtherle.license.NoLicenseInstalledException;
+
+/**
+ * LicenseExpiryScheduler computes the activation (notBefore) and expiry
+ * (notAfter) instants once per installed license and arms timers for
+ * them, the listeners are notified at the boundaries and at the warnings
+ * before expiry. verifyLicense() only reads the state of the license and
+ * the clock, the license is fully verified when it's started, installed
+ * or reloaded. The listeners are called on their own thread, so a slow
+ * listener never delays the timers.
+ *
+ * A timer which fires earlier than its instant (e.g. the wall clock is
+ * adjusted) is re-armed for the remaining time.
+ */
+public class LicenseExpiryScheduler implements LicenseManager, AutoCloseable {
+
+    private static final Logger LOG = Log.logger(
+                                      LicenseExpiryScheduler.class);
+
+    private final TrueLicenseManager manager;
+    private final long[] warnings;
+    private final List<LicenseExpiryListener> listeners;
+    private final ScheduledExecutorService executor;
+    private final ExecutorService notifier;
+
+    private volatile Status status;
+
+    /**
+     * @param manager  the manager to verify license with
+     * @param warnings the times in milliseconds before expiry to notify
+     *                 the listeners by onExpiring()
+     */
+    public LicenseExpiryScheduler(TrueLicenseManager manager,
+                                  long... warnings) {
+        E.checkNotNull(manager, "manager");
+        for (long warning : warnings) {
+            E.checkArgument(warning > 0L,
+                            "The expiry warning must be > 0, but got %s",
+                            warning);
+        }
+        this.manager = manager;
+        this.warnings = warnings.clone();
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.executor = new ScheduledThreadPoolExecutor(1,
+                        new BasicThreadFactory.Builder()
+                                              .namingPattern("license-expiry")
+                                              .daemon(true)
+                                              .build());
+        this.notifier = Executors.newSingleThreadExecutor(
+                        new BasicThreadFactory.Builder()
+                                              .namingPattern(
+                                               "license-expiry-listener")
+                                              .daemon(true)
+                                              .build());
+        this.status = null;
+    }
+
+    public void listen(LicenseExpiryListener listener) {
+        E.checkNotNull(listener, "listener");
+        this.listeners.add(listener);
+    }
+
+    public void unlisten(LicenseExpiryListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Verify the installed license on the calling thread and arm timers,
+     * the installed license which is not yet valid or expired is armed
+     * with that state, like the one crossing its boundary after started
+     */
+    public void start() throws Exception {
+        LicenseParams params;
+        try {
+            params = this.manager.verifyLicense();
+        } catch (LicenseContentException | LicenseBackoffException e) {
+            params = this.manager.readLicense();
+            long now = System.currentTimeMillis();
+            if (notBefore(params) <= now && now < notAfter(params)) {
+                // Rejected for other reasons than the dates
+                throw e;
+            }
+        }
+        this.arm(params);
+    }
+
+    @Override
+    public void close() {
+        this.executor.shutdownNow();
+        this.notifier.shutdown();
+    }
+
+    @Override
+    public LicenseParams installLicense() throws Exception {
+        LicenseParams params = this.manager.installLicense();
+        this.arm(params);
+        return params;
+    }
+
+    /**
+     * Install the renewed license file if it's valid, see
+     * TrueLicenseManager.reloadLicense()
+     */
+    public LicenseParams reloadLicense() throws Exception {
+        LicenseParams params = this.manager.reloadLicense();
+        this.arm(params);
+        return params;
+    }
+
+    @Override
+    public void uninstallLicense() throws Exception {
+        synchronized (this) {
+            this.manager.uninstallLicense();
+            this.status = new Status(this.generation() + 1, null,
+                                     State.UNINSTALLED);
+        }
+    }
+
+    /**
+     * Check the state of the license armed last time and the clock, which
+     * is a volatile read without the verify callback
+     */
+    @Override
+    public LicenseParams verifyLicense() throws Exception {
+        Status status = this.status;
+        E.checkState(status != null,
+                     "The license expiry scheduler is not started");
+        State state = status.state;
+        if (state == State.VALID) {
+            // The timer may fire late, e.g. the executor is busy
+            long now = System.currentTimeMillis();
+            if (now < notBefore(status.params)) {
+                state = State.NOT_YET_VALID;
+            } else if (now >= notAfter(status.params)) {
+                state = State.EXPIRED;
+            }
+        }
+        switch (state) {
+            case VALID:
+                return status.params;
+            case NOT_YET_VALID:
+                throw new LicenseContentException("exc.licenseIsNotYetValid");
+            case EXPIRED:
+                throw new LicenseContentException("exc.licenseHasExpired");
+            default:
+                throw new NoLicenseInstalledException(
+                          this.manager.installParam().subject());
+        }
+    }
+
+    public State state() {
+        Status status = this.status;
+        return status == null ? null : status.state;
+    }
+
+    /**
+     * Compute the state of the verified license and arm the timers of its
+     * boundaries, the timers of the license armed before are discarded
+     */
+    public synchronized void arm(LicenseParams params) {
+        E.checkNotNull(params, "params");
+        long now = System.currentTimeMillis();
+        long generation = this.generation() + 1;
+        long notBefore = notBefore(params);
+        long notAfter = notAfter(params);
+
+        State last = this.state();
+        State state;
+        if (now < notBefore) {
+            state = State.NOT_YET_VALID;
+            this.fireAt(generation, notBefore, () -> {
+                this.transit(generation, State.VALID);
+            });
+        } else if (now < notAfter) {
+            state = State.VALID;
+        } else {
+            state = State.EXPIRED;
+        }
+        this.status = new Status(generation, params, state);
+
+        if (state == State.VALID && last != State.VALID) {
+            this.notify(l -> l.onActivated(params));
+        } else if (state == State.EXPIRED && last != State.EXPIRED) {
+            this.notify(l -> l.onExpired(params));
+        }
+        if (state == State.EXPIRED || notAfter == Long.MAX_VALUE) {
+            return;
+        }
+
+        long remaining = notAfter - now;
+        boolean warned = false;
+        for (long warning : this.warnings) {
+            if (warning < remaining) {
+                this.fireAt(generation, notAfter - warning, () -> {
+                    this.warn(generation, warning);
+                });
+            } else {
+                warned = true;
+            }
+        }
+        if (warned && state == State.VALID) {
+            // Notify once if it's armed after some warnings passed
+            this.notify(l -> l.onExpiring(params, remaining));
+        }
+        this.fireAt(generation, notAfter, () -> {
+            this.transit(generation, State.EXPIRED);
+        });
+    }
+
+    private long generation() {
+        Status status = this.status;
+        return status == null ? 0L : status.generation;
+    }
+
+    private void fireAt(long generation, long instant, Runnable task) {
+        long delay = Math.max(0L, instant - System.currentTimeMillis());
+        this.executor.schedule(() -> {
+            if (this.generation() != generation) {
+                // Discarded by a later arm
+                return;
+            }
+            if (System.currentTimeMillis() < instant) {
+                this.fireAt(generation, instant, task);
+                return;
+            }
+            task.run();
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void transit(long generation, State state) {
+        Status status = this.status;
+        if (status.generation != generation || status.state == state) {
+            return;
+        }
+        LicenseParams params = status.params;
+        this.status = new Status(generation, params, state);
+        // Queued under the lock to keep the order of the events
+        if (state == State.VALID) {
+            this.notify(l -> l.onActivated(params));
+        } else {
+            LOG.warn("The license of '{}' expired at {}",
+                     params.subject(), params.notAfter());
+            this.notify(l -> l.onExpired(params));
+        }
+    }
+
+    private synchronized void warn(long generation, long remaining) {
+        Status status = this.status;
+        if (status.generation != generation ||
+            status.state != State.VALID) {
+            return;
+        }
+        LOG.warn("The license of '{}' will expire at {}",
+                 status.params.subject(), status.params.notAfter());
+        this.notify(l -> l.onExpiring(status.params, remaining));
+    }
+
+    private void notify(Consumer<LicenseExpiryListener> event) {
+        try {
+            this.notifier.execute(() -> {
+                for (LicenseExpiryListener listener : this.listeners) {
+                    try {
+                        event.accept(listener);
+                    } catch (Throwable e) {
+                        LOG.error("Failed to notify license expiry " +
+                                  "listener {}", listener, e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.debug("The license expiry scheduler is closed");
+        }
+    }
+
+    private static long notBefore(LicenseParams params) {
+        return params.notBefore() == null ?
+               Long.MIN_VALUE : params.notBefore().getTime();
+    }
+
+    private static long notAfter(LicenseParams params) {
+        return params.notAfter() == null ?
+               Long.MAX_VALUE : params.notAfter().getTime();
+    }
+
+    public enum State {
+        NOT_YET_VALID,
+        VALID,
+        EXPIRED,
+        UNINSTALLED
+    }
+
+    private static final class Status {
+
+        private final long generation;
+        private final LicenseParams params;
+        private final State state;
+
+        public Status(long generation, LicenseParams params, State state) {
+            this.generation = generation;
+            this.params = params;
+            this.state = state;
+        }
+    }
+}
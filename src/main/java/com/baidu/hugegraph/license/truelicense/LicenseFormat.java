@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.util.Locale;
+
+import com.baidu.hugegraph.util.E;
+
+/**
+ * The encoding of license file: XML is the encrypted and compressed XML
+ * GenericCertificate of TrueLicense, BINARY is the BinaryLicense format,
+ * BUNDLE is the LicenseBundle format with a signed entry of each server
+ */
+public enum LicenseFormat {
+
+    XML,
+
+    BINARY,
+
+    BUNDLE;
+
+    /**
+     * Detect the format of license key by the magic header
+     */
+    public static LicenseFormat of(byte[] key) {
+        if (BinaryLicense.isBinary(key)) {
+            return BINARY;
+        }
+        return LicenseBundle.isBundle(key) ? BUNDLE : XML;
+    }
+
+    public static LicenseFormat parse(String name) {
+        E.checkArgument(name != null, "The license format can't be null");
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format(
+                      "Invalid license format '%s', expect xml, binary or bundle",
+                      name));
+        }
+    }
+}
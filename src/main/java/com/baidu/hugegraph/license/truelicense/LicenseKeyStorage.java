@@ -0,0 +1,48 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.IOException;
+
+/**
+ * LicenseKeyStorage is where the installed license key is kept, it's read
+ * on every verification and written on install and uninstall.
+ * Implementations must be thread safe.
+ */
+public interface LicenseKeyStorage {
+
+    /**
+     * Load the installed license key, return null if there is not any
+     */
+    byte[] load() throws IOException;
+
+    void store(byte[] key) throws IOException;
+
+    void remove() throws IOException;
+
+    /**
+     * A cheap token which changes whenever the stored key changes, so what
+     * is derived from the key can be reused without loading the key again
+     * @return null if the storage can't tell, then the key is loaded
+     */
+    default Object version() throws IOException {
+        return null;
+    }
+}
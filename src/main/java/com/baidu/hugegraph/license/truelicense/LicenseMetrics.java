@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+/**
+ * LicenseMetrics is the registry which license operations report timers and
+ * counters to, implement it to bridge the metrics to other systems.
+ * The methods are called on the verify path, so they should be cheap and
+ * must be thread safe.
+ */
+public interface LicenseMetrics {
+
+    // Timers of the license operations
+    String INSTALL = "install";
+    String RELOAD = "reload";
+    String VERIFY = "verify";
+    String DECRYPT = "decrypt";
+    String SIGNATURE = "signature";
+    String DECODE = "decode";
+    String VALIDATE = "validate";
+    String CALLBACK = "callback";
+    String LOCK_WAIT = "lock_wait";
+
+    // Suffixes of counters, like "verify.success" and "verify.failure.xx"
+    String SUCCESS = ".success";
+    String FAILURE = ".failure.";
+    String SNAPSHOT_HIT = "verify.snapshot_hit";
+    String SNAPSHOT_MISS = "verify.snapshot_miss";
+    String CACHE_HIT = "verify.cache_hit";
+    String CACHE_MISS = "verify.cache_miss";
+    String SHARED_HIT = "verify.shared_hit";
+    String SHARED_MISS = "verify.shared_miss";
+    String NEGATIVE_HIT = "verify.negative_hit";
+
+    LicenseMetrics NONE = new LicenseMetrics() {
+
+        @Override
+        public void updateTimer(String name, long nanos) {
+            // pass
+        }
+
+        @Override
+        public void incrementCounter(String name) {
+            // pass
+        }
+    };
+
+    void updateTimer(String name, long nanos);
+
+    void incrementCounter(String name);
+
+    default void incrementFailure(String name, Throwable e) {
+        String cause = e.getClass().getSimpleName();
+        this.incrementCounter(name + FAILURE + cause);
+    }
+}
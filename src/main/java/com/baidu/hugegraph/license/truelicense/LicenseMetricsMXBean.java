@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.util.Map;
+
+/**
+ * The JMX view of DefaultLicenseMetrics, time is in nanoseconds
+ */
+public interface LicenseMetricsMXBean {
+
+    Map<String, Long> getCounters();
+
+    Map<String, TimerSnapshot> getTimers();
+
+    void reset();
+
+    class TimerSnapshot {
+
+        private final long count;
+        private final long total;
+        private final long max;
+        private final long p50;
+        private final long p99;
+        private final long p999;
+
+        public TimerSnapshot(long count, long total, long max,
+                             long p50, long p99, long p999) {
+            this.count = count;
+            this.total = total;
+            this.max = max;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+        }
+
+        public long getCount() {
+            return this.count;
+        }
+
+        public long getTotal() {
+            return this.total;
+        }
+
+        public long getMean() {
+            return this.count == 0L ? 0L : this.total / this.count;
+        }
+
+        public long getMax() {
+            return this.max;
+        }
+
+        public long getP50() {
+            return this.p50;
+        }
+
+        public long getP99() {
+            return this.p99;
+        }
+
+        public long getP999() {
+            return this.p999;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("{count=%s, mean=%s, max=%s, p50=%s, " +
+                                 "p99=%s, p999=%s}", this.count,
+                                 this.getMean(), this.max, this.p50,
+                                 this.p99, this.p999);
+        }
+    }
+}
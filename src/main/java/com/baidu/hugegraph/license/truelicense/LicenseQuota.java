@@ -0,0 +1,252 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.baidu.hugegraph.license.LicenseExtraParam;
+import com.baidu.hugegraph.license.LicenseParams;
+import com.baidu.hugegraph.util.E;
+
+/**
+ * LicenseQuota enforces the limits of the extra param of a server at the
+ * time the resources are used, instead of only checking them in verify
+ * callbacks. Each resource is an atomic counter, acquire() is a CAS loop
+ * which never lets the usage exceed the limit, and release() gives back
+ * the acquired amount. It's thread safe and lock free.
+ *
+ * The limits can be replaced by limits() after the license re-verified,
+ * the current usages are kept. The unset (0) or NO_LIMIT limits are
+ * unlimited, while the usages are still counted.
+ */
+public class LicenseQuota {
+
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    private final String id;
+    private final AtomicLong[] usages;
+    private volatile long[] limits;
+
+    public LicenseQuota(LicenseExtraParam param) {
+        E.checkNotNull(param, "param");
+        this.id = param.id();
+        Resource[] resources = Resource.values();
+        this.usages = new AtomicLong[resources.length];
+        for (int i = 0; i < resources.length; i++) {
+            this.usages[i] = new AtomicLong();
+        }
+        this.limits = readLimits(param);
+    }
+
+    /**
+     * Create the quota of the server in the verified license params
+     */
+    public static LicenseQuota of(LicenseParams params, String id) {
+        LicenseExtraParam param = params.matchParam(id);
+        E.checkArgument(param != null,
+                        "The server id '%s' is not authorized", id);
+        return new LicenseQuota(param);
+    }
+
+    public String id() {
+        return this.id;
+    }
+
+    /**
+     * Replace the limits with the ones of the re-verified license, the
+     * usages which exceeded the new limits are kept but no more acquire
+     * will succeed until they are released below the limits
+     */
+    public void limits(LicenseExtraParam param) {
+        E.checkNotNull(param, "param");
+        E.checkArgument(this.id == null || this.id.equals(param.id()),
+                        "Can't update the quota of server '%s' with the " +
+                        "limits of server '%s'", this.id, param.id());
+        this.limits = readLimits(param);
+    }
+
+    public long limit(Resource resource) {
+        return this.limits[resource.ordinal()];
+    }
+
+    public long used(Resource resource) {
+        return this.usages[resource.ordinal()].get();
+    }
+
+    public long available(Resource resource) {
+        long limit = this.limit(resource);
+        if (limit == UNLIMITED) {
+            return UNLIMITED;
+        }
+        return Math.max(0L, limit - this.used(resource));
+    }
+
+    /**
+     * Try to acquire the amount of the resource
+     * @return false if the usage would exceed the limit
+     */
+    public boolean tryAcquire(Resource resource, long amount) {
+        E.checkArgument(amount >= 0L,
+                        "The acquired amount must be >= 0, but got %s",
+                        amount);
+        long limit = this.limits[resource.ordinal()];
+        AtomicLong usage = this.usages[resource.ordinal()];
+        if (limit == UNLIMITED) {
+            usage.addAndGet(amount);
+            return true;
+        }
+        while (true) {
+            long used = usage.get();
+            if (amount > limit - used) {
+                return false;
+            }
+            if (usage.compareAndSet(used, used + amount)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Acquire the amount of the resource
+     * @throws IllegalStateException if the usage would exceed the limit
+     */
+    public void acquire(Resource resource, long amount) {
+        if (!this.tryAcquire(resource, amount)) {
+            throw new IllegalStateException(String.format(
+                      "The using %s '%s' exceeded authorized limit '%s'",
+                      resource, this.used(resource) + amount,
+                      this.limit(resource)));
+        }
+    }
+
+    /**
+     * Release the acquired amount of the resource
+     */
+    public void release(Resource resource, long amount) {
+        E.checkArgument(amount >= 0L,
+                        "The released amount must be >= 0, but got %s",
+                        amount);
+        AtomicLong usage = this.usages[resource.ordinal()];
+        while (true) {
+            long used = usage.get();
+            E.checkState(amount <= used,
+                         "Can't release %s %s, only %s are acquired",
+                         amount, resource, used);
+            if (usage.compareAndSet(used, used - amount)) {
+                return;
+            }
+        }
+    }
+
+    private static long[] readLimits(LicenseExtraParam param) {
+        Resource[] resources = Resource.values();
+        long[] limits = new long[resources.length];
+        for (int i = 0; i < resources.length; i++) {
+            long limit = resources[i].limit(param);
+            if (limit == LicenseExtraParam.NO_LIMIT || limit == 0L) {
+                limit = UNLIMITED;
+            }
+            limits[i] = limit;
+        }
+        return limits;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("LicenseQuota{id=");
+        sb.append(this.id);
+        for (Resource resource : Resource.values()) {
+            long limit = this.limit(resource);
+            sb.append(", ").append(resource).append('=')
+              .append(this.used(resource)).append('/')
+              .append(limit == UNLIMITED ? "unlimited" : limit);
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * The resources limited by the license extra params, in the units of
+     * the license (e.g. memory in MB)
+     */
+    public enum Resource {
+
+        GRAPHS("graphs") {
+            @Override
+            long limit(LicenseExtraParam param) {
+                return param.graphs();
+            }
+        },
+        NODES("nodes") {
+            @Override
+            long limit(LicenseExtraParam param) {
+                return param.nodes();
+            }
+        },
+        DATA_SIZE("data_size") {
+            @Override
+            long limit(LicenseExtraParam param) {
+                return param.dataSize();
+            }
+        },
+        VERTICES("vertices") {
+            @Override
+            long limit(LicenseExtraParam param) {
+                return param.vertices();
+            }
+        },
+        EDGES("edges") {
+            @Override
+            long limit(LicenseExtraParam param) {
+                return param.edges();
+            }
+        },
+        THREADS("threads") {
+            @Override
+            long limit(LicenseExtraParam param) {
+                return param.threads();
+            }
+        },
+        CPUS("cpus") {
+            @Override
+            long limit(LicenseExtraParam param) {
+                return param.cpus();
+            }
+        },
+        MEMORY("memory") {
+            @Override
+            long limit(LicenseExtraParam param) {
+                return param.memory();
+            }
+        };
+
+        private final String name;
+
+        Resource(String name) {
+            this.name = name;
+        }
+
+        abstract long limit(LicenseExtraParam param);
+
+        @Override
+        public String toString() {
+            return this.name;
+        }
+    }
+}
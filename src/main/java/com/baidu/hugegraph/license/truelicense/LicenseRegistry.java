@@ -0,0 +1,331 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.prefs.Preferences;
+
+import org.slf4j.Logger;
+
+import com.baidu.hugegraph.license.LicenseExtraParam;
+import com.baidu.hugegraph.license.LicenseInstallParam;
+import com.baidu.hugegraph.license.LicenseManager.VerifyCallback;
+import com.baidu.hugegraph.license.LicenseParams;
+import com.baidu.hugegraph.license.truelicense.TrueLicenseManager.Snapshot;
+import com.baidu.hugegraph.util.E;
+import com.baidu.hugegraph.util.Log;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import de.schlichtherle.license.KeyStoreParam;
+import de.schlichtherle.license.LicenseNotary;
+import de.schlichtherle.license.LicenseParam;
+
+/**
+ * LicenseRegistry serves the licenses of many tenants in one JVM, each
+ * (subject, tenant) is installed and verified by its own manager, while
+ * the managers with the same public key store share one notary and the
+ * keys in KeyStoreCache.
+ *
+ * The verified params are kept in a bounded LRU cache until the ttl
+ * elapsed or the license expired, the lookups read the cache without any
+ * per-tenant lock, and a tenant missed or evicted is verified again by
+ * its manager. Each install, uninstall or invalidation of a tenant bumps
+ * its generation, and the params verified before that are never cached.
+ */
+public class LicenseRegistry {
+
+    private static final Logger LOG = Log.logger(LicenseRegistry.class);
+
+    private final long ttl;
+    private final BiFunction<String, String, LicenseKeyStorage> storages;
+    private final Map<Key, Tenant> tenants;
+    private final Map<List<Object>, LicenseNotary> notaries;
+    private final Cache<Key, Snapshot> snapshots;
+
+    /**
+     * Create a registry which keeps the license keys of tenants in the
+     * java preferences node of "subject/tenant"
+     * @param ttl      the time in milliseconds to reuse the verified params
+     * @param capacity the max number of tenants to keep verified params of
+     */
+    public LicenseRegistry(long ttl, int capacity) {
+        this(ttl, capacity, LicenseRegistry::preferencesStorage);
+    }
+
+    /**
+     * @param storages the factory of the license key storage by subject
+     *                 and tenant
+     */
+    public LicenseRegistry(long ttl, int capacity,
+                           BiFunction<String, String,
+                                      LicenseKeyStorage> storages) {
+        E.checkArgument(ttl > 0L, "The ttl must be > 0, but got %s", ttl);
+        E.checkArgument(capacity > 0,
+                        "The capacity must be > 0, but got %s", capacity);
+        E.checkNotNull(storages, "storages");
+        this.ttl = ttl;
+        this.storages = storages;
+        this.tenants = new ConcurrentHashMap<>();
+        this.notaries = new ConcurrentHashMap<>();
+        this.snapshots = CacheBuilder.newBuilder()
+                                     .maximumSize(capacity)
+                                     .expireAfterWrite(ttl,
+                                                       TimeUnit.MILLISECONDS)
+                                     .build();
+    }
+
+    /**
+     * Register the license of the tenant, the subject is the one of the
+     * install param
+     */
+    public TrueLicenseManager register(String tenant,
+                                       LicenseInstallParam param,
+                                       VerifyCallback callback) {
+        E.checkArgument(tenant != null && !tenant.isEmpty(),
+                        "The tenant can't be empty");
+        E.checkNotNull(param, "param");
+        E.checkNotNull(callback, "callback");
+        Key key = new Key(param.subject(), tenant);
+        LicenseParam licenseParam = this.newLicenseParam(param);
+        KeyStoreParam keyStore = licenseParam.getKeyStoreParam();
+        LicenseNotary notary = this.notaries.computeIfAbsent(
+                               Arrays.asList(keyStore, keyStore.getAlias(),
+                                             keyStore.getStorePwd()),
+                               k -> new ConcurrentLicenseNotary(keyStore));
+        TrueLicenseManager manager = new TrueLicenseManager(
+                                     licenseParam, param, callback, notary,
+                                     this.storages.apply(param.subject(),
+                                                         tenant));
+        Tenant existed = this.tenants.putIfAbsent(key, new Tenant(manager));
+        E.checkArgument(existed == null,
+                        "The license of subject '%s' and tenant '%s' has " +
+                        "been registered", param.subject(), tenant);
+        return manager;
+    }
+
+    public void unregister(String subject, String tenant) {
+        Key key = new Key(subject, tenant);
+        Tenant removed = this.tenants.remove(key);
+        if (removed != null) {
+            this.invalidate(key, removed);
+        }
+    }
+
+    public TrueLicenseManager manager(String subject, String tenant) {
+        return this.tenant(new Key(subject, tenant)).manager;
+    }
+
+    public int size() {
+        return this.tenants.size();
+    }
+
+    /**
+     * The number of tenants whose verified params are cached
+     */
+    public long cachedSize() {
+        return this.snapshots.size();
+    }
+
+    public LicenseParams installLicense(String subject, String tenant)
+                                        throws Exception {
+        Key key = new Key(subject, tenant);
+        Tenant registered = this.tenant(key);
+        long generation = this.invalidate(key, registered);
+        LicenseParams params = registered.manager.installLicense();
+        this.putSnapshot(key, registered, generation, params);
+        return params;
+    }
+
+    public void uninstallLicense(String subject, String tenant)
+                                 throws Exception {
+        Key key = new Key(subject, tenant);
+        Tenant registered = this.tenant(key);
+        this.invalidate(key, registered);
+        registered.manager.uninstallLicense();
+        // Drop the params verified during uninstalling
+        this.invalidate(key, registered);
+    }
+
+    /**
+     * Get the verified params of the tenant, verify it by the manager if
+     * it's not cached or expired. The concurrent misses of a tenant may
+     * verify in parallel, which is cheaper than locking on the hit path.
+     */
+    public LicenseParams verifyLicense(String subject, String tenant)
+                                       throws Exception {
+        Key key = new Key(subject, tenant);
+        Snapshot snapshot = this.snapshots.getIfPresent(key);
+        if (snapshot != null && snapshot.alive(System.currentTimeMillis())) {
+            return snapshot.params();
+        }
+        Tenant registered = this.tenant(key);
+        long generation = registered.generation;
+        LicenseParams params = registered.manager.verifyLicense();
+        this.putSnapshot(key, registered, generation, params);
+        return params;
+    }
+
+    /**
+     * Whether the tenant holds a valid license
+     */
+    public boolean licensed(String subject, String tenant) {
+        return this.matchParams(subject, tenant) != null;
+    }
+
+    /**
+     * Whether the tenant holds a valid license which authorizes the server
+     */
+    public boolean licensed(String subject, String tenant, String id) {
+        return this.matchParam(subject, tenant, id) != null;
+    }
+
+    /**
+     * Get the extra param of the server in the valid license of the
+     * tenant, null if it's not licensed
+     */
+    public LicenseExtraParam matchParam(String subject, String tenant,
+                                        String id) {
+        LicenseParams params = this.matchParams(subject, tenant);
+        return params == null ? null : params.matchParam(id);
+    }
+
+    public void invalidate(String subject, String tenant) {
+        Key key = new Key(subject, tenant);
+        Tenant registered = this.tenants.get(key);
+        if (registered != null) {
+            this.invalidate(key, registered);
+        } else {
+            this.snapshots.invalidate(key);
+        }
+    }
+
+    /**
+     * Build the license param of the install param, the public key store
+     * is loaded from the class path like TrueLicenseManager does
+     */
+    protected LicenseParam newLicenseParam(LicenseInstallParam param) {
+        return TrueLicenseManager.wrapLicenseParam(param);
+    }
+
+    private LicenseParams matchParams(String subject, String tenant) {
+        try {
+            return this.verifyLicense(subject, tenant);
+        } catch (Exception e) {
+            LOG.debug("The tenant '{}' is not licensed for '{}': {}",
+                      tenant, subject, e.toString());
+            return null;
+        }
+    }
+
+    private Tenant tenant(Key key) {
+        Tenant tenant = this.tenants.get(key);
+        E.checkArgument(tenant != null,
+                        "The license of subject '%s' and tenant '%s' is " +
+                        "not registered", key.subject, key.tenant);
+        return tenant;
+    }
+
+    /**
+     * Bump the generation and drop the cached params of the tenant
+     * @return the new generation
+     */
+    private long invalidate(Key key, Tenant tenant) {
+        synchronized (tenant) {
+            long generation = ++tenant.generation;
+            this.snapshots.invalidate(key);
+            return generation;
+        }
+    }
+
+    /**
+     * Cache the params verified at the generation, unless the tenant is
+     * installed, uninstalled, invalidated or unregistered since then
+     */
+    private void putSnapshot(Key key, Tenant tenant, long generation,
+                             LicenseParams params) {
+        synchronized (tenant) {
+            if (tenant.generation == generation &&
+                this.tenants.get(key) == tenant) {
+                this.snapshots.put(key, this.newSnapshot(params));
+            }
+        }
+    }
+
+    private Snapshot newSnapshot(LicenseParams params) {
+        long expiredAt = System.currentTimeMillis() + this.ttl;
+        if (params.notAfter() != null) {
+            expiredAt = Math.min(expiredAt, params.notAfter().getTime());
+        }
+        return new Snapshot(params, expiredAt);
+    }
+
+    private static LicenseKeyStorage preferencesStorage(String subject,
+                                                        String tenant) {
+        Preferences root = Preferences.userNodeForPackage(
+                           TrueLicenseManager.class);
+        return new PreferencesLicenseKeyStorage(root.node(subject)
+                                                    .node(tenant));
+    }
+
+    private static final class Key {
+
+        private final String subject;
+        private final String tenant;
+
+        public Key(String subject, String tenant) {
+            this.subject = subject;
+            this.tenant = tenant;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) object;
+            return Objects.equals(this.subject, other.subject) &&
+                   Objects.equals(this.tenant, other.tenant);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.subject, this.tenant);
+        }
+    }
+
+    private static final class Tenant {
+
+        private final TrueLicenseManager manager;
+        // Written under the lock of the tenant
+        private volatile long generation;
+
+        public Tenant(TrueLicenseManager manager) {
+            this.manager = manager;
+            this.generation = 0L;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.security.GeneralSecurityException;
+import java.util.Date;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+
+import com.baidu.hugegraph.license.LicenseManager;
+import com.baidu.hugegraph.license.LicenseParams;
+import com.baidu.hugegraph.util.E;
+import com.baidu.hugegraph.util.Log;
+
+import de.schlichtherle.license.LicenseContentException;
+import de.schlichtherle.license.NoLicenseInstalledException;
+
+/**
+ * LicenseVerifyScheduler re-verifies the license on a daemon thread at a
+ * jittered interval and publishes the verdict, verifyLicense() only reads
+ * the last verdict so that request threads don't pay for the crypto and
+ * the callback.
+ *
+ * A transient verification error (e.g. I/O error) doesn't invalidate the
+ * license until it lasts longer than the grace period, while the license
+ * is invalidated immediately if it's uninstalled, expired, tampered or
+ * rejected by the callback. The license is re-checked at once when its
+ * notAfter is crossed.
+ */
+public class LicenseVerifyScheduler implements LicenseManager, AutoCloseable {
+
+    private static final Logger LOG = Log.logger(LicenseVerifyScheduler.class);
+
+    private final TrueLicenseManager manager;
+    private final long interval;
+    private final double jitter;
+    private final long gracePeriod;
+    private final ScheduledExecutorService executor;
+
+    private volatile Verdict verdict;
+    private ScheduledFuture<?> nextCheck;
+
+    /**
+     * @param manager     the manager to verify license with
+     * @param interval    the interval of re-verification in milliseconds
+     * @param jitter      the ratio in [0, 1) to randomize the interval with
+     * @param gracePeriod the time in milliseconds to keep the last verified
+     *                    params valid when verification fails transiently
+     */
+    public LicenseVerifyScheduler(TrueLicenseManager manager, long interval,
+                                  double jitter, long gracePeriod) {
+        E.checkNotNull(manager, "manager");
+        E.checkArgument(interval > 0L,
+                        "The interval must be > 0, but got %s", interval);
+        E.checkArgument(jitter >= 0.0D && jitter < 1.0D,
+                        "The jitter must be in [0, 1), but got %s", jitter);
+        E.checkArgument(gracePeriod >= 0L,
+                        "The grace period must be >= 0, but got %s",
+                        gracePeriod);
+        this.manager = manager;
+        this.interval = interval;
+        this.jitter = jitter;
+        this.gracePeriod = gracePeriod;
+        this.executor = new ScheduledThreadPoolExecutor(1,
+                        new BasicThreadFactory.Builder()
+                                              .namingPattern("license-verifier")
+                                              .daemon(true)
+                                              .build());
+        this.verdict = null;
+        this.nextCheck = null;
+    }
+
+    /**
+     * Verify the license once on the calling thread, then schedule the
+     * periodic re-verification
+     */
+    public void start() {
+        this.check();
+        this.scheduleNextCheck();
+    }
+
+    @Override
+    public void close() {
+        this.executor.shutdownNow();
+    }
+
+    @Override
+    public LicenseParams installLicense() throws Exception {
+        LicenseParams params;
+        synchronized (this) {
+            try {
+                params = this.manager.installLicense();
+            } catch (Exception e) {
+                this.publishFailure(e, System.currentTimeMillis());
+                throw e;
+            }
+            this.verdict = Verdict.valid(params, System.currentTimeMillis());
+        }
+        this.scheduleNextCheck();
+        return params;
+    }
+
+    @Override
+    public void uninstallLicense() throws Exception {
+        synchronized (this) {
+            this.manager.uninstallLicense();
+        }
+        this.check();
+    }
+
+    @Override
+    public LicenseParams verifyLicense() throws Exception {
+        Verdict verdict = this.verdict;
+        E.checkState(verdict != null,
+                     "The license verify scheduler is not started");
+        if (verdict.expired(System.currentTimeMillis())) {
+            // The notAfter is crossed before the scheduled check
+            this.check(verdict);
+            verdict = this.verdict;
+        }
+        if (verdict.params() == null) {
+            throw verdict.error();
+        }
+        return verdict.params();
+    }
+
+    public Verdict verdict() {
+        return this.verdict;
+    }
+
+    /**
+     * Whether the error may disappear by retrying, the license is kept
+     * valid during the grace period only for the transient errors, e.g.
+     * the UncheckedIOException of the license key storage. The error of
+     * a backoff is classified by the failure backed off.
+     */
+    protected boolean isTransient(Exception e) {
+        e = LicenseBackoffException.unwrap(e);
+        return !(e instanceof NoLicenseInstalledException ||
+                 e instanceof LicenseContentException ||
+                 e instanceof GeneralSecurityException ||
+                 e instanceof IllegalStateException);
+    }
+
+    void check() {
+        this.check(null);
+    }
+
+    /**
+     * Verify the license and publish the verdict, skip if the verdict is
+     * not the expected one since it's refreshed by other threads
+     */
+    private synchronized void check(Verdict expected) {
+        if (expected != null && expected != this.verdict) {
+            return;
+        }
+        try {
+            LicenseParams params = this.manager.verifyLicense();
+            this.verdict = Verdict.valid(params, System.currentTimeMillis());
+        } catch (Exception e) {
+            this.publishFailure(e, System.currentTimeMillis());
+        }
+    }
+
+    private void publishFailure(Exception e, long now) {
+        Verdict last = this.verdict;
+        if (last != null && last.params() != null && this.isTransient(e) &&
+            !last.expired(now)) {
+            long failingSince = last.failingSince() > 0L ?
+                                last.failingSince() : now;
+            if (now - failingSince < this.gracePeriod) {
+                LOG.warn("Failed to verify license, keep the last verified " +
+                         "license in grace period since {}",
+                         new Date(failingSince), e);
+                this.verdict = last.failing(e, failingSince);
+                return;
+            }
+        }
+        LOG.error("Failed to verify license", e);
+        this.verdict = Verdict.invalid(e, now);
+    }
+
+    private synchronized void scheduleNextCheck() {
+        if (this.executor.isShutdown()) {
+            return;
+        }
+        if (this.nextCheck != null) {
+            this.nextCheck.cancel(false);
+        }
+        long delay = this.nextDelay(this.verdict,
+                                    System.currentTimeMillis());
+        this.nextCheck = this.executor.schedule(this::run, delay,
+                                                TimeUnit.MILLISECONDS);
+    }
+
+    long nextDelay(Verdict verdict, long now) {
+        double random = ThreadLocalRandom.current().nextDouble(-1.0D, 1.0D);
+        long delay = (long) (this.interval * (1.0D + this.jitter * random));
+        if (verdict != null && verdict.params() != null &&
+            verdict.params().notAfter() != null) {
+            long notAfter = verdict.params().notAfter().getTime();
+            if (notAfter >= now) {
+                // Re-check right after the license expired
+                delay = Math.min(delay, notAfter - now + 1L);
+            }
+        }
+        return Math.max(delay, 1L);
+    }
+
+    private void run() {
+        try {
+            this.check();
+        } catch (Throwable e) {
+            LOG.error("Failed to run license verification", e);
+        } finally {
+            this.scheduleNextCheck();
+        }
+    }
+
+    public static final class Verdict {
+
+        private final LicenseParams params;
+        private final Exception error;
+        private final long verifiedAt;
+        private final long failingSince;
+
+        private Verdict(LicenseParams params, Exception error,
+                        long verifiedAt, long failingSince) {
+            this.params = params;
+            this.error = error;
+            this.verifiedAt = verifiedAt;
+            this.failingSince = failingSince;
+        }
+
+        private static Verdict valid(LicenseParams params, long now) {
+            return new Verdict(params, null, now, 0L);
+        }
+
+        private static Verdict invalid(Exception error, long now) {
+            return new Verdict(null, error, 0L, now);
+        }
+
+        private Verdict failing(Exception error, long failingSince) {
+            return new Verdict(this.params, error, this.verifiedAt,
+                               failingSince);
+        }
+
+        /**
+         * The verified params, null if the license is invalid
+         */
+        public LicenseParams params() {
+            return this.params;
+        }
+
+        /**
+         * The last verification error, null if the last one succeeded
+         */
+        public Exception error() {
+            return this.error;
+        }
+
+        public boolean valid() {
+            return this.params != null;
+        }
+
+        public boolean inGracePeriod() {
+            return this.params != null && this.error != null;
+        }
+
+        /**
+         * The time of the last successful verification
+         */
+        public long verifiedAt() {
+            return this.verifiedAt;
+        }
+
+        /**
+         * The time of the first failure since the last successful
+         * verification, 0 if the last verification succeeded
+         */
+        public long failingSince() {
+            return this.failingSince;
+        }
+
+        private boolean expired(long now) {
+            if (this.params == null || this.params.notAfter() == null) {
+                return false;
+            }
+            return this.params.notAfter().getTime() < now;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+
+import com.baidu.hugegraph.license.LicenseInstallParam;
+import com.baidu.hugegraph.license.LicenseParams;
+import com.baidu.hugegraph.util.E;
+import com.baidu.hugegraph.util.Log;
+
+/**
+ * LicenseWatcher watches the license file and the public key store file,
+ * and reloads the license on a daemon thread once they are changed, so a
+ * renewed license takes effect without restart. The events are debounced
+ * until the files are quiet for a while, since a file is usually written
+ * by several events. An invalid new license is logged and ignored, the
+ * installed license keeps working.
+ */
+public class LicenseWatcher implements AutoCloseable {
+
+    private static final Logger LOG = Log.logger(LicenseWatcher.class);
+
+    private final TrueLicenseManager manager;
+    private final long debounce;
+    private final Path licenseFile;
+    private final Path keyStoreFile;
+    private final ExecutorService executor;
+    private WatchService watchService;
+
+    /**
+     * @param manager  the manager to reload license with
+     * @param debounce the time in milliseconds the files must be quiet for
+     *                 before reloading
+     */
+    public LicenseWatcher(TrueLicenseManager manager, long debounce) {
+        E.checkNotNull(manager, "manager");
+        E.checkArgument(debounce >= 0L,
+                        "The debounce must be >= 0, but got %s", debounce);
+        LicenseInstallParam param = manager.installParam();
+        this.manager = manager;
+        this.debounce = debounce;
+        this.licenseFile = absolutePath(param.licensePath());
+        // The key store may be loaded from class path, which isn't watched
+        File keyStore = param.publicKeyPath() == null ?
+                        null : new File(param.publicKeyPath());
+        this.keyStoreFile = keyStore != null && keyStore.isFile() ?
+                            absolutePath(keyStore.getPath()) : null;
+        this.executor = Executors.newSingleThreadExecutor(
+                        new BasicThreadFactory.Builder()
+                                              .namingPattern("license-watcher")
+                                              .daemon(true)
+                                              .build());
+        this.watchService = null;
+    }
+
+    public Path licenseFile() {
+        return this.licenseFile;
+    }
+
+    public Path keyStoreFile() {
+        return this.keyStoreFile;
+    }
+
+    /**
+     * Register the directories of the watched files, then watch them on
+     * the daemon thread
+     */
+    public synchronized void start() throws IOException {
+        E.checkState(this.watchService == null,
+                     "The license watcher has been started");
+        WatchService watchService = FileSystems.getDefault()
+                                               .newWatchService();
+        Set<Path> dirs = new HashSet<>();
+        dirs.add(this.licenseFile.getParent());
+        if (this.keyStoreFile != null) {
+            dirs.add(this.keyStoreFile.getParent());
+        }
+        try {
+            for (Path dir : dirs) {
+                dir.register(watchService,
+                             StandardWatchEventKinds.ENTRY_CREATE,
+                             StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+        this.watchService = watchService;
+        this.executor.execute(() -> this.watch(watchService));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.executor.shutdownNow();
+        if (this.watchService != null) {
+            this.watchService.close();
+        }
+    }
+
+    /**
+     * Called on the watcher thread after the new license is installed
+     */
+    protected void onReloaded(LicenseParams params) {
+        LOG.info("Reloaded license of '{}', valid until {}",
+                 params.subject(), params.notAfter());
+    }
+
+    /**
+     * Called on the watcher thread if the new license is invalid
+     */
+    protected void onReloadFailed(Exception e) {
+        LOG.error("Failed to reload license '{}', keep the installed one",
+                  this.licenseFile, e);
+    }
+
+    private void watch(WatchService watchService) {
+        boolean pending = false;
+        boolean keyStoreChanged = false;
+        long quietAt = 0L;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key;
+                if (pending) {
+                    long wait = quietAt - System.currentTimeMillis();
+                    key = wait > 0L ?
+                          watchService.poll(wait, TimeUnit.MILLISECONDS) :
+                          null;
+                } else {
+                    key = watchService.take();
+                }
+                if (key != null) {
+                    Path dir = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        Path file = event.context() == null ? null :
+                                    dir.resolve((Path) event.context());
+                        boolean overflow = event.kind() ==
+                                           StandardWatchEventKinds.OVERFLOW;
+                        boolean keyStore = this.keyStoreFile != null &&
+                                           this.keyStoreFile.equals(file);
+                        if (overflow || keyStore ||
+                            this.licenseFile.equals(file)) {
+                            pending = true;
+                            keyStoreChanged |= overflow || keyStore;
+                            // Wait for the files to be quiet again
+                            quietAt = System.currentTimeMillis() +
+                                      this.debounce;
+                        }
+                    }
+                    key.reset();
+                    continue;
+                }
+                if (pending && System.currentTimeMillis() >= quietAt) {
+                    this.reload(keyStoreChanged);
+                    pending = false;
+                    keyStoreChanged = false;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            LOG.debug("License watcher of '{}' is closed", this.licenseFile);
+        }
+    }
+
+    private void reload(boolean keyStoreChanged) {
+        if (keyStoreChanged) {
+            // Don't wait for the periodic change check of the key cache
+            KeyStoreCache.invalidate();
+        }
+        LicenseParams params;
+        try {
+            params = this.manager.reloadLicense();
+        } catch (Exception e) {
+            this.onReloadFailed(e);
+            return;
+        }
+        this.onReloaded(params);
+    }
+
+    private static Path absolutePath(String path) {
+        return new File(path).getAbsoluteFile().toPath().normalize();
+    }
+}
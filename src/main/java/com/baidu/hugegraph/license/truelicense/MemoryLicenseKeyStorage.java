@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+/**
+ * Keep the license key in memory only, the license needs to be installed
+ * again after restart
+ */
+public class MemoryLicenseKeyStorage implements LicenseKeyStorage {
+
+    private volatile byte[] key;
+
+    public MemoryLicenseKeyStorage() {
+        this.key = null;
+    }
+
+    @Override
+    public byte[] load() {
+        byte[] key = this.key;
+        return key == null ? null : key.clone();
+    }
+
+    @Override
+    public void store(byte[] key) {
+        this.key = key.clone();
+    }
+
+    @Override
+    public void remove() {
+        this.key = null;
+    }
+
+    /**
+     * The stored array itself, which is replaced by every store
+     */
+    @Override
+    public Object version() {
+        return this.key;
+    }
+}
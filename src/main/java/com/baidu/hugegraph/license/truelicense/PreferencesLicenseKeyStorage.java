@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.util.prefs.Preferences;
+
+import com.baidu.hugegraph.util.E;
+
+/**
+ * Keep the license key in java preferences like TrueLicense does, which is
+ * the default storage
+ */
+public class PreferencesLicenseKeyStorage implements LicenseKeyStorage {
+
+    // The same preferences key as TrueLicense stores the license key with
+    private static final String KEY = "license";
+
+    private final Preferences preferences;
+
+    public PreferencesLicenseKeyStorage(Preferences preferences) {
+        E.checkNotNull(preferences, "preferences");
+        this.preferences = preferences;
+    }
+
+    @Override
+    public byte[] load() {
+        return this.preferences.getByteArray(KEY, null);
+    }
+
+    @Override
+    public void store(byte[] key) {
+        this.preferences.putByteArray(KEY, key);
+    }
+
+    @Override
+    public void remove() {
+        this.preferences.remove(KEY);
+    }
+}
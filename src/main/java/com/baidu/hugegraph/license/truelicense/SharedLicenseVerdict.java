@@ -0,0 +1,338 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+
+import com.baidu.hugegraph.util.Bytes;
+import com.baidu.hugegraph.util.E;
+import com.baidu.hugegraph.util.Log;
+
+import de.schlichtherle.license.LicenseContent;
+
+/**
+ * SharedLicenseVerdict shares the verified license content between the
+ * processes on one host through a memory-mapped file, so that only one
+ * process pays for the key store loading and the signature check.
+ *
+ * The file is a seqlock: the writer makes the sequence odd, writes the
+ * verdict, then makes it even again. A reader compares the sequence with
+ * the one it read last time, which is a plain memory read, and decodes the
+ * verdict only if the sequence changed. Since mapped memory has no fences
+ * across processes, a torn read is detected by the HMAC-SHA256 tag of the
+ * verdict and the sequence check after reading, and is treated as absent.
+ *
+ * The layout is: magic | version | sequence | published time | expired
+ * time | content length | tag (32 bytes) | content (binary license
+ * content). All the processes must use the same file, secret and capacity.
+ */
+public class SharedLicenseVerdict implements Closeable {
+
+    private static final Logger LOG = Log.logger(SharedLicenseVerdict.class);
+
+    public static final int DEFAULT_CAPACITY = (int) Bytes.MB;
+
+    private static final int MAGIC = 0x48474c56; // "HGLV"
+    private static final int VERSION = 1;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int TAG_LENGTH = 32;
+
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_SEQUENCE = 8;
+    private static final int OFFSET_PUBLISHED = 16;
+    private static final int OFFSET_EXPIRED = 24;
+    private static final int OFFSET_LENGTH = 32;
+    private static final int OFFSET_TAG = 36;
+    private static final int HEADER_LENGTH = OFFSET_TAG + TAG_LENGTH;
+
+    private final Path file;
+    private final SecretKeySpec secret;
+    private final long ttl;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+    // The content published last by this instance
+    private volatile Published published;
+
+    /**
+     * @param ttl the time to live of a published verdict in milliseconds,
+     *            readers fall back to local verification after it elapsed
+     */
+    public SharedLicenseVerdict(String directory, String name, byte[] secret,
+                                long ttl) throws IOException {
+        this(directory, name, secret, ttl, DEFAULT_CAPACITY);
+    }
+
+    public SharedLicenseVerdict(String directory, String name, byte[] secret,
+                                long ttl, int capacity) throws IOException {
+        E.checkArgument(name != null && !name.isEmpty(),
+                        "The name of shared license verdict can't be empty");
+        E.checkArgument(secret != null && secret.length > 0,
+                        "The secret of shared license verdict can't be empty");
+        E.checkArgument(ttl > 0L,
+                        "The ttl of shared license verdict must be > 0, " +
+                        "but got %s", ttl);
+        E.checkArgument(capacity > HEADER_LENGTH,
+                        "The capacity of shared license verdict must be > " +
+                        "%s, but got %s", HEADER_LENGTH, capacity);
+        File dir = new File(directory);
+        E.checkArgument(dir.isDirectory() || dir.mkdirs(),
+                        "Failed to create directory '%s'", directory);
+        this.file = dir.toPath().resolve(name + ".verdict");
+        this.secret = new SecretKeySpec(secret, MAC_ALGORITHM);
+        this.ttl = ttl;
+        this.raf = new RandomAccessFile(this.file.toFile(), "rw");
+        try {
+            // The file is extended with zeros, which is an empty verdict
+            this.buffer = this.raf.getChannel().map(
+                          FileChannel.MapMode.READ_WRITE, 0L, capacity);
+        } catch (IOException e) {
+            this.raf.close();
+            throw e;
+        }
+        this.published = null;
+    }
+
+    public Path file() {
+        return this.file;
+    }
+
+    public long ttl() {
+        return this.ttl;
+    }
+
+    /**
+     * Read the sequence of the published verdict, it's a plain read of
+     * the mapped memory, odd if a writer is publishing
+     */
+    public long sequence() {
+        return this.buffer.getLong(OFFSET_SEQUENCE);
+    }
+
+    /**
+     * Read the published verdict, return null if nothing is published, it
+     * is being published, expired, or the tag mismatched
+     */
+    public Verdict read(long now) {
+        ByteBuffer buffer = this.buffer.duplicate();
+        long sequence = buffer.getLong(OFFSET_SEQUENCE);
+        if (sequence == 0L || (sequence & 1L) != 0L ||
+            buffer.getInt(OFFSET_MAGIC) != MAGIC ||
+            buffer.getInt(OFFSET_VERSION) != VERSION) {
+            return null;
+        }
+        long publishedAt = buffer.getLong(OFFSET_PUBLISHED);
+        long expiredAt = buffer.getLong(OFFSET_EXPIRED);
+        int length = buffer.getInt(OFFSET_LENGTH);
+        if (length <= 0 || length > buffer.capacity() - HEADER_LENGTH ||
+            now >= expiredAt) {
+            return null;
+        }
+        byte[] tag = new byte[TAG_LENGTH];
+        ((Buffer) buffer).position(OFFSET_TAG);
+        buffer.get(tag);
+        byte[] content = new byte[length];
+        ((Buffer) buffer).position(HEADER_LENGTH);
+        buffer.get(content);
+        if (buffer.getLong(OFFSET_SEQUENCE) != sequence) {
+            // Overwritten by a writer during the read
+            return null;
+        }
+        byte[] expected = this.tag(sequence, publishedAt, expiredAt, content);
+        if (!MessageDigest.isEqual(expected, tag)) {
+            LOG.debug("Ignore shared license verdict '{}' with mismatched " +
+                      "tag, sequence {}", this.file, sequence);
+            return null;
+        }
+        return new Verdict(sequence, publishedAt, expiredAt, content);
+    }
+
+    /**
+     * Publish the verified content, it expires after the ttl or when the
+     * license expires. It's ignored with a warning if the content is
+     * bigger than the capacity.
+     * @return the sequence of the published verdict, 0 if not published
+     */
+    public long publish(LicenseContent content) throws IOException {
+        return this.publish(content, BinaryLicense.encodeContent(content));
+    }
+
+    /**
+     * Publish the verified content unless it's the content published last
+     * by this instance and that verdict is still the alive one, or it
+     * exceeded the capacity, which saves the file lock and the write of
+     * the repeated verifications
+     * @return the sequence of the published verdict, 0 if not published
+     */
+    public long publishIfChanged(LicenseContent content) throws IOException {
+        byte[] bytes = BinaryLicense.encodeContent(content);
+        Published last = this.published;
+        if (last != null && Arrays.equals(last.content, bytes) &&
+            (last.sequence == 0L ||
+             last.sequence == this.sequence() &&
+             System.currentTimeMillis() < last.expiredAt)) {
+            return last.sequence;
+        }
+        return this.publish(content, bytes);
+    }
+
+    /**
+     * Drop the published verdict, e.g. after the license is uninstalled
+     */
+    public void invalidate() throws IOException {
+        this.write(0L, 0L, new byte[0]);
+        this.published = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The mapping is released when the buffer is collected
+        this.raf.close();
+    }
+
+    private long publish(LicenseContent content, byte[] bytes)
+                         throws IOException {
+        if (bytes.length > this.buffer.capacity() - HEADER_LENGTH) {
+            LOG.warn("The license content ({} bytes) exceeded the capacity " +
+                     "of shared license verdict '{}'", bytes.length,
+                     this.file);
+            this.published = new Published(0L, 0L, bytes);
+            return 0L;
+        }
+        long publishedAt = System.currentTimeMillis();
+        long expiredAt = publishedAt + this.ttl;
+        if (content.getNotAfter() != null) {
+            expiredAt = Math.min(expiredAt, content.getNotAfter().getTime());
+        }
+        long sequence = this.write(publishedAt, expiredAt, bytes);
+        this.published = new Published(sequence, expiredAt, bytes);
+        return sequence;
+    }
+
+    private synchronized long write(long publishedAt, long expiredAt,
+                                    byte[] content) throws IOException {
+        // The file lock excludes the writers of other processes
+        try (FileLock ignored = this.raf.getChannel().lock()) {
+            ByteBuffer buffer = this.buffer.duplicate();
+            long sequence = buffer.getLong(OFFSET_SEQUENCE);
+            // Recover from a writer which crashed while publishing
+            long next = (sequence | 1L) + 1L;
+            buffer.putLong(OFFSET_SEQUENCE, next - 1L);
+
+            buffer.putInt(OFFSET_MAGIC, MAGIC);
+            buffer.putInt(OFFSET_VERSION, VERSION);
+            buffer.putLong(OFFSET_PUBLISHED, publishedAt);
+            buffer.putLong(OFFSET_EXPIRED, expiredAt);
+            buffer.putInt(OFFSET_LENGTH, content.length);
+            ((Buffer) buffer).position(OFFSET_TAG);
+            buffer.put(this.tag(next, publishedAt, expiredAt, content));
+            ((Buffer) buffer).position(HEADER_LENGTH);
+            buffer.put(content);
+
+            buffer.putLong(OFFSET_SEQUENCE, next);
+            return next;
+        }
+    }
+
+    private byte[] tag(long sequence, long publishedAt, long expiredAt,
+                       byte[] content) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(this.secret);
+            mac.update(ByteBuffer.allocate(Integer.BYTES * 3 + Long.BYTES * 3)
+                                 .putInt(MAGIC)
+                                 .putInt(VERSION)
+                                 .putLong(sequence)
+                                 .putLong(publishedAt)
+                                 .putLong(expiredAt)
+                                 .putInt(content.length)
+                                 .array());
+            mac.update(content);
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to compute tag", e);
+        }
+    }
+
+    private static final class Published {
+
+        private final long sequence;
+        private final long expiredAt;
+        private final byte[] content;
+
+        public Published(long sequence, long expiredAt, byte[] content) {
+            this.sequence = sequence;
+            this.expiredAt = expiredAt;
+            this.content = content;
+        }
+    }
+
+    /**
+     * The verdict published by a process, alive until the expired time
+     */
+    public static final class Verdict {
+
+        private final long sequence;
+        private final long publishedAt;
+        private final long expiredAt;
+        private final byte[] content;
+
+        private Verdict(long sequence, long publishedAt, long expiredAt,
+                        byte[] content) {
+            this.sequence = sequence;
+            this.publishedAt = publishedAt;
+            this.expiredAt = expiredAt;
+            this.content = content;
+        }
+
+        public long sequence() {
+            return this.sequence;
+        }
+
+        public long publishedAt() {
+            return this.publishedAt;
+        }
+
+        public long expiredAt() {
+            return this.expiredAt;
+        }
+
+        public LicenseContent content() {
+            return BinaryLicense.decodeContent(this.content);
+        }
+    }
+}
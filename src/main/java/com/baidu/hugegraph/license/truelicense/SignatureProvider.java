@@ -0,0 +1,50 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.Signature;
+
+/**
+ * SignatureProvider is the signature scheme to sign and verify licenses,
+ * the algorithm name is recorded in each license so that it's verified
+ * with the same scheme. Providers are registered in SignatureProviders.
+ * Implementations must be thread safe.
+ */
+public interface SignatureProvider {
+
+    /**
+     * The signature algorithm name recorded in the license, like
+     * "SHA256withECDSA"
+     */
+    String algorithm();
+
+    /**
+     * Whether the private or public key can be used by this scheme
+     */
+    boolean supports(Key key);
+
+    /**
+     * Get a signature engine, which is only used by the calling thread
+     * and is initialized by the caller before each use
+     */
+    Signature signature() throws GeneralSecurityException;
+}
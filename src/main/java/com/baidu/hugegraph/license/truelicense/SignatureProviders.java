@@ -0,0 +1,199 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.Signature;
+import java.security.interfaces.ECKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.baidu.hugegraph.util.E;
+
+/**
+ * SignatureProviders is the registry of signature schemes by algorithm
+ * name. SHA1withDSA is the scheme of the legacy TrueLicense notary, and
+ * SHA256withECDSA (P-256 keys) and SHA256withRSA are registered too,
+ * the EC keys on other curves are rejected by SHA256withECDSA.
+ */
+public final class SignatureProviders {
+
+    public static final String SHA1_WITH_DSA = "SHA1withDSA";
+    public static final String SHA256_WITH_ECDSA = "SHA256withECDSA";
+    public static final String SHA256_WITH_RSA = "SHA256withRSA";
+
+    private static final Map<String, SignatureProvider> PROVIDERS =
+                         new ConcurrentHashMap<>();
+
+    static {
+        register(new JcaSignatureProvider(SHA1_WITH_DSA, "DSA"));
+        register(new P256SignatureProvider());
+        register(new JcaSignatureProvider(SHA256_WITH_RSA, "RSA"));
+    }
+
+    private SignatureProviders() {
+    }
+
+    /**
+     * Register a provider, the existing one with the same algorithm name
+     * will be replaced
+     */
+    public static void register(SignatureProvider provider) {
+        E.checkNotNull(provider, "provider");
+        E.checkArgument(provider.algorithm() != null,
+                        "The algorithm of signature provider can't be null");
+        PROVIDERS.put(provider.algorithm(), provider);
+    }
+
+    public static SignatureProvider get(String algorithm) {
+        SignatureProvider provider = algorithm == null ?
+                                     null : PROVIDERS.get(algorithm);
+        E.checkArgument(provider != null,
+                        "Unsupported signature algorithm '%s'", algorithm);
+        return provider;
+    }
+
+    /**
+     * Get the default provider of the key: SHA1withDSA for DSA keys like
+     * the legacy notary, SHA256withECDSA for EC keys and SHA256withRSA for
+     * RSA keys
+     */
+    public static SignatureProvider of(Key key) {
+        E.checkNotNull(key, "key");
+        switch (key.getAlgorithm()) {
+            case "DSA":
+                return get(SHA1_WITH_DSA);
+            case "EC":
+                return of(SHA256_WITH_ECDSA, key);
+            case "RSA":
+                return get(SHA256_WITH_RSA);
+            default:
+                throw new IllegalArgumentException(String.format(
+                          "Unsupported key algorithm '%s'",
+                          key.getAlgorithm()));
+        }
+    }
+
+    /**
+     * Get the provider of the algorithm and check it can use the key
+     */
+    public static SignatureProvider of(String algorithm, Key key) {
+        SignatureProvider provider = get(algorithm);
+        E.checkArgument(provider.supports(key),
+                        "The signature algorithm '%s' can't use %s",
+                        algorithm, keyName(key));
+        return provider;
+    }
+
+    private static String keyName(Key key) {
+        if (key instanceof ECKey && ((ECKey) key).getParams() != null) {
+            return String.format("EC key on %s-bit curve",
+                                 ((ECKey) key).getParams().getCurve()
+                                              .getField().getFieldSize());
+        }
+        return key.getAlgorithm() + " key";
+    }
+
+    /**
+     * The provider of JCA signature algorithms, the signature engine is
+     * cached per thread since it's reset by initSign() or initVerify()
+     */
+    public static class JcaSignatureProvider implements SignatureProvider {
+
+        private final String algorithm;
+        private final String keyAlgorithm;
+        private final ThreadLocal<Signature> signatures;
+
+        public JcaSignatureProvider(String algorithm, String keyAlgorithm) {
+            this.algorithm = algorithm;
+            this.keyAlgorithm = keyAlgorithm;
+            this.signatures = new ThreadLocal<>();
+        }
+
+        @Override
+        public String algorithm() {
+            return this.algorithm;
+        }
+
+        @Override
+        public boolean supports(Key key) {
+            return key != null && this.keyAlgorithm.equals(key.getAlgorithm());
+        }
+
+        @Override
+        public Signature signature() throws GeneralSecurityException {
+            Signature signature = this.signatures.get();
+            if (signature == null) {
+                signature = Signature.getInstance(this.algorithm);
+                this.signatures.set(signature);
+            }
+            return signature;
+        }
+
+        @Override
+        public String toString() {
+            return this.algorithm;
+        }
+    }
+
+    /**
+     * The provider of SHA256withECDSA, which uses only the EC keys on the
+     * P-256 curve (secp256r1), the keys without curve params like the ones
+     * of hardware tokens are accepted
+     */
+    private static final class P256SignatureProvider
+                         extends JcaSignatureProvider {
+
+        private static final ECParameterSpec P256 = p256();
+
+        public P256SignatureProvider() {
+            super(SHA256_WITH_ECDSA, "EC");
+        }
+
+        @Override
+        public boolean supports(Key key) {
+            if (!super.supports(key)) {
+                return false;
+            }
+            ECParameterSpec params = key instanceof ECKey ?
+                                     ((ECKey) key).getParams() : null;
+            return params == null ||
+                   params.getCurve().equals(P256.getCurve()) &&
+                   params.getGenerator().equals(P256.getGenerator()) &&
+                   params.getOrder().equals(P256.getOrder()) &&
+                   params.getCofactor() == P256.getCofactor();
+        }
+
+        private static ECParameterSpec p256() {
+            try {
+                AlgorithmParameters params = AlgorithmParameters
+                                             .getInstance("EC");
+                params.init(new ECGenParameterSpec("secp256r1"));
+                return params.getParameterSpec(ECParameterSpec.class);
+            } catch (GeneralSecurityException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.commons.codec.Charsets;
+import org.apache.commons.io.FileUtils;
+
+import com.baidu.hugegraph.license.LicenseCreateParam;
+import com.baidu.hugegraph.util.E;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.schlichtherle.license.LicenseNotary;
+
+/**
+ * TrueLicenseBatchCreator is to create many licenses in parallel, the
+ * private key of each key store is loaded and decrypted only once and then
+ * shared by all the licenses signed with it.
+ */
+public class TrueLicenseBatchCreator {
+
+    private static final Charset CHARSET = Charsets.UTF_8;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final List<LicenseCreateParam> params;
+    private final int parallelism;
+
+    public TrueLicenseBatchCreator(List<LicenseCreateParam> params,
+                                   int parallelism) {
+        E.checkArgument(parallelism > 0,
+                        "The parallelism must be > 0, but got %s",
+                        parallelism);
+        this.params = params;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Build batch creator from the manifest file, which is a json array of
+     * create params, each one has the same format as create-license.json
+     */
+    public static TrueLicenseBatchCreator build(String path, int parallelism) {
+        File file = FileUtils.getFile(path);
+        List<LicenseCreateParam> params;
+        try {
+            String json = FileUtils.readFileToString(file, CHARSET);
+            params = MAPPER.readValue(
+                     json, new TypeReference<List<LicenseCreateParam>>() { });
+        } catch (Throwable e) {
+            throw new IllegalArgumentException(String.format(
+                      "Failed to parse json file '%s'", path), e);
+        }
+        return new TrueLicenseBatchCreator(params, parallelism);
+    }
+
+    public BatchResult create() {
+        long start = System.nanoTime();
+
+        // Share one notary among the licenses signed by the same key
+        List<TrueLicenseCreator> creators = new ArrayList<>(this.params.size());
+        Map<List<String>, LicenseNotary> notaries = new HashMap<>();
+        for (LicenseCreateParam param : this.params) {
+            TrueLicenseCreator creator = new TrueLicenseCreator(param);
+            List<String> key = Arrays.asList(param.privateKeyPath(),
+                                             param.privateAlias(),
+                                             param.storePassword(),
+                                             param.keyPassword());
+            notaries.computeIfAbsent(key, k -> creator.newLicenseNotary());
+            creators.add(creator);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+        List<Result> results;
+        try {
+            results = pool.submit(() -> {
+                return IntStream.range(0, creators.size()).parallel()
+                                .mapToObj(i -> create(creators.get(i),
+                                                      notaries))
+                                .collect(Collectors.toList());
+            }).get();
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to generate licenses", e);
+        } finally {
+            pool.shutdown();
+        }
+        return new BatchResult(results, System.nanoTime() - start);
+    }
+
+    private static Result create(TrueLicenseCreator creator,
+                                 Map<List<String>, LicenseNotary>
+                                 notaries) {
+        LicenseCreateParam param = creator.param();
+        List<String> key = Arrays.asList(param.privateKeyPath(),
+                                         param.privateAlias(),
+                                         param.storePassword(),
+                                         param.keyPassword());
+        long start = System.nanoTime();
+        try {
+            creator.create(notaries.get(key));
+            return new Result(param.licensePath(), null,
+                              System.nanoTime() - start);
+        } catch (Throwable e) {
+            return new Result(param.licensePath(), e,
+                              System.nanoTime() - start);
+        }
+    }
+
+    public static class Result {
+
+        private final String licensePath;
+        private final Throwable error;
+        private final long cost;
+
+        public Result(String licensePath, Throwable error, long cost) {
+            this.licensePath = licensePath;
+            this.error = error;
+            this.cost = cost;
+        }
+
+        public String licensePath() {
+            return this.licensePath;
+        }
+
+        public boolean success() {
+            return this.error == null;
+        }
+
+        public Throwable error() {
+            return this.error;
+        }
+
+        /**
+         * The time cost of creating this license in nanoseconds
+         */
+        public long cost() {
+            return this.cost;
+        }
+
+        @Override
+        public String toString() {
+            if (this.success()) {
+                return String.format("SUCCESS %s (%.3f ms)", this.licensePath,
+                                     this.cost / 1e6);
+            }
+            Throwable root = this.error;
+            while (root.getCause() != null) {
+                root = root.getCause();
+            }
+            return String.format("FAILURE %s: %s", this.licensePath,
+                                 root.getMessage());
+        }
+    }
+
+    public static class BatchResult {
+
+        private final List<Result> results;
+        private final long elapsed;
+
+        public BatchResult(List<Result> results, long elapsed) {
+            this.results = Collections.unmodifiableList(results);
+            this.elapsed = elapsed;
+        }
+
+        public List<Result> results() {
+            return this.results;
+        }
+
+        public long successes() {
+            return this.results.stream().filter(Result::success).count();
+        }
+
+        public long failures() {
+            return this.results.size() - this.successes();
+        }
+
+        /**
+         * The total elapsed time in nanoseconds
+         */
+        public long elapsed() {
+            return this.elapsed;
+        }
+
+        /**
+         * The number of licenses processed per second
+         */
+        public double throughput() {
+            if (this.elapsed <= 0L) {
+                return 0.0D;
+            }
+            return this.results.size() * 1e9 / this.elapsed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Generated %s licenses (%s succeeded, " +
+                                 "%s failed) in %.3f s, %.1f licenses/s",
+                                 this.results.size(), this.successes(),
+                                 this.failures(), this.elapsed / 1e9,
+                                 this.throughput());
+        }
+    }
+}
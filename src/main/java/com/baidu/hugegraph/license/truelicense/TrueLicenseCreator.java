@@ -24,6 +24,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.security.PrivateKey;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -51,6 +52,7 @@ import de.schlichtherle.license.KeyStoreParam;
 import de.schlichtherle.license.LicenseContent;
 import de.schlichtherle.license.LicenseContentException;
 import de.schlichtherle.license.LicenseManager;
+import de.schlichtherle.license.LicenseNotary;
 import de.schlichtherle.license.LicenseParam;
 
 public class TrueLicenseCreator {
@@ -62,9 +64,13 @@ public class TrueLicenseCreator {
     private static final ObjectMapper MAPPER = new ObjectMapper();
 
     private final LicenseCreateParam param;
+    private volatile LicenseFormat format;
+    private volatile SignatureProvider signatureProvider;
 
     public TrueLicenseCreator(LicenseCreateParam param) {
         this.param = param;
+        this.format = LicenseFormat.XML;
+        this.signatureProvider = null;
     }
 
     public static TrueLicenseCreator build(String path) {
@@ -80,11 +86,52 @@ public class TrueLicenseCreator {
         }
     }
 
+    public LicenseCreateParam param() {
+        return this.param;
+    }
+
+    /**
+     * Set the format of the license file to create, XML by default
+     */
+    public void format(LicenseFormat format) {
+        E.checkNotNull(format, "format");
+        this.format = format;
+    }
+
+    public LicenseFormat format() {
+        return this.format;
+    }
+
+    /**
+     * Set the signature algorithm registered in SignatureProviders, like
+     * "SHA256withECDSA" for EC keys, null to use the default algorithm of
+     * the private key
+     */
+    public void signatureAlgorithm(String algorithm) {
+        this.signatureProvider = algorithm == null ?
+                                 null : SignatureProviders.get(algorithm);
+    }
+
+    public String signatureAlgorithm() {
+        SignatureProvider provider = this.signatureProvider;
+        return provider == null ? null : provider.algorithm();
+    }
+
     public void create() {
+        this.create(this.newLicenseNotary());
+    }
+
+    /**
+     * Create license with the specified notary, which can be shared by
+     * the creators using the same private key to load the key only once
+     */
+    public void create(LicenseNotary notary) {
         File licenseFile = new File(this.param.licensePath());
         try {
             LicenseParam licenseParam = this.initLicenseParam();
-            LicenseManager manager = new LicenseCreateManager(licenseParam);
+            LicenseManager manager = new LicenseCreateManager(licenseParam,
+                                                              notary,
+                                                              this.format);
             LicenseContent licenseContent = this.initLicenseContent();
             manager.store(licenseContent, licenseFile);
         } catch (Throwable e) {
@@ -92,21 +139,29 @@ public class TrueLicenseCreator {
         }
     }
 
+    public LicenseNotary newLicenseNotary() {
+        return new ConcurrentLicenseNotary(this.initKeyStoreParam(),
+                                           this.signatureProvider);
+    }
+
     private LicenseParam initLicenseParam() {
         Preferences preferences = Preferences.userNodeForPackage(
                                   TrueLicenseCreator.class);
         CipherParam cipherParam = new DefaultCipherParam(
                                   this.param.storePassword());
-        KeyStoreParam keyStoreParam = new CustomKeyStoreParam(
-                                      TrueLicenseCreator.class,
-                                      this.param.privateKeyPath(),
-                                      this.param.privateAlias(),
-                                      this.param.storePassword(),
-                                      this.param.keyPassword());
+        KeyStoreParam keyStoreParam = this.initKeyStoreParam();
         return new DefaultLicenseParam(this.param.subject(), preferences,
                                        keyStoreParam, cipherParam);
     }
 
+    private KeyStoreParam initKeyStoreParam() {
+        return new CustomKeyStoreParam(TrueLicenseCreator.class,
+                                       this.param.privateKeyPath(),
+                                       this.param.privateAlias(),
+                                       this.param.storePassword(),
+                                       this.param.keyPassword());
+    }
+
     private LicenseContent initLicenseContent() {
         LicenseContent content = new LicenseContent();
         content.setHolder(DEFAULT_ISSUER);
@@ -146,13 +201,50 @@ public class TrueLicenseCreator {
                 "^([0-9A-Fa-f]{2}[:-]){5}([0-9A-Fa-f]{2})$"
         );
 
+        private final LicenseFormat format;
+
         public LicenseCreateManager(LicenseParam param) {
             super(param, null, null);
+            this.format = LicenseFormat.XML;
+        }
+
+        public LicenseCreateManager(LicenseParam param, LicenseNotary notary) {
+            this(param, notary, LicenseFormat.XML);
+        }
+
+        public LicenseCreateManager(LicenseParam param, LicenseNotary notary,
+                                    LicenseFormat format) {
+            super(param, null, null, notary);
+            E.checkNotNull(format, "format");
+            this.format = format;
         }
 
         @Override
-        protected synchronized void validateCreate(LicenseContent content)
-                                    throws LicenseContentException {
+        protected byte[] create(LicenseContent content, LicenseNotary notary)
+                                throws Exception {
+            if (this.format == LicenseFormat.XML) {
+                return super.create(content, notary);
+            }
+            super.initialize(content);
+            this.validateCreate(content);
+            PrivateKey key = KeyStoreCache.privateKey(
+                             notary.getKeyStoreParam());
+            SignatureProvider provider;
+            if (notary instanceof ConcurrentLicenseNotary) {
+                provider = ((ConcurrentLicenseNotary) notary)
+                           .signatureProvider(key);
+            } else {
+                provider = SignatureProviders.of(key);
+            }
+            if (this.format == LicenseFormat.BUNDLE) {
+                return LicenseBundle.sign(content, key, provider).toBytes();
+            }
+            return BinaryLicense.sign(content, key, provider).toBytes();
+        }
+
+        @Override
+        protected void validateCreate(LicenseContent content)
+                                      throws LicenseContentException {
             super.validateCreate(content);
 
             String extra = (String) content.getExtra();
@@ -204,6 +296,10 @@ public class TrueLicenseCreator {
             this.keyPwd = keyPwd;
         }
 
+        public String storePath() {
+            return this.storePath;
+        }
+
         @Override
         public String getAlias() {
             return this.keyAlias;
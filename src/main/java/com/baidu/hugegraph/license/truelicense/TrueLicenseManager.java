@@ -19,13 +19,21 @@
 
 package com.baidu.hugegraph.license.truelicense;
 
-import java.beans.XMLDecoder;
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
 import java.util.prefs.Preferences;
 
 import org.slf4j.Logger;
@@ -34,9 +42,11 @@ import com.baidu.hugegraph.license.LicenseExtraParam;
 import com.baidu.hugegraph.license.LicenseInstallParam;
 import com.baidu.hugegraph.license.LicenseManager;
 import com.baidu.hugegraph.license.LicenseParams;
+import com.baidu.hugegraph.util.E;
 import com.baidu.hugegraph.util.Log;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
 import de.schlichtherle.license.CipherParam;
 import de.schlichtherle.license.DefaultCipherParam;
@@ -48,6 +58,7 @@ import de.schlichtherle.license.LicenseContentException;
 import de.schlichtherle.license.LicenseNotary;
 import de.schlichtherle.license.LicenseParam;
 import de.schlichtherle.license.NoLicenseInstalledException;
+import de.schlichtherle.license.PrivacyGuard;
 import de.schlichtherle.xml.GenericCertificate;
 
 public class TrueLicenseManager extends de.schlichtherle.license.LicenseManager
@@ -56,134 +67,940 @@ public class TrueLicenseManager extends de.schlichtherle.license.LicenseManager
     private static final Logger LOG = Log.logger(TrueLicenseManager.class);
 
     private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectReader EXTRA_PARAMS_READER = MAPPER.readerFor(
+            new TypeReference<List<LicenseExtraParam>>() { });
 
-    private static final String CHARSET = "UTF-8";
-    private static final int BUF_SIZE = 8 * 1024;
+    private static final int EXTRA_PARAMS_CACHE_CAPACITY = 64;
+    private static final Map<String, ExtraParamIndex> EXTRA_PARAMS_CACHE =
+                                                      new ConcurrentHashMap<>();
 
+    private static final long NO_SNAPSHOT = 0L;
+    private static final long NO_BACKOFF = 0L;
+
+    // Log the stack of callback failures at most once in the interval
+    private static final long ERROR_LOG_INTERVAL = 60 * 1000L;
+    private static final int MAX_LICENSE_SIZE = 64 * 1024 * 1024;
+
+    private static final Base64.Encoder BASE64_ENCODER = Base64.getEncoder();
+    private static final Base64.Decoder BASE64_DECODER = Base64.getDecoder();
+
+    private final LicenseParam licenseParam;
     private final LicenseInstallParam licenseInstallParam;
     private final VerifyCallback verifyCallback;
 
+    /*
+     * Verifications run in parallel under the read lock, while install and
+     * uninstall are mutually exclusive under the write lock. The notary is
+     * shared by all threads, and each thread owns a privacy guard since the
+     * cipher of PrivacyGuard is not thread safe.
+     */
+    private final StampedLock lock;
+    private final LicenseNotary notary;
+    private final ThreadLocal<PrivacyGuard> guards;
+    private final LicenseKeyStorage storage;
+
+    /*
+     * The verified snapshot is published by install/verify and read by
+     * verifyLicense() with a single volatile read, the crypto pipeline is
+     * redone by only one refresher at a time when the snapshot expired.
+     * The snapshot mode is disabled if snapshotTtl <= 0.
+     */
+    private final ReentrantLock refreshLock;
+    private volatile long snapshotTtl;
+    private volatile Snapshot snapshot;
+
+    private volatile LicenseMetrics metrics;
+
+    private volatile VerifiedLicenseCache verifiedCache;
+    private volatile Fingerprint fingerprint;
+
+    /*
+     * The verdict shared with other processes, the params of the last read
+     * verdict are reused until the shared sequence changed or it expired.
+     */
+    private volatile SharedLicenseVerdict sharedVerdict;
+    private volatile SharedSnapshot sharedSnapshot;
+
+    /*
+     * The last failure of verification, which is thrown again without
+     * verifying until the backoff elapsed if the license key is unchanged.
+     * The negative cache is disabled if minBackoff <= 0.
+     */
+    private volatile long minBackoff;
+    private volatile long maxBackoff;
+    private volatile Failure failure;
+    private volatile KeyDigest keyDigest;
+
+    private final AtomicLong suppressedErrors;
+    private volatile long errorLoggedAt;
+
+    // The server id to look up the entry of a license bundle
+    private volatile String serverId;
+
     public TrueLicenseManager(LicenseInstallParam licenseInstallParam,
                               VerifyCallback veryfyCallback) {
         this(wrapLicenseParam(licenseInstallParam),
              licenseInstallParam, veryfyCallback);
     }
 
+    public TrueLicenseManager(LicenseInstallParam licenseInstallParam,
+                              VerifyCallback veryfyCallback,
+                              LicenseKeyStorage storage) {
+        this(wrapLicenseParam(licenseInstallParam), licenseInstallParam,
+             veryfyCallback, null, storage);
+    }
+
     protected TrueLicenseManager(LicenseParam licenseParam,
                                  LicenseInstallParam licenseInstallParam,
                                  VerifyCallback veryfyCallback) {
+        this(licenseParam, licenseInstallParam, veryfyCallback,
+             new ConcurrentLicenseNotary(licenseParam.getKeyStoreParam()));
+    }
+
+    protected TrueLicenseManager(LicenseParam licenseParam,
+                                 LicenseInstallParam licenseInstallParam,
+                                 VerifyCallback veryfyCallback,
+                                 LicenseNotary notary) {
+        this(licenseParam, licenseInstallParam, veryfyCallback, notary,
+             new PreferencesLicenseKeyStorage(licenseParam.getPreferences()));
+    }
+
+    /**
+     * @param notary  the notary to sign and verify license, create a new
+     *                one from the key store param of licenseParam if null
+     * @param storage the storage to keep the installed license key in
+     */
+    protected TrueLicenseManager(LicenseParam licenseParam,
+                                 LicenseInstallParam licenseInstallParam,
+                                 VerifyCallback veryfyCallback,
+                                 LicenseNotary notary,
+                                 LicenseKeyStorage storage) {
         super(licenseParam);
+        E.checkNotNull(storage, "storage");
+        this.licenseParam = licenseParam;
         this.licenseInstallParam = licenseInstallParam;
         this.verifyCallback = veryfyCallback;
+        this.lock = new StampedLock();
+        if (notary == null) {
+            notary = new ConcurrentLicenseNotary(
+                     licenseParam.getKeyStoreParam());
+        }
+        this.notary = notary;
+        this.storage = storage;
+        CipherParam cipherParam = licenseParam.getCipherParam();
+        this.guards = ThreadLocal.withInitial(
+                      () -> new ByteBufferPrivacyGuard(cipherParam));
+        this.refreshLock = new ReentrantLock();
+        this.snapshotTtl = NO_SNAPSHOT;
+        this.snapshot = null;
+        this.metrics = new DefaultLicenseMetrics();
+        this.verifiedCache = null;
+        this.fingerprint = null;
+        this.sharedVerdict = null;
+        this.sharedSnapshot = null;
+        this.minBackoff = NO_BACKOFF;
+        this.maxBackoff = NO_BACKOFF;
+        this.failure = null;
+        this.suppressedErrors = new AtomicLong();
+        this.errorLoggedAt = 0L;
+        this.serverId = null;
+    }
+
+    /**
+     * Enable the verified-snapshot mode if ttl > 0: verifyLicense() will
+     * return the last verified params until the ttl elapsed or the license
+     * expired, instead of redoing the full verification on every call.
+     * @param ttl the time to live of the verified snapshot in milliseconds
+     */
+    public void snapshotTtl(long ttl) {
+        long stamp = this.lock.writeLock();
+        try {
+            this.snapshotTtl = ttl;
+            this.snapshot = null;
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    public long snapshotTtl() {
+        return this.snapshotTtl;
+    }
+
+    /**
+     * Set the registry to report timers and counters of license operations
+     * to, use LicenseMetrics.NONE to disable metrics
+     */
+    public void metrics(LicenseMetrics metrics) {
+        E.checkNotNull(metrics, "metrics");
+        this.metrics = metrics;
+    }
+
+    public LicenseMetrics metrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Set the cache of verified license content to skip the signature
+     * check of unchanged license after restart, null to disable it
+     */
+    public void verifiedCache(VerifiedLicenseCache cache) {
+        this.verifiedCache = cache;
+    }
+
+    public VerifiedLicenseCache verifiedCache() {
+        return this.verifiedCache;
+    }
+
+    /**
+     * Set the verdict shared with the other processes on this host, the
+     * license verified by any process is reused by the others until the
+     * verdict expired, null to disable it
+     */
+    public void sharedVerdict(SharedLicenseVerdict verdict) {
+        this.sharedVerdict = verdict;
+        this.sharedSnapshot = null;
+    }
+
+    public SharedLicenseVerdict sharedVerdict() {
+        return this.sharedVerdict;
+    }
+
+    /**
+     * Enable the negative cache if minBackoff > 0: a failed verification
+     * is thrown again by verifyLicense() without verifying until the
+     * backoff elapsed, the backoff starts from minBackoff and doubles on
+     * each repeated failure up to maxBackoff. A changed license key, an
+     * install or a reload re-checks the license at once.
+     * @param minBackoff the first backoff in milliseconds
+     * @param maxBackoff the max backoff in milliseconds
+     */
+    public void failureBackoff(long minBackoff, long maxBackoff) {
+        E.checkArgument(maxBackoff >= minBackoff,
+                        "The max backoff %s must be >= min backoff %s",
+                        maxBackoff, minBackoff);
+        this.minBackoff = minBackoff;
+        this.maxBackoff = maxBackoff;
+        this.failure = null;
+    }
+
+    /**
+     * Set the id of this server, which is required to install a license
+     * bundle: only the entry of this server is looked up and verified, and
+     * the verified params contain only the extra param of this server
+     */
+    public void serverId(String serverId) {
+        this.serverId = serverId;
+        this.snapshot = null;
+        this.failure = null;
+    }
+
+    public String serverId() {
+        return this.serverId;
     }
 
     @Override
     public LicenseParams installLicense() throws Exception {
+        LicenseMetrics metrics = this.metrics;
+        long start = System.nanoTime();
+        File licenseFile = new File(this.licenseInstallParam.licensePath());
+        long stamp = this.writeLock();
+        try {
+            this.snapshot = null;
+            this.failure = null;
+            LicenseParams params = transLicenseContent(
+                                   this.install(readLicenseKey(licenseFile),
+                                                this.notary));
+            this.publishSnapshot(params);
+            metrics.incrementCounter(LicenseMetrics.INSTALL +
+                                     LicenseMetrics.SUCCESS);
+            return params;
+        } catch (Exception e) {
+            metrics.incrementFailure(LicenseMetrics.INSTALL, e);
+            throw e;
+        } finally {
+            this.lock.unlockWrite(stamp);
+            metrics.updateTimer(LicenseMetrics.INSTALL,
+                                System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Install the license file again only if it's valid, e.g. after it's
+     * renewed. The new license is verified without lock while the
+     * installed one is still in use, then the license key and the snapshot
+     * are swapped under the write lock, so the verifications never see a
+     * half-installed license and aren't blocked by the crypto work.
+     * @throws Exception if the new license is invalid, and the installed
+     *                   license is kept
+     */
+    public LicenseParams reloadLicense() throws Exception {
+        LicenseMetrics metrics = this.metrics;
+        long start = System.nanoTime();
         File licenseFile = new File(this.licenseInstallParam.licensePath());
-        return transLicenseContent(super.install(licenseFile));
+        try {
+            byte[] key = readLicenseKey(licenseFile);
+            LicenseContent content = this.verifyContent(key, this.notary,
+                                                        false);
+            this.validate(content);
+            LicenseParams params = transLicenseContent(content);
+
+            long stamp = this.writeLock();
+            try {
+                super.setCertificate(null);
+                this.setLicenseKey(key);
+                this.publishSnapshot(params);
+                this.failure = null;
+            } finally {
+                this.lock.unlockWrite(stamp);
+            }
+            this.publishSharedVerdict(content, true);
+            metrics.incrementCounter(LicenseMetrics.RELOAD +
+                                     LicenseMetrics.SUCCESS);
+            return params;
+        } catch (Exception e) {
+            metrics.incrementFailure(LicenseMetrics.RELOAD, e);
+            throw e;
+        } finally {
+            metrics.updateTimer(LicenseMetrics.RELOAD,
+                                System.nanoTime() - start);
+        }
     }
 
     @Override
     public void uninstallLicense() throws Exception {
-        super.uninstall();
+        long stamp = this.writeLock();
+        try {
+            this.snapshot = null;
+            this.sharedSnapshot = null;
+            this.failure = null;
+            super.uninstall();
+            SharedLicenseVerdict shared = this.sharedVerdict;
+            if (shared != null) {
+                shared.invalidate();
+            }
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Verify the signature of the installed license and decode its params
+     * without validating its dates and extra params, e.g. to find when a
+     * license rejected for its dates becomes valid or expired
+     */
+    public LicenseParams readLicense() throws Exception {
+        long stamp = this.readLock();
+        try {
+            byte[] key = this.getLicenseKey();
+            if (key == null) {
+                String subject = this.licenseParam.getSubject();
+                throw new NoLicenseInstalledException(subject);
+            }
+            return transLicenseContent(this.verifyContent(key, this.notary,
+                                                          false));
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
     }
 
     @Override
     public LicenseParams verifyLicense() throws Exception {
-        return transLicenseContent(super.verify());
+        LicenseMetrics metrics = this.metrics;
+        long start = System.nanoTime();
+        try {
+            LicenseParams params = this.doVerifyLicense(metrics);
+            metrics.incrementCounter(LicenseMetrics.VERIFY +
+                                     LicenseMetrics.SUCCESS);
+            return params;
+        } catch (Exception e) {
+            metrics.incrementFailure(LicenseMetrics.VERIFY, e);
+            throw e;
+        } finally {
+            metrics.updateTimer(LicenseMetrics.VERIFY,
+                                System.nanoTime() - start);
+        }
+    }
+
+    private LicenseParams doVerifyLicense(LicenseMetrics metrics)
+                                          throws Exception {
+        SharedLicenseVerdict shared = this.sharedVerdict;
+        if (shared != null) {
+            LicenseParams params = this.readSharedVerdict(shared);
+            if (params != null) {
+                metrics.incrementCounter(LicenseMetrics.SHARED_HIT);
+                return params;
+            }
+            metrics.incrementCounter(LicenseMetrics.SHARED_MISS);
+        }
+
+        Failure failure = this.failure;
+        if (failure != null && failure.backoff(System.currentTimeMillis(),
+                                               this.keyDigest())) {
+            metrics.incrementCounter(LicenseMetrics.NEGATIVE_HIT);
+            throw failure.backoffError();
+        }
+        try {
+            LicenseParams params = this.verifyLocally(metrics);
+            if (failure != null) {
+                this.failure = null;
+            }
+            return params;
+        } catch (Exception e) {
+            this.recordFailure(failure, e);
+            throw e;
+        }
+    }
+
+    private LicenseParams verifyLocally(LicenseMetrics metrics)
+                                        throws Exception {
+        if (this.snapshotTtl <= NO_SNAPSHOT) {
+            long stamp = this.readLock();
+            try {
+                return transLicenseContent(this.verify(this.notary));
+            } finally {
+                this.lock.unlockRead(stamp);
+            }
+        }
+        Snapshot snapshot = this.snapshot;
+        if (snapshot != null && snapshot.alive(System.currentTimeMillis())) {
+            metrics.incrementCounter(LicenseMetrics.SNAPSHOT_HIT);
+            return snapshot.params();
+        }
+        metrics.incrementCounter(LicenseMetrics.SNAPSHOT_MISS);
+        return this.refreshSnapshot();
+    }
+
+    /**
+     * Get the params of the verdict published by any process, return null
+     * if there is no alive verdict. The hot path is a read of the mapped
+     * sequence and the clock, the verdict is decoded and validated (with
+     * the verify callback) only once for each published sequence. A
+     * verdict without the param of the server id (if set) is rejected, and
+     * a rejected verdict is skipped until the next sequence.
+     */
+    private LicenseParams readSharedVerdict(SharedLicenseVerdict shared)
+                                            throws Exception {
+        long now = System.currentTimeMillis();
+        long sequence = shared.sequence();
+        SharedSnapshot snapshot = this.sharedSnapshot;
+        if (snapshot != null && snapshot.sequence == sequence) {
+            return snapshot.alive(now) ? snapshot.params() : null;
+        }
+
+        SharedLicenseVerdict.Verdict verdict = shared.read(now);
+        if (verdict == null) {
+            return null;
+        }
+        LicenseParams params;
+        try {
+            LicenseContent content = verdict.content();
+            params = transLicenseContent(content);
+            // The bundle entry published by another server isn't of this
+            String serverId = this.serverId;
+            E.checkState(serverId == null ||
+                         params.matchParam(serverId) != null,
+                         "The shared license verdict has no param of " +
+                         "server '%s'", serverId);
+            this.validate(content);
+        } catch (Exception e) {
+            // Verify locally, and skip the verdict until it's published again
+            LOG.warn("Rejected shared license verdict '{}' of sequence {}: {}",
+                     shared.file(), verdict.sequence(), e.toString());
+            this.sharedSnapshot = new SharedSnapshot(verdict.sequence(), null,
+                                                     0L);
+            return null;
+        }
+        this.sharedSnapshot = new SharedSnapshot(verdict.sequence(), params,
+                                                 verdict.expiredAt());
+        return params;
+    }
+
+    /**
+     * Keep the failure to throw it again during the backoff, the backoff
+     * is doubled if the license key and the cause are the same as the last
+     */
+    private void recordFailure(Failure last, Exception e) {
+        long minBackoff = this.minBackoff;
+        if (minBackoff <= NO_BACKOFF) {
+            return;
+        }
+        String digest = this.keyDigest();
+        String cause = Failure.cause(e);
+        int times = 1;
+        if (last != null && last.digest.equals(digest) &&
+            last.cause.equals(cause)) {
+            times = last.times + 1;
+        }
+        long backoff = minBackoff << Math.min(times - 1, 30);
+        if (backoff <= 0L || backoff > this.maxBackoff) {
+            backoff = this.maxBackoff;
+        }
+        this.failure = new Failure(digest, cause, e, times,
+                                   System.currentTimeMillis() + backoff);
+    }
+
+    /**
+     * The digest of the installed license key, which is reused until the
+     * version of the storage changes, or the loaded key changes if the
+     * storage has no version
+     */
+    private String keyDigest() {
+        try {
+            Object version = this.storage.version();
+            KeyDigest cached = this.keyDigest;
+            if (version != null && cached != null &&
+                version.equals(cached.version)) {
+                return cached.digest;
+            }
+            byte[] key = this.storage.load();
+            if (key == null) {
+                return "";
+            }
+            if (cached == null || !Arrays.equals(cached.key, key)) {
+                cached = new KeyDigest(key, VerifiedLicenseCache.digest(key),
+                                       version);
+            } else if (version != null) {
+                cached = new KeyDigest(cached.key, cached.digest, version);
+            }
+            this.keyDigest = cached;
+            return cached.digest;
+        } catch (IOException | UncheckedIOException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Publish the verified content to other processes, the content is
+     * published again by a local verification only if it's changed or the
+     * verdict published last is overwritten or expired
+     */
+    private void publishSharedVerdict(LicenseContent content,
+                                      boolean installed) {
+        SharedLicenseVerdict shared = this.sharedVerdict;
+        if (shared == null) {
+            return;
+        }
+        try {
+            if (installed) {
+                shared.publish(content);
+            } else {
+                shared.publishIfChanged(content);
+            }
+        } catch (IOException e) {
+            // Other processes just verify locally
+            LOG.warn("Failed to publish shared license verdict '{}'",
+                     shared.file(), e);
+        }
+    }
+
+    /**
+     * Get the index of extra params of the verified license, which is used
+     * to match the current server by id, ip or mac
+     */
+    public ExtraParamIndex extraParamIndex() throws Exception {
+        return ExtraParamIndex.of(this.verifyLicense());
+    }
+
+    private LicenseParams refreshSnapshot() throws Exception {
+        this.refreshLock.lock();
+        try {
+            // Check again, the snapshot may be refreshed by other threads
+            Snapshot snapshot = this.snapshot;
+            if (snapshot != null &&
+                snapshot.alive(System.currentTimeMillis())) {
+                return snapshot.params();
+            }
+            // Publish under read lock to not overwrite a concurrent install
+            long stamp = this.readLock();
+            try {
+                LicenseParams params = transLicenseContent(
+                                       this.verify(this.notary));
+                this.publishSnapshot(params);
+                return params;
+            } finally {
+                this.lock.unlockRead(stamp);
+            }
+        } finally {
+            this.refreshLock.unlock();
+        }
+    }
+
+    private long readLock() {
+        long stamp = this.lock.tryReadLock();
+        if (stamp == 0L) {
+            // Only time the contended case to keep the fast path cheap
+            long start = System.nanoTime();
+            stamp = this.lock.readLock();
+            this.metrics.updateTimer(LicenseMetrics.LOCK_WAIT,
+                                     System.nanoTime() - start);
+        }
+        return stamp;
+    }
+
+    private long writeLock() {
+        long stamp = this.lock.tryWriteLock();
+        if (stamp == 0L) {
+            long start = System.nanoTime();
+            stamp = this.lock.writeLock();
+            this.metrics.updateTimer(LicenseMetrics.LOCK_WAIT,
+                                     System.nanoTime() - start);
+        }
+        return stamp;
+    }
+
+    private void publishSnapshot(LicenseParams params) {
+        long ttl = this.snapshotTtl;
+        if (ttl <= NO_SNAPSHOT) {
+            return;
+        }
+        long expiredAt = System.currentTimeMillis() + ttl;
+        if (params.notAfter() != null) {
+            expiredAt = Math.min(expiredAt, params.notAfter().getTime());
+        }
+        this.snapshot = new Snapshot(params, expiredAt);
+    }
+
+    @Override
+    protected LicenseNotary getLicenseNotary() {
+        return this.notary;
+    }
+
+    @Override
+    protected PrivacyGuard getPrivacyGuard() {
+        return this.guards.get();
+    }
+
+    public LicenseInstallParam installParam() {
+        return this.licenseInstallParam;
+    }
+
+    public LicenseKeyStorage storage() {
+        return this.storage;
+    }
+
+    @Override
+    protected byte[] getLicenseKey() {
+        try {
+            return this.storage.load();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load license key", e);
+        }
     }
 
     @Override
-    protected synchronized byte[] create(LicenseContent content,
-                                         LicenseNotary notary)
-                                         throws Exception {
+    protected void setLicenseKey(byte[] key) {
+        try {
+            if (key == null) {
+                this.storage.remove();
+            } else {
+                this.storage.store(key);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store license key", e);
+        }
+    }
+
+    @Override
+    protected byte[] create(LicenseContent content, LicenseNotary notary)
+                            throws Exception {
         super.initialize(content);
         this.validateCreate(content);
         GenericCertificate certificate = notary.sign(content);
-        return super.getPrivacyGuard().cert2key(certificate);
+        return this.getPrivacyGuard().cert2key(certificate);
     }
 
     @Override
-    protected synchronized LicenseContent install(byte[] key,
-                                                  LicenseNotary notary)
-                                                  throws Exception {
-        GenericCertificate certificate = super.getPrivacyGuard().key2cert(key);
-        notary.verify(certificate);
-        String encodedText = certificate.getEncoded();
-        LicenseContent content = (LicenseContent) this.load(encodedText);
+    protected LicenseContent install(byte[] key, LicenseNotary notary)
+                                     throws Exception {
+        LicenseContent content = this.verifyContent(key, notary, true);
         this.validate(content);
-        super.setLicenseKey(key);
-        super.setCertificate(certificate);
+        this.setLicenseKey(key);
+        this.publishSharedVerdict(content, true);
         return content;
     }
 
     @Override
-    protected synchronized LicenseContent verify(LicenseNotary notary)
-                                                 throws Exception {
+    protected LicenseContent verify(LicenseNotary notary) throws Exception {
         // Load license key from preferences
-        byte[] key = super.getLicenseKey();
+        byte[] key = this.getLicenseKey();
         if (key == null) {
-            String subject = super.getLicenseParam().getSubject();
+            String subject = this.licenseParam.getSubject();
             throw new NoLicenseInstalledException(subject);
         }
 
-        GenericCertificate certificate = super.getPrivacyGuard().key2cert(key);
-        notary.verify(certificate);
-        String encodedText = certificate.getEncoded();
-        LicenseContent content = (LicenseContent) this.load(encodedText);
+        LicenseContent content = this.verifyContent(key, notary, false);
         this.validate(content);
-        super.setCertificate(certificate);
+        this.publishSharedVerdict(content, false);
         return content;
     }
 
+    /**
+     * Decrypt the license key, verify its signature and decode the content,
+     * the decrypt and signature check are skipped if the content verified
+     * with the same license key and public key is in the verified cache.
+     * Both the binary license and the legacy XML license are accepted, and
+     * only the header and the entry of this server are verified for a
+     * license bundle, whose entry content is cached by the whole bundle.
+     */
+    private LicenseContent verifyContent(byte[] key, LicenseNotary notary,
+                                         boolean install) throws Exception {
+        boolean bundle = LicenseBundle.isBundle(key);
+        String serverId = this.serverId;
+        E.checkState(!bundle || serverId != null,
+                     "The server id is required to verify license bundle");
+        VerifiedLicenseCache cache = this.verifiedCache;
+        byte[] fingerprint = null;
+        if (cache != null) {
+            fingerprint = this.keyFingerprint();
+            String encodedText = cache.get(key, fingerprint);
+            if (encodedText != null) {
+                LicenseContent content = bundle ||
+                                         BinaryLicense.isBinary(key) ?
+                                         this.decodeBinary(encodedText) :
+                                         this.decode(encodedText);
+                // The cached entry is of another server if the id changed
+                if (!bundle || isEntryOf(content, serverId)) {
+                    this.metrics.incrementCounter(LicenseMetrics.CACHE_HIT);
+                    return content;
+                }
+            }
+            this.metrics.incrementCounter(LicenseMetrics.CACHE_MISS);
+        }
+
+        boolean encode = cache != null;
+        VerifiedEntry verified = bundle ?
+                                 this.verifyBundle(key, serverId, notary,
+                                                   install, encode) :
+                                 this.verifyEntry(key, notary, install,
+                                                  encode);
+        if (cache != null) {
+            cache.put(key, fingerprint, verified.encodedText);
+        }
+        return verified.content;
+    }
+
+    private VerifiedEntry verifyBundle(byte[] key, String serverId,
+                                       LicenseNotary notary, boolean install,
+                                       boolean encode) throws Exception {
+        LicenseBundle bundle = LicenseBundle.parse(key);
+        byte[] entry = bundle.entry(serverId);
+        E.checkState(entry != null,
+                     "The server id '%s' is not authorized by license " +
+                     "bundle", serverId);
+        VerifiedEntry verified = this.verifyEntry(entry, notary, install,
+                                                  encode);
+        /*
+         * The offset table isn't signed, so bind the entry to this server
+         * by its signed extra params, and to the cluster by the header
+         */
+        E.checkState(isEntryOf(verified.content, serverId),
+                     "The license bundle entry of server '%s' is not " +
+                     "issued to it", serverId);
+        LicenseContent header = this.verifyEntry(bundle.header().toBytes(),
+                                                 notary, false, false)
+                                    .content;
+        E.checkState(LicenseBundle.matchHeader(header, verified.content),
+                     "The license bundle entry of server '%s' doesn't " +
+                     "match the bundle header", serverId);
+        return verified;
+    }
+
+    private VerifiedEntry verifyEntry(byte[] key, LicenseNotary notary,
+                                      boolean install, boolean encode)
+                                      throws Exception {
+        LicenseContent content;
+        String encodedText = null;
+        if (BinaryLicense.isBinary(key)) {
+            BinaryLicense license = this.verifyBinary(key, notary);
+            content = this.decode(license);
+            if (install) {
+                // Drop the certificate of the previous XML license if any
+                super.setCertificate(null);
+            }
+            if (encode) {
+                encodedText = BASE64_ENCODER.encodeToString(
+                              license.content());
+            }
+        } else {
+            GenericCertificate certificate = this.verifyCertificate(key,
+                                                                    notary);
+            encodedText = certificate.getEncoded();
+            content = this.decode(encodedText);
+            if (install) {
+                super.setCertificate(certificate);
+            }
+        }
+        return new VerifiedEntry(content, encodedText);
+    }
+
+    /**
+     * Whether the content is the license bundle entry of the server, which
+     * has only the extra param of that server
+     */
+    private static boolean isEntryOf(LicenseContent content,
+                                     String serverId) {
+        List<LicenseExtraParam> params = parseExtraParams(
+                                         (String) content.getExtra());
+        return params.size() == 1 && serverId.equals(params.get(0).id());
+    }
+
+    private byte[] keyFingerprint() throws Exception {
+        KeyStoreParam param = this.licenseParam.getKeyStoreParam();
+        PublicKey publicKey = KeyStoreCache.publicKey(param);
+        Fingerprint fingerprint = this.fingerprint;
+        if (fingerprint == null || fingerprint.key != publicKey) {
+            // The public key is changed if the key store file is changed
+            fingerprint = new Fingerprint(publicKey);
+            this.fingerprint = fingerprint;
+        }
+        return fingerprint.value;
+    }
+
+    private GenericCertificate verifyCertificate(byte[] key,
+                                                 LicenseNotary notary)
+                                                 throws Exception {
+        LicenseMetrics metrics = this.metrics;
+        long start = System.nanoTime();
+        GenericCertificate certificate = this.getPrivacyGuard().key2cert(key);
+        long decrypted = System.nanoTime();
+        metrics.updateTimer(LicenseMetrics.DECRYPT, decrypted - start);
+
+        notary.verify(certificate);
+        metrics.updateTimer(LicenseMetrics.SIGNATURE,
+                            System.nanoTime() - decrypted);
+        return certificate;
+    }
+
+    private BinaryLicense verifyBinary(byte[] key, LicenseNotary notary)
+                                       throws Exception {
+        LicenseMetrics metrics = this.metrics;
+        long start = System.nanoTime();
+        BinaryLicense license = BinaryLicense.parse(key);
+        long parsed = System.nanoTime();
+        metrics.updateTimer(LicenseMetrics.DECRYPT, parsed - start);
+
+        license.verify(KeyStoreCache.publicKey(notary.getKeyStoreParam()));
+        metrics.updateTimer(LicenseMetrics.SIGNATURE,
+                            System.nanoTime() - parsed);
+        return license;
+    }
+
+    private LicenseContent decode(BinaryLicense license) {
+        long start = System.nanoTime();
+        try {
+            return license.decode();
+        } finally {
+            this.metrics.updateTimer(LicenseMetrics.DECODE,
+                                     System.nanoTime() - start);
+        }
+    }
+
+    private LicenseContent decodeBinary(String encodedText) {
+        long start = System.nanoTime();
+        try {
+            return BinaryLicense.decodeContent(
+                   BASE64_DECODER.decode(encodedText));
+        } finally {
+            this.metrics.updateTimer(LicenseMetrics.DECODE,
+                                     System.nanoTime() - start);
+        }
+    }
+
+    private LicenseContent decode(String encodedText) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return this.load(encodedText);
+        } finally {
+            this.metrics.updateTimer(LicenseMetrics.DECODE,
+                                     System.nanoTime() - start);
+        }
+    }
+
     @Override
-    protected synchronized void validate(LicenseContent content)
-                                         throws LicenseContentException {
-        // Call super validate firstly to verify the common license parameters
-        super.validate(content);
+    protected void validate(LicenseContent content)
+                            throws LicenseContentException {
+        LicenseMetrics metrics = this.metrics;
+        long start = System.nanoTime();
+        try {
+            // Call super validate firstly to verify the common parameters
+            super.validate(content);
 
-        // Call user callback to verify the extra license parameters
-        LicenseParams params = transLicenseContent(content);
+            // Call user callback to verify the extra license parameters
+            LicenseParams params = transLicenseContent(content);
+            this.onVerifyLicense(metrics, params);
+        } finally {
+            metrics.updateTimer(LicenseMetrics.VALIDATE,
+                                System.nanoTime() - start);
+        }
+    }
+
+    private void onVerifyLicense(LicenseMetrics metrics, LicenseParams params) {
+        long start = System.nanoTime();
         try {
             this.verifyCallback.onVerifyLicense(params);
         } catch (Exception e) {
-            LOG.error("Failed to verify the extra license parameters", e);
+            metrics.incrementFailure(LicenseMetrics.CALLBACK, e);
+            this.logCallbackError(e);
             throw new IllegalStateException(
                       "Failed to verify the extra license parameters", e);
+        } finally {
+            metrics.updateTimer(LicenseMetrics.CALLBACK,
+                                System.nanoTime() - start);
         }
     }
 
-    protected synchronized void validateCreate(LicenseContent content)
-                                               throws LicenseContentException {
+    private void logCallbackError(Exception e) {
+        long now = System.currentTimeMillis();
+        long loggedAt = this.errorLoggedAt;
+        if (now - loggedAt < ERROR_LOG_INTERVAL) {
+            // A rejected node may verify on every request, don't flood logs
+            this.suppressedErrors.incrementAndGet();
+            LOG.debug("Failed to verify the extra license parameters: {}",
+                      e.toString());
+            return;
+        }
+        this.errorLoggedAt = now;
+        long suppressed = this.suppressedErrors.getAndSet(0L);
+        LOG.error("Failed to verify the extra license parameters " +
+                  "(suppressed {} times since last logged)", suppressed, e);
+    }
+
+    protected void validateCreate(LicenseContent content)
+                                  throws LicenseContentException {
         // Just call super validate is ok
         super.validate(content);
     }
 
-    private Object load(String text) throws Exception {
-        InputStream bis = null;
-        XMLDecoder decoder = null;
-        try {
-            bis = new ByteArrayInputStream(text.getBytes(CHARSET));
-            decoder = new XMLDecoder(new BufferedInputStream(bis, BUF_SIZE));
-            return decoder.readObject();
-        } catch (UnsupportedEncodingException e) {
-            throw new LicenseContentException(String.format(
-                      "Unsupported charset: %s", CHARSET));
-        } finally {
-            if (decoder != null) {
-                decoder.close();
-            }
-            try {
-                if (bis != null) {
-                    bis.close();
+    private LicenseContent load(String text) throws Exception {
+        return LicenseContentDecoder.decode(text);
+    }
+
+    /**
+     * Read the license file by one channel read into an array of the file
+     * size, unlike loadLicenseKey() it doesn't truncate the file larger
+     * than 1MB, like a license bundle of thousands of servers
+     */
+    protected static byte[] readLicenseKey(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                                                    StandardOpenOption.READ)) {
+            long size = channel.size();
+            E.checkArgument(size <= MAX_LICENSE_SIZE,
+                            "The license file '%s' exceeded max size %s " +
+                            "bytes", file, MAX_LICENSE_SIZE);
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
                 }
-            } catch (Exception e) {
-                LOG.warn("Failed to close stream", e);
             }
+            E.checkState(!buffer.hasRemaining(),
+                         "The license file '%s' is truncated while reading",
+                         file);
+            return buffer.array();
         }
     }
 
-    private static LicenseParam wrapLicenseParam(LicenseInstallParam param) {
+    static LicenseParam wrapLicenseParam(LicenseInstallParam param) {
         Preferences preferences = Preferences.userNodeForPackage(
                                   TrueLicenseManager.class);
         CipherParam cipherParam = new DefaultCipherParam(
@@ -199,28 +1016,179 @@ public class TrueLicenseManager extends de.schlichtherle.license.LicenseManager
     }
 
     protected static LicenseParams transLicenseContent(LicenseContent content) {
-        List<LicenseExtraParam> extraParams = parseExtraParams(
-                                              (String) content.getExtra());
-
-        LicenseParams params = new LicenseParams(content.getSubject(),
-                                                 content.getInfo(),
-                                                 content.getIssued(),
-                                                 content.getNotBefore(),
-                                                 content.getNotAfter(),
-                                                 content.getConsumerType(),
-                                                 content.getConsumerAmount(),
-                                                 extraParams);
+        ExtraParamIndex index = parseExtraParamIndex(
+                                (String) content.getExtra());
+
+        LicenseParams params = new IndexedLicenseParams(
+                                   content.getSubject(),
+                                   content.getInfo(),
+                                   content.getIssued(),
+                                   content.getNotBefore(),
+                                   content.getNotAfter(),
+                                   content.getConsumerType(),
+                                   content.getConsumerAmount(),
+                                   index);
         return params;
     }
 
+    /**
+     * Parse the extra params json, the parsed list is immutable and shared
+     * by all the callers which parse the same json content
+     */
     protected static List<LicenseExtraParam> parseExtraParams(String extra) {
+        return parseExtraParamIndex(extra).params();
+    }
+
+    /**
+     * Parse the extra params json and index them, the index is built only
+     * once for the same json content
+     */
+    protected static ExtraParamIndex parseExtraParamIndex(String extra) {
+        ExtraParamIndex index = null;
+        if (extra != null) {
+            index = EXTRA_PARAMS_CACHE.get(extra);
+        }
+        if (index != null) {
+            return index;
+        }
+
+        index = readExtraParamIndex(extra);
+
+        if (EXTRA_PARAMS_CACHE.size() >= EXTRA_PARAMS_CACHE_CAPACITY) {
+            // Few certificates live in a process, just clear the whole cache
+            EXTRA_PARAMS_CACHE.clear();
+        }
+        ExtraParamIndex existed = EXTRA_PARAMS_CACHE.putIfAbsent(extra, index);
+        return existed != null ? existed : index;
+    }
+
+    /**
+     * Parse extra params without the cache
+     */
+    static ExtraParamIndex readExtraParamIndex(String extra) {
+        List<LicenseExtraParam> params;
         try {
-            TypeReference<List<LicenseExtraParam>> type;
-            type = new TypeReference<List<LicenseExtraParam>>() { };
-            return MAPPER.readValue(extra, type);
+            params = EXTRA_PARAMS_READER.readValue(extra);
         } catch (Throwable e) {
             LOG.error("Failed to read extra params", e);
             throw new IllegalStateException("Failed to read extra params", e);
         }
+        return new ExtraParamIndex(params);
+    }
+
+    /**
+     * The SHA-256 fingerprint of the public key, which is computed again
+     * only if the key store is reloaded with another public key
+     */
+    private static final class Fingerprint {
+
+        private final PublicKey key;
+        private final byte[] value;
+
+        public Fingerprint(PublicKey key) {
+            this.key = key;
+            this.value = VerifiedLicenseCache.sha256(key.getEncoded());
+        }
+    }
+
+    /**
+     * Immutable verified license params, alive until the expired time
+     */
+    static class Snapshot {
+
+        private final LicenseParams params;
+        private final long expiredAt;
+
+        public Snapshot(LicenseParams params, long expiredAt) {
+            this.params = params;
+            this.expiredAt = expiredAt;
+        }
+
+        public LicenseParams params() {
+            return this.params;
+        }
+
+        public boolean alive(long now) {
+            return now < this.expiredAt;
+        }
+    }
+
+    /**
+     * The content of a verified license and its encoded text to be cached
+     */
+    private static final class VerifiedEntry {
+
+        private final LicenseContent content;
+        private final String encodedText;
+
+        public VerifiedEntry(LicenseContent content, String encodedText) {
+            this.content = content;
+            this.encodedText = encodedText;
+        }
+    }
+
+    /**
+     * The digest of a loaded license key and the storage version of it
+     */
+    private static final class KeyDigest {
+
+        private final byte[] key;
+        private final String digest;
+        private final Object version;
+
+        public KeyDigest(byte[] key, String digest, Object version) {
+            this.key = key;
+            this.digest = digest;
+            this.version = version;
+        }
+    }
+
+    /**
+     * The failure of verification with the license key digest and cause
+     */
+    private static final class Failure {
+
+        private final String digest;
+        private final String cause;
+        private final LicenseBackoffException error;
+        private final int times;
+        private final long retryAt;
+
+        public Failure(String digest, String cause, Exception error,
+                       int times, long retryAt) {
+            this.digest = digest;
+            this.cause = cause;
+            this.error = new LicenseBackoffException(error, retryAt);
+            this.times = times;
+            this.retryAt = retryAt;
+        }
+
+        public LicenseBackoffException backoffError() {
+            return this.error;
+        }
+
+        public boolean backoff(long now, String digest) {
+            return now < this.retryAt && this.digest.equals(digest);
+        }
+
+        public static String cause(Throwable e) {
+            StringBuilder sb = new StringBuilder(e.getClass().getName());
+            for (Throwable c = e.getCause(); c != null && c != e;
+                 e = c, c = c.getCause()) {
+                sb.append('/').append(c.getClass().getName());
+            }
+            return sb.toString();
+        }
+    }
+
+    private static final class SharedSnapshot extends Snapshot {
+
+        private final long sequence;
+
+        public SharedSnapshot(long sequence, LicenseParams params,
+                              long expiredAt) {
+            super(params, expiredAt);
+            this.sequence = sequence;
+        }
     }
 }
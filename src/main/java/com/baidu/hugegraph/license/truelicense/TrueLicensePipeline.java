@@ -0,0 +1,229 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import com.baidu.hugegraph.license.LicenseCreateParam;
+import com.baidu.hugegraph.util.E;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * TrueLicensePipeline creates licenses from a stream of NDJSON records,
+ * each line is a create param like create-license.json, and writes a json
+ * result line per record in the input order.
+ *
+ * The records are read, then validated, signed and written by parallel
+ * workers, and their results are written out by another thread. At most
+ * {@code capacity} records are in flight, the reading blocks once the
+ * window is full, so the memory doesn't grow with the input.
+ */
+public class TrueLicensePipeline {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final Future<ObjectNode> END =
+                         CompletableFuture.completedFuture(null);
+    private static final long OFFER_TIMEOUT = 100L;
+
+    private final int parallelism;
+    private final int capacity;
+
+    public TrueLicensePipeline(int parallelism, int capacity) {
+        E.checkArgument(parallelism > 0,
+                        "The parallelism must be > 0, but got %s",
+                        parallelism);
+        E.checkArgument(capacity > 0,
+                        "The capacity must be > 0, but got %s", capacity);
+        this.parallelism = parallelism;
+        this.capacity = capacity;
+    }
+
+    public Summary run(BufferedReader input, Writer output)
+                       throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Summary summary = new Summary();
+        BlockingQueue<Future<ObjectNode>> window =
+                            new ArrayBlockingQueue<>(this.capacity);
+        ExecutorService workers = Executors.newFixedThreadPool(
+                                  this.parallelism, threadFactory("worker"));
+        ExecutorService writer = Executors.newSingleThreadExecutor(
+                                 threadFactory("writer"));
+        try {
+            Future<?> written = writer.submit(() -> {
+                write(window, output, summary);
+                return null;
+            });
+
+            long lineNo = 0L;
+            String line;
+            while ((line = input.readLine()) != null) {
+                lineNo++;
+                if (StringUtils.isBlank(line)) {
+                    continue;
+                }
+                long no = lineNo;
+                String record = line;
+                offer(window, workers.submit(() -> create(no, record)),
+                      written);
+            }
+            offer(window, END, written);
+            waitFor(written);
+        } finally {
+            workers.shutdownNow();
+            writer.shutdownNow();
+        }
+        summary.elapsed = System.nanoTime() - start;
+        return summary;
+    }
+
+    private static void offer(BlockingQueue<Future<ObjectNode>> window,
+                              Future<ObjectNode> future, Future<?> written)
+                              throws IOException, InterruptedException {
+        // Block while the window is full, unless the writer failed
+        while (!window.offer(future, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            if (written.isDone()) {
+                waitFor(written);
+                throw new IllegalStateException("The writer stopped early");
+            }
+        }
+    }
+
+    private static void waitFor(Future<?> written)
+                                throws IOException, InterruptedException {
+        try {
+            written.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("Failed to write results",
+                                            e.getCause());
+        }
+    }
+
+    private static void write(BlockingQueue<Future<ObjectNode>> window,
+                              Writer output, Summary summary)
+                              throws Exception {
+        Future<ObjectNode> future;
+        while ((future = window.take()) != END) {
+            ObjectNode result = future.get();
+            if (result.get("success").asBoolean()) {
+                summary.successes++;
+            } else {
+                summary.failures++;
+            }
+            output.write(MAPPER.writeValueAsString(result));
+            output.write('\n');
+            // Flush when no more result is ready to keep the latency low
+            if (window.isEmpty()) {
+                output.flush();
+            }
+        }
+        output.flush();
+    }
+
+    private static ObjectNode create(long lineNo, String record) {
+        long start = System.nanoTime();
+        ObjectNode result = MAPPER.createObjectNode();
+        result.put("line", lineNo);
+        try {
+            LicenseCreateParam param;
+            try {
+                param = MAPPER.readValue(record, LicenseCreateParam.class);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(
+                          "Failed to parse create param", e);
+            }
+            result.put("license_path", param.licensePath());
+            E.checkArgument(StringUtils.isNotEmpty(param.licensePath()),
+                            "The license_path can't be empty");
+            new TrueLicenseCreator(param).create();
+            result.put("success", true);
+        } catch (Throwable e) {
+            Throwable root = e;
+            while (root.getCause() != null) {
+                root = root.getCause();
+            }
+            String error = e.getMessage();
+            if (root != e) {
+                error = String.format("%s: %s", error, root.getMessage());
+            }
+            result.put("success", false);
+            result.put("error", error);
+        }
+        result.put("cost_ms", (System.nanoTime() - start) / 1000000L);
+        return result;
+    }
+
+    private static BasicThreadFactory threadFactory(String name) {
+        return new BasicThreadFactory.Builder()
+                                     .namingPattern("license-pipeline-" +
+                                                    name + "-%d")
+                                     .daemon(true)
+                                     .build();
+    }
+
+    public static class Summary {
+
+        // Only updated by the writer thread and read after it's done
+        private long successes;
+        private long failures;
+        private long elapsed;
+
+        public long successes() {
+            return this.successes;
+        }
+
+        public long failures() {
+            return this.failures;
+        }
+
+        /**
+         * The total elapsed time in nanoseconds
+         */
+        public long elapsed() {
+            return this.elapsed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Generated %s licenses (%s succeeded, " +
+                                 "%s failed) in %.3f s",
+                                 this.successes + this.failures,
+                                 this.successes, this.failures,
+                                 this.elapsed / 1e9);
+        }
+    }
+}
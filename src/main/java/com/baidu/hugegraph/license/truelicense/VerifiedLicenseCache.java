@@ -0,0 +1,243 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Properties;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+
+import com.baidu.hugegraph.util.Bytes;
+import com.baidu.hugegraph.util.E;
+import com.baidu.hugegraph.util.Log;
+
+/**
+ * VerifiedLicenseCache persists the content of the last verified license,
+ * so that the signature check is skipped after restart if the installed
+ * license key and the public key are unchanged.
+ *
+ * The entry is keyed by the SHA-256 digest of the license key bytes and the
+ * fingerprint of the public key, and signed by HMAC-SHA256 with a secret,
+ * an entry that is modified or signed with another secret is ignored.
+ * Only the decrypt and signature check are skipped, the dates and the
+ * extra params are still validated on every verification.
+ */
+public class VerifiedLicenseCache {
+
+    private static final Logger LOG = Log.logger(VerifiedLicenseCache.class);
+
+    private static final String VERSION = "1";
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_DIGEST = "key_digest";
+    private static final String KEY_FINGERPRINT = "key_fingerprint";
+    private static final String KEY_CONTENT = "content";
+    private static final String KEY_MAC = "mac";
+
+    private final Path file;
+    private final SecretKeySpec secret;
+    private volatile Entry entry;
+
+    public VerifiedLicenseCache(String directory, String name, byte[] secret) {
+        E.checkArgument(name != null && !name.isEmpty(),
+                        "The name of verified license cache can't be empty");
+        E.checkArgument(secret != null && secret.length > 0,
+                        "The secret of verified license cache can't be empty");
+        File dir = new File(directory);
+        E.checkArgument(dir.isDirectory() || dir.mkdirs(),
+                        "Failed to create directory '%s'", directory);
+        this.file = dir.toPath().resolve(name + ".verified");
+        this.secret = new SecretKeySpec(secret, MAC_ALGORITHM);
+        this.entry = null;
+    }
+
+    public Path file() {
+        return this.file;
+    }
+
+    /**
+     * Get the encoded license content verified with the same license key
+     * and public key, return null if not cached
+     */
+    public String get(byte[] licenseKey, byte[] fingerprint) {
+        String digest = digest(licenseKey);
+        String keyFingerprint = Bytes.toHex(fingerprint);
+        Entry entry = this.entry;
+        if (entry == null) {
+            entry = this.load();
+            this.entry = entry;
+        }
+        if (entry != null && entry.digest.equals(digest) &&
+            entry.fingerprint.equals(keyFingerprint)) {
+            return entry.content;
+        }
+        return null;
+    }
+
+    public synchronized void put(byte[] licenseKey, byte[] fingerprint,
+                                 String content) {
+        Entry entry = new Entry(digest(licenseKey),
+                                Bytes.toHex(fingerprint), content);
+        Properties props = new Properties();
+        props.setProperty(KEY_VERSION, VERSION);
+        props.setProperty(KEY_DIGEST, entry.digest);
+        props.setProperty(KEY_FINGERPRINT, entry.fingerprint);
+        props.setProperty(KEY_CONTENT, Base64.getEncoder().encodeToString(
+                                       content.getBytes(
+                                       StandardCharsets.UTF_8)));
+        props.setProperty(KEY_MAC, this.mac(entry));
+        try {
+            this.write(props);
+        } catch (IOException e) {
+            // The cache is an optimization, just verify fully next time
+            LOG.warn("Failed to write verified license cache '{}'",
+                     this.file, e);
+        }
+        this.entry = entry;
+    }
+
+    public synchronized void invalidate() {
+        this.entry = null;
+        try {
+            Files.deleteIfExists(this.file);
+        } catch (IOException e) {
+            LOG.warn("Failed to delete verified license cache '{}'",
+                     this.file, e);
+        }
+    }
+
+    private Entry load() {
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(this.file)) {
+            props.load(in);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOG.warn("Failed to read verified license cache '{}'",
+                     this.file, e);
+            return null;
+        }
+
+        try {
+            E.checkState(VERSION.equals(props.getProperty(KEY_VERSION)),
+                         "Unsupported version '%s'",
+                         props.getProperty(KEY_VERSION));
+            byte[] content = Base64.getDecoder().decode(
+                             props.getProperty(KEY_CONTENT, ""));
+            Entry entry = new Entry(props.getProperty(KEY_DIGEST, ""),
+                                    props.getProperty(KEY_FINGERPRINT, ""),
+                                    new String(content,
+                                               StandardCharsets.UTF_8));
+            byte[] expected = this.mac(entry).getBytes(StandardCharsets.UTF_8);
+            byte[] actual = props.getProperty(KEY_MAC, "")
+                                 .getBytes(StandardCharsets.UTF_8);
+            E.checkState(MessageDigest.isEqual(expected, actual),
+                         "Mismatched mac");
+            return entry;
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            LOG.warn("Ignore invalid verified license cache '{}': {}",
+                     this.file, e.getMessage());
+            return null;
+        }
+    }
+
+    private void write(Properties props) throws IOException {
+        Path temp = Files.createTempFile(this.file.getParent(),
+                                         this.file.getFileName().toString(),
+                                         ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                props.store(out, null);
+            }
+            try {
+                Files.move(temp, this.file, StandardCopyOption.ATOMIC_MOVE,
+                           StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, this.file,
+                           StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private String mac(Entry entry) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(this.secret);
+            for (String field : Arrays.asList(VERSION, entry.digest,
+                                              entry.fingerprint,
+                                              entry.content)) {
+                byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+                // Prefix the length to avoid ambiguous concatenation
+                mac.update(ByteBuffer.allocate(Integer.BYTES)
+                                     .putInt(bytes.length).array());
+                mac.update(bytes);
+            }
+            return Bytes.toHex(mac.doFinal());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to compute mac", e);
+        }
+    }
+
+    static String digest(byte[] bytes) {
+        return Bytes.toHex(sha256(bytes));
+    }
+
+    static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static final class Entry {
+
+        private final String digest;
+        private final String fingerprint;
+        private final String content;
+
+        public Entry(String digest, String fingerprint, String content) {
+            this.digest = digest;
+            this.fingerprint = fingerprint;
+            this.content = content;
+        }
+    }
+}
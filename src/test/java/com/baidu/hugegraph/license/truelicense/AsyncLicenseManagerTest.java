@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.baidu.hugegraph.license.LicenseManager;
+import com.baidu.hugegraph.license.LicenseParams;
+import com.baidu.hugegraph.testutil.Assert;
+
+public class AsyncLicenseManagerTest {
+
+    @Test
+    public void testVerifyLicenseCoalesced() throws Exception {
+        BlockingLicenseManager manager = new BlockingLicenseManager();
+        try (AsyncLicenseManager async = new AsyncLicenseManager(manager)) {
+            List<CompletableFuture<LicenseParams>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                futures.add(async.verifyLicense());
+            }
+            Assert.assertTrue(manager.started.await(10, TimeUnit.SECONDS));
+            manager.release.countDown();
+
+            for (CompletableFuture<LicenseParams> future : futures) {
+                Assert.assertSame(manager.params,
+                                  future.get(10, TimeUnit.SECONDS));
+            }
+            Assert.assertEquals(1, manager.verifyTimes.get());
+
+            // A new verification runs once the in-flight one finished
+            Assert.assertSame(manager.params,
+                              async.verifyLicense().get(10, TimeUnit.SECONDS));
+            Assert.assertEquals(2, manager.verifyTimes.get());
+        }
+    }
+
+    @Test
+    public void testInstallAndUninstallLicense() throws Exception {
+        BlockingLicenseManager manager = new BlockingLicenseManager();
+        manager.release.countDown();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (AsyncLicenseManager async = new AsyncLicenseManager(manager,
+                                                                 executor)) {
+            Assert.assertSame(manager.params,
+                              async.installLicense().get(10, TimeUnit.SECONDS));
+            Assert.assertNull(async.uninstallLicense()
+                                   .get(10, TimeUnit.SECONDS));
+            Assert.assertEquals(1, manager.installTimes.get());
+            Assert.assertEquals(1, manager.uninstallTimes.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testVerifyLicenseWithError() throws Exception {
+        BlockingLicenseManager manager = new BlockingLicenseManager();
+        manager.release.countDown();
+        manager.error = new IllegalStateException("The license is expired");
+        try (AsyncLicenseManager async = new AsyncLicenseManager(manager)) {
+            CompletableFuture<LicenseParams> future = async.verifyLicense();
+            Assert.assertThrows(ExecutionException.class, () -> {
+                future.get(10, TimeUnit.SECONDS);
+            }, e -> {
+                Assert.assertSame(manager.error, e.getCause());
+            });
+
+            // The failed verification is not shared by later callers
+            manager.error = null;
+            Assert.assertSame(manager.params,
+                              async.verifyLicense().get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testVerifyLicenseWithRejectedExecutor() throws Exception {
+        BlockingLicenseManager manager = new BlockingLicenseManager();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        try (AsyncLicenseManager async = new AsyncLicenseManager(manager,
+                                                                 executor)) {
+            Assert.assertTrue(async.verifyLicense().isCompletedExceptionally());
+            Assert.assertTrue(async.verifyLicense().isCompletedExceptionally());
+            Assert.assertEquals(0, manager.verifyTimes.get());
+        }
+    }
+
+    private static class BlockingLicenseManager implements LicenseManager {
+
+        private final LicenseParams params = new LicenseParams();
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger installTimes = new AtomicInteger();
+        private final AtomicInteger uninstallTimes = new AtomicInteger();
+        private final AtomicInteger verifyTimes = new AtomicInteger();
+        private volatile Exception error;
+
+        @Override
+        public LicenseParams installLicense() {
+            this.installTimes.incrementAndGet();
+            return this.params;
+        }
+
+        @Override
+        public void uninstallLicense() {
+            this.uninstallTimes.incrementAndGet();
+        }
+
+        @Override
+        public LicenseParams verifyLicense() throws Exception {
+            this.verifyTimes.incrementAndGet();
+            this.started.countDown();
+            this.release.await();
+            if (this.error != null) {
+                throw this.error;
+            }
+            return this.params;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.Date;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.junit.Test;
+
+import com.baidu.hugegraph.license.truelicense.TrueLicenseCreator.CustomKeyStoreParam;
+import com.baidu.hugegraph.testutil.Assert;
+
+import de.schlichtherle.license.DefaultCipherParam;
+import de.schlichtherle.license.KeyStoreParam;
+import de.schlichtherle.license.LicenseContent;
+import de.schlichtherle.license.PrivacyGuard;
+import de.schlichtherle.xml.GenericCertificateIntegrityException;
+
+public class BinaryLicenseTest {
+
+    private static final String DIR = "src/test/resources/";
+    private static final String PASSWORD = "a123456";
+
+    private static final X500Principal ISSUER = new X500Principal(
+            "CN=liningrui, OU=baidu, O=hugegraph, L=beijing, ST=beijing, C=cn");
+
+    @Test
+    public void testSignAndVerify() throws Exception {
+        LicenseContent content = newContent();
+        byte[] key = BinaryLicense.sign(content, privateKey()).toBytes();
+        Assert.assertTrue(BinaryLicense.isBinary(key));
+        Assert.assertEquals(LicenseFormat.BINARY, LicenseFormat.of(key));
+
+        BinaryLicense license = BinaryLicense.parse(key);
+        Assert.assertEquals("SHA1withDSA", license.algorithm());
+        license.verify(publicKey());
+        Assert.assertArrayEquals(key, license.toBytes());
+        assertContentEquals(content, license.decode());
+        assertContentEquals(content,
+                            BinaryLicense.decodeContent(license.content()));
+    }
+
+    @Test
+    public void testDecodeWithDefaultValues() throws Exception {
+        LicenseContent content = new LicenseContent();
+        byte[] key = BinaryLicense.sign(content, privateKey()).toBytes();
+        assertContentEquals(content, BinaryLicense.parse(key).decode());
+
+        content = newContent();
+        content.setInfo("<description> & \"quoted\" 中文 \r\n");
+        content.setExtra(null);
+        content.setHolder(new X500Principal("CN=holder, O=hugegraph"));
+        key = BinaryLicense.sign(content, privateKey()).toBytes();
+        assertContentEquals(content, BinaryLicense.parse(key).decode());
+
+        LicenseContent invalid = newContent();
+        invalid.setExtra(new Date());
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            BinaryLicense.sign(invalid, privateKey());
+        }, e -> {
+            Assert.assertContains("Only string extra is supported",
+                                  e.getMessage());
+        });
+    }
+
+    @Test
+    public void testSignAndVerifyWithDeflatedContent() throws Exception {
+        LicenseContent content = newContent(1000);
+        byte[] key = BinaryLicense.sign(content, privateKey()).toBytes();
+
+        BinaryLicense license = BinaryLicense.parse(key);
+        Assert.assertTrue(license.deflated());
+        license.verify(publicKey());
+        assertContentEquals(content, license.decode());
+        assertContentEquals(content,
+                            BinaryLicense.decodeContent(license.content()));
+        Assert.assertFalse(BinaryLicense.parse(BinaryLicense.sign(
+                           newContent(), privateKey()).toBytes()).deflated());
+
+        // Break the deflated content and keep the length of raw content
+        byte[] broken = key.clone();
+        for (int i = 14; i < 30; i++) {
+            broken[i] = 0;
+        }
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            BinaryLicense.parse(broken).decode();
+        }, e -> {
+            Assert.assertContains("Invalid deflated content", e.getMessage());
+        });
+    }
+
+    @Test
+    public void testVerifyWithTamperedContent() throws Exception {
+        byte[] key = BinaryLicense.sign(newContent(), privateKey()).toBytes();
+        // Change the consumer type "user" to "usEr"
+        int index = indexOf(key, "user".getBytes("UTF-8"));
+        Assert.assertTrue(index > 0);
+        key[index + 2] = 'E';
+
+        BinaryLicense license = BinaryLicense.parse(key);
+        Assert.assertEquals("usEr", license.decode().getConsumerType());
+        Assert.assertThrows(GenericCertificateIntegrityException.class, () -> {
+            license.verify(publicKey());
+        });
+    }
+
+    @Test
+    public void testParseWithInvalidKey() throws Exception {
+        byte[] key = BinaryLicense.sign(newContent(), privateKey()).toBytes();
+
+        Assert.assertFalse(BinaryLicense.isBinary(null));
+        Assert.assertFalse(BinaryLicense.isBinary(new byte[]{'H', 'G'}));
+        Assert.assertFalse(BinaryLicense.isBinary(
+                           Arrays.copyOfRange(key, 1, key.length)));
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            BinaryLicense.parse(new byte[]{'<', 'x', 'm', 'l', '>'});
+        }, e -> {
+            Assert.assertContains("Invalid binary license header",
+                                  e.getMessage());
+        });
+
+        byte[] newer = key.clone();
+        newer[4] = BinaryLicense.VERSION + 1;
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            BinaryLicense.parse(newer);
+        }, e -> {
+            Assert.assertContains("Unsupported binary license version 2",
+                                  e.getMessage());
+        });
+
+        byte[] flags = key.clone();
+        flags[5] = 0x02;
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            BinaryLicense.parse(flags);
+        }, e -> {
+            Assert.assertContains("Unsupported binary license flags 2",
+                                  e.getMessage());
+        });
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            BinaryLicense.parse(Arrays.copyOf(key, key.length - 1));
+        }, e -> {
+            Assert.assertContains("Invalid binary license", e.getMessage());
+        });
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            BinaryLicense.parse(Arrays.copyOf(key, key.length + 1));
+        }, e -> {
+            Assert.assertContains("trailing bytes", e.getMessage());
+        });
+
+        byte[] oversize = key.clone();
+        // The content length just after the header
+        oversize[6] = 0x7f;
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            BinaryLicense.parse(oversize);
+        }, e -> {
+            Assert.assertContains("Invalid field length", e.getMessage());
+        });
+    }
+
+    @Test
+    public void testSizeSmallerThanXmlLicense() throws Exception {
+        for (int servers : new int[]{1, 100, 1000}) {
+            LicenseContent content = newContent(servers);
+            KeyStoreParam param = privateKeyParam();
+            byte[] xml = new PrivacyGuard(new DefaultCipherParam(PASSWORD))
+                         .cert2key(new ConcurrentLicenseNotary(param)
+                         .sign(content));
+            byte[] binary = BinaryLicense.sign(content, privateKey())
+                                         .toBytes();
+
+            Assert.assertEquals(LicenseFormat.XML, LicenseFormat.of(xml));
+            Assert.assertTrue(String.format("The binary license (%s bytes) " +
+                                            "should be smaller than the " +
+                                            "xml license (%s bytes) with " +
+                                            "%s servers", binary.length,
+                                            xml.length, servers),
+                              binary.length < xml.length);
+        }
+    }
+
+    private static LicenseContent newContent(int servers) {
+        StringBuilder extra = new StringBuilder("[");
+        for (int i = 0; i < servers; i++) {
+            if (i > 0) {
+                extra.append(',');
+            }
+            extra.append(String.format("{\"id\":\"server-%s\",\"graphs\":3," +
+                                       "\"ip\":\"10.0.%s.%s\"}",
+                                       i, i / 256, i % 256));
+        }
+        LicenseContent content = newContent();
+        content.setExtra(extra.append(']').toString());
+        return content;
+    }
+
+    private static LicenseContent newContent() {
+        LicenseContent content = new LicenseContent();
+        content.setHolder(ISSUER);
+        content.setIssuer(ISSUER);
+        content.setSubject("hugegraph-evaluation");
+        content.setIssued(new Date(1564588800000L));
+        content.setNotBefore(new Date(1564588800000L));
+        content.setNotAfter(new Date(1880121600000L));
+        content.setConsumerType("user");
+        content.setConsumerAmount(1);
+        content.setInfo("description");
+        content.setExtra("[{\"id\":\"server-1\",\"graphs\":3}]");
+        return content;
+    }
+
+    private static void assertContentEquals(LicenseContent expected,
+                                            LicenseContent actual) {
+        Assert.assertEquals(expected.getSubject(), actual.getSubject());
+        Assert.assertEquals(expected.getHolder(), actual.getHolder());
+        Assert.assertEquals(expected.getIssuer(), actual.getIssuer());
+        Assert.assertEquals(expected.getIssued(), actual.getIssued());
+        Assert.assertEquals(expected.getNotBefore(), actual.getNotBefore());
+        Assert.assertEquals(expected.getNotAfter(), actual.getNotAfter());
+        Assert.assertEquals(expected.getConsumerType(),
+                            actual.getConsumerType());
+        Assert.assertEquals(expected.getConsumerAmount(),
+                            actual.getConsumerAmount());
+        Assert.assertEquals(expected.getInfo(), actual.getInfo());
+        Assert.assertEquals(expected.getExtra(), actual.getExtra());
+    }
+
+    private static int indexOf(byte[] bytes, byte[] target) {
+        for (int i = 0; i <= bytes.length - target.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + target.length),
+                              target)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static KeyStoreParam privateKeyParam() {
+        return new CustomKeyStoreParam(TrueLicenseCreator.class,
+                                       DIR + "privateKeys.store",
+                                       "privatekey", PASSWORD, PASSWORD);
+    }
+
+    private static PrivateKey privateKey() throws Exception {
+        return KeyStoreCache.privateKey(privateKeyParam());
+    }
+
+    private static PublicKey publicKey() throws Exception {
+        return KeyStoreCache.publicKey(new CustomKeyStoreParam(
+                                       TrueLicenseManager.class,
+                                       DIR + "publicCerts.store",
+                                       "publiccert", PASSWORD, null));
+    }
+}
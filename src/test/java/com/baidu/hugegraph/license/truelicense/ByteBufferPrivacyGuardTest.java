@@ -0,0 +1,186 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.junit.Test;
+
+import com.baidu.hugegraph.license.truelicense.TrueLicenseCreator.CustomKeyStoreParam;
+import com.baidu.hugegraph.testutil.Assert;
+
+import de.schlichtherle.license.DefaultCipherParam;
+import de.schlichtherle.license.LicenseContent;
+import de.schlichtherle.license.LicenseNotary;
+import de.schlichtherle.license.PrivacyGuard;
+import de.schlichtherle.xml.GenericCertificate;
+import de.schlichtherle.xml.PersistenceService;
+
+public class ByteBufferPrivacyGuardTest {
+
+    private static final String DIR = "src/test/resources/";
+    private static final String PASSWORD = "a123456";
+
+    private static final X500Principal ISSUER = new X500Principal(
+            "CN=liningrui, OU=baidu, O=hugegraph, L=beijing, ST=beijing, C=cn");
+
+    @Test
+    public void testKey2Cert() throws Exception {
+        GenericCertificate certificate = newCertificate();
+        PrivacyGuard legacy = new PrivacyGuard(new DefaultCipherParam(
+                                               PASSWORD));
+        byte[] key = legacy.cert2key(certificate);
+
+        TestGuard guard = new TestGuard();
+        assertCertificateEquals(legacy.key2cert(key), guard.key2cert(key));
+
+        // The key in the middle of a larger buffer
+        byte[] padded = new byte[key.length + 16];
+        System.arraycopy(key, 0, padded, 8, key.length);
+        ByteBuffer buffer = ByteBuffer.wrap(padded, 8, key.length).slice();
+        GenericCertificate decoded = guard.key2cert(buffer);
+        Assert.assertFalse(buffer.hasRemaining());
+        assertCertificateEquals(certificate, decoded);
+
+        publicNotary().verify(decoded);
+        Assert.assertEquals(certificate.getEncoded(), decoded.getEncoded());
+    }
+
+    @Test
+    public void testKey2CertWithGzipHeaderFields() throws Exception {
+        GenericCertificate certificate = newCertificate();
+        byte[] gzip = gzip(certificate);
+        // Set FNAME and insert the file name after the fixed header
+        byte[] named = new byte[gzip.length + 5];
+        System.arraycopy(gzip, 0, named, 0, 10);
+        System.arraycopy("name\0".getBytes("UTF-8"), 0, named, 10, 5);
+        System.arraycopy(gzip, 10, named, 15, gzip.length - 10);
+        named[3] = 0x08;
+
+        TestGuard guard = new TestGuard();
+        assertCertificateEquals(certificate,
+                                guard.key2cert(guard.encrypt(named)));
+    }
+
+    @Test
+    public void testKey2CertWithFlushedBlocks() throws Exception {
+        GenericCertificate certificate = newCertificate();
+        // The sync flush ends the content before the empty final block
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(output, true)) {
+            PersistenceService.store(certificate, gzip);
+            gzip.flush();
+        }
+
+        TestGuard guard = new TestGuard();
+        assertCertificateEquals(certificate, guard.key2cert(guard.encrypt(
+                                             output.toByteArray())));
+    }
+
+    @Test
+    public void testKey2CertWithCorruptKey() throws Exception {
+        TestGuard guard = new TestGuard();
+        Assert.assertThrows(ZipException.class, () -> {
+            guard.key2cert(guard.encrypt("not gzip content".getBytes()));
+        }, e -> {
+            Assert.assertContains("Not in GZIP format", e.getMessage());
+        });
+
+        byte[] gzip = gzip(newCertificate());
+        byte[] crc = gzip.clone();
+        crc[crc.length - 8] ^= 0x01;
+        Assert.assertThrows(ZipException.class, () -> {
+            guard.key2cert(guard.encrypt(crc));
+        }, e -> {
+            Assert.assertContains("Corrupt GZIP trailer", e.getMessage());
+        });
+
+        byte[] length = gzip.clone();
+        length[length.length - 4] ^= 0x01;
+        Assert.assertThrows(ZipException.class, () -> {
+            guard.key2cert(guard.encrypt(length));
+        }, e -> {
+            Assert.assertContains("Corrupt GZIP content", e.getMessage());
+        });
+    }
+
+    private static GenericCertificate newCertificate() throws Exception {
+        LicenseContent content = new LicenseContent();
+        content.setHolder(ISSUER);
+        content.setIssuer(ISSUER);
+        content.setSubject("hugegraph-evaluation");
+        content.setIssued(new Date(1564588800000L));
+        content.setNotBefore(new Date(1564588800000L));
+        content.setNotAfter(new Date(1880121600000L));
+        content.setConsumerType("user");
+        content.setConsumerAmount(1);
+        content.setInfo("<description> & \"quoted\" 中文");
+        content.setExtra("[{\"id\":\"server-1\",\"graphs\":3}]");
+        return new ConcurrentLicenseNotary(new CustomKeyStoreParam(
+                                           TrueLicenseCreator.class,
+                                           DIR + "privateKeys.store",
+                                           "privatekey", PASSWORD, PASSWORD))
+                   .sign(content);
+    }
+
+    private static LicenseNotary publicNotary() {
+        return new ConcurrentLicenseNotary(new CustomKeyStoreParam(
+                                           TrueLicenseManager.class,
+                                           DIR + "publicCerts.store",
+                                           "publiccert", PASSWORD, null));
+    }
+
+    private static byte[] gzip(GenericCertificate certificate)
+                               throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+            PersistenceService.store(certificate, gzip);
+        }
+        return output.toByteArray();
+    }
+
+    private static void assertCertificateEquals(GenericCertificate expected,
+                                                GenericCertificate actual) {
+        Assert.assertEquals(expected.getEncoded(), actual.getEncoded());
+        Assert.assertEquals(expected.getSignature(), actual.getSignature());
+        Assert.assertEquals(expected.getSignatureAlgorithm(),
+                            actual.getSignatureAlgorithm());
+        Assert.assertEquals(expected.getSignatureEncoding(),
+                            actual.getSignatureEncoding());
+    }
+
+    private static class TestGuard extends ByteBufferPrivacyGuard {
+
+        public TestGuard() {
+            super(new DefaultCipherParam(PASSWORD));
+        }
+
+        @SuppressWarnings("deprecation")
+        public byte[] encrypt(byte[] bytes) throws Exception {
+            return this.getCipher4Encryption().doFinal(bytes);
+        }
+    }
+}
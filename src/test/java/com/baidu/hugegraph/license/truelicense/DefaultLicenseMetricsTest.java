@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.Test;
+
+import com.baidu.hugegraph.license.truelicense.LicenseMetricsMXBean.TimerSnapshot;
+import com.baidu.hugegraph.testutil.Assert;
+
+public class DefaultLicenseMetricsTest {
+
+    @Test
+    public void testCounters() {
+        DefaultLicenseMetrics metrics = new DefaultLicenseMetrics();
+        metrics.incrementCounter("verify.success");
+        metrics.incrementCounter("verify.success");
+        metrics.incrementFailure("verify", new IllegalStateException());
+
+        Assert.assertEquals(2L, metrics.counter("verify.success"));
+        Assert.assertEquals(1L, metrics.counter(
+                                "verify.failure.IllegalStateException"));
+        Assert.assertEquals(0L, metrics.counter("install.success"));
+
+        Map<String, Long> counters = metrics.getCounters();
+        Assert.assertEquals(2, counters.size());
+
+        metrics.reset();
+        Assert.assertEquals(0L, metrics.counter("verify.success"));
+    }
+
+    @Test
+    public void testTimers() {
+        DefaultLicenseMetrics metrics = new DefaultLicenseMetrics();
+        for (int i = 1; i <= 1000; i++) {
+            metrics.updateTimer("verify", i * 1000L);
+        }
+        metrics.updateTimer("verify", 0L);
+
+        TimerSnapshot timer = metrics.timer("verify");
+        Assert.assertEquals(1001L, timer.getCount());
+        Assert.assertEquals(500500000L, timer.getTotal());
+        Assert.assertEquals(1000000L, timer.getMax());
+        Assert.assertEquals(500000L, timer.getMean());
+        // The percentiles are the upper bounds of power of two buckets
+        Assert.assertEquals(524287L, timer.getP50());
+        Assert.assertEquals(1000000L, timer.getP99());
+        Assert.assertEquals(1000000L, timer.getP999());
+
+        Assert.assertEquals(0L, metrics.timer("unknown").getCount());
+        Assert.assertEquals(0L, metrics.timer("unknown").getP99());
+    }
+
+    @Test
+    public void testRegisterMBean() throws Exception {
+        DefaultLicenseMetrics metrics = new DefaultLicenseMetrics();
+        metrics.incrementCounter("verify.success");
+        metrics.updateTimer("verify", 100L);
+
+        ObjectName name = metrics.registerMBean("test");
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            TabularData counters = (TabularData) server.getAttribute(
+                                                 name, "Counters");
+            Assert.assertEquals(1, counters.size());
+
+            TabularData timers = (TabularData) server.getAttribute(
+                                               name, "Timers");
+            CompositeData row = timers.get(new Object[]{"verify"});
+            CompositeData timer = (CompositeData) row.get("value");
+            Assert.assertEquals(1L, timer.get("count"));
+            Assert.assertEquals(100L, timer.get("max"));
+
+            Assert.assertThrows(IllegalStateException.class, () -> {
+                metrics.registerMBean("test");
+            });
+        } finally {
+            metrics.unregisterMBean("test");
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.baidu.hugegraph.license.LicenseExtraParam;
+import com.baidu.hugegraph.license.LicenseParams;
+import com.baidu.hugegraph.testutil.Assert;
+
+public class ExtraParamIndexTest {
+
+    private static final String EXTRA =
+            "[{\"id\":\"server-1\",\"graphs\":3,\"ip\":\"10.0.0.1\"," +
+            "\"mac\":\"6C-92-BF-3A-FE-B0\"}," +
+            "{\"id\":\"server-2\",\"graphs\":4,\"ip\":\"10.0.0.1\"," +
+            "\"mac\":\"6c:92:bf:3a:fe:b1\"}," +
+            "{\"id\":\"server-3\",\"graphs\":5,\"ip\":\"FE80::1\"}," +
+            "{\"id\":\"server-1\",\"graphs\":6}]";
+
+    @Test
+    public void testMatchId() {
+        ExtraParamIndex index = TrueLicenseManager.parseExtraParamIndex(EXTRA);
+        Assert.assertEquals(4, index.size());
+
+        // The first one is matched like LicenseParams.matchParam()
+        Assert.assertEquals(3, index.matchId("server-1").graphs());
+        Assert.assertEquals(4, index.matchId("server-2").graphs());
+        Assert.assertNull(index.matchId("server-4"));
+        Assert.assertNull(index.matchId(null));
+    }
+
+    @Test
+    public void testMatchIpAndMac() {
+        ExtraParamIndex index = TrueLicenseManager.parseExtraParamIndex(EXTRA);
+
+        List<LicenseExtraParam> params = index.matchIp(" 10.0.0.1 ");
+        Assert.assertEquals(2, params.size());
+        Assert.assertEquals("server-1", params.get(0).id());
+        Assert.assertEquals("server-2", params.get(1).id());
+        Assert.assertEquals("server-3", index.matchIp("fe80::1").get(0).id());
+        Assert.assertTrue(index.containsIp("FE80::1"));
+        Assert.assertFalse(index.containsIp("10.0.0.2"));
+        Assert.assertFalse(index.containsIp(""));
+
+        Assert.assertEquals("server-1",
+                            index.matchMac("6c:92:bf:3a:fe:b0").get(0).id());
+        Assert.assertEquals("server-2",
+                            index.matchMac("6C-92-BF-3A-FE-B1").get(0).id());
+        Assert.assertFalse(index.containsMac("6c:92:bf:3a:fe:b2"));
+        Assert.assertFalse(index.containsMac(null));
+
+        Assert.assertEquals("6c92bf3afeb0",
+                            ExtraParamIndex.normalizeMac("6C-92-BF-3A-FE-B0"));
+        Assert.assertNull(ExtraParamIndex.normalizeMac(" "));
+    }
+
+    @Test
+    public void testIndexOfLicenseParams() {
+        ExtraParamIndex index = TrueLicenseManager.parseExtraParamIndex(EXTRA);
+        Assert.assertSame(index, TrueLicenseManager.parseExtraParamIndex(
+                                 new String(EXTRA.toCharArray())));
+
+        LicenseParams params = new IndexedLicenseParams(
+                                   "hugegraph-evaluation", "", new Date(),
+                                   new Date(), new Date(), "user", 1, index);
+        Assert.assertSame(index, ExtraParamIndex.of(params));
+        Assert.assertSame(index.params(), params.extraParams());
+        Assert.assertEquals(3, params.matchParam("server-1").graphs());
+        Assert.assertNull(params.matchParam("server-4"));
+
+        // Build index for non-indexed params
+        params = new LicenseParams("hugegraph-evaluation", "", new Date(),
+                                   new Date(), new Date(), "user", 1,
+                                   index.params());
+        ExtraParamIndex other = ExtraParamIndex.of(params);
+        Assert.assertNotSame(index, other);
+        Assert.assertEquals(5, other.matchIp("fe80::1").get(0).graphs());
+    }
+}
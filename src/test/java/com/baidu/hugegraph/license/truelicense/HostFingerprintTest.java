@@ -0,0 +1,200 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.baidu.hugegraph.license.LicenseExtraParam;
+import com.baidu.hugegraph.license.LicenseParams;
+import com.baidu.hugegraph.testutil.Assert;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class HostFingerprintTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void testCheckExtraParam() throws Exception {
+        HostFingerprint host = newFingerprint();
+        List<LicenseExtraParam> params = readParams(
+                "[{\"id\":\"server-1\",\"ip\":\"10.0.0.1\"," +
+                "\"mac\":\"6C-92-BF-3A-FE-B0\",\"cpus\":8," +
+                "\"ram\":16384,\"memory\":8192}," +
+                "{\"id\":\"server-2\",\"ip\":\"10.0.0.2\",\"cpus\":4}," +
+                "{\"id\":\"server-3\",\"mac\":\"6c:92:bf:3a:fe:b1\"," +
+                "\"ram\":8192}," +
+                "{\"id\":\"server-4\",\"cpus\":-1,\"ram\":-1}]");
+
+        host.check(params.get(0));
+        host.check(params.get(3));
+        Assert.assertThrows(IllegalStateException.class, () -> {
+            host.check(params.get(1));
+        }, e -> {
+            Assert.assertContains("The server ip '10.0.0.2' is not found",
+                                  e.getMessage());
+        });
+        Assert.assertThrows(IllegalStateException.class, () -> {
+            host.check(params.get(2));
+        }, e -> {
+            Assert.assertContains("The server mac '6c:92:bf:3a:fe:b1' is " +
+                                  "not found", e.getMessage());
+        });
+
+        HostFingerprint bigHost = new HostFingerprint(
+                                  host.ips(), new HashSet<>(host.macs()),
+                                  16, 32768L, 8192L, 0L);
+        Assert.assertThrows(IllegalStateException.class, () -> {
+            bigHost.check(params.get(0));
+        }, e -> {
+            Assert.assertContains("The cpus '16' of this host exceeded " +
+                                  "authorized limit '8'", e.getMessage());
+        });
+    }
+
+    @Test
+    public void testMatchExtraParam() throws Exception {
+        HostFingerprint host = newFingerprint();
+        Assert.assertTrue(host.containsIp(" 10.0.0.1 "));
+        Assert.assertTrue(host.containsMac("6c:92:bf:3a:fe:b0"));
+        Assert.assertFalse(host.containsIp(null));
+        Assert.assertFalse(host.containsMac("6c:92:bf:3a:fe:b1"));
+
+        ExtraParamIndex index = new ExtraParamIndex(readParams(
+                "[{\"id\":\"server-1\",\"ip\":\"10.0.0.9\"}," +
+                "{\"id\":\"server-2\",\"mac\":\"6c-92-bf-3a-fe-b0\"}]"));
+        Assert.assertEquals("server-2", host.match(index).id());
+
+        index = new ExtraParamIndex(readParams(
+                "[{\"id\":\"server-1\",\"ip\":\"10.0.0.9\"}]"));
+        Assert.assertNull(host.match(index));
+    }
+
+    @Test
+    public void testCollect() {
+        HostFingerprintCollector collector = new HostFingerprintCollector();
+        HostFingerprint host = collector.fingerprint();
+        Runtime runtime = Runtime.getRuntime();
+        Assert.assertEquals(runtime.availableProcessors(), host.cpus());
+        Assert.assertEquals(runtime.maxMemory() / (1024L * 1024L),
+                            host.memory());
+        Assert.assertTrue(host.ram() >= 0L);
+        Assert.assertSame(host, collector.fingerprint());
+        for (String ip : host.ips()) {
+            Assert.assertFalse(ip, ip.startsWith("127."));
+            Assert.assertFalse(ip, ip.contains("%"));
+        }
+        // The same host is collected again
+        Assert.assertEquals(host, collector.refresh());
+    }
+
+    @Test
+    public void testRefreshWithCachedMacs() {
+        AtomicInteger reads = new AtomicInteger();
+        HostFingerprintCollector collector = new HostFingerprintCollector() {
+            @Override
+            protected byte[] hardwareAddress(NetworkInterface nic)
+                                             throws SocketException {
+                reads.incrementAndGet();
+                return super.hardwareAddress(nic);
+            }
+        };
+        collector.refresh();
+        int interfaces = reads.get();
+        collector.refresh();
+        collector.refresh();
+        // The macs of known interfaces are not read again
+        Assert.assertEquals(interfaces, reads.get());
+    }
+
+    @Test
+    public void testRefreshInBackground() throws Exception {
+        try (HostFingerprintCollector collector =
+             new HostFingerprintCollector(20L)) {
+            collector.start();
+            HostFingerprint first = collector.fingerprint();
+            long deadline = System.currentTimeMillis() + 10000L;
+            while (collector.fingerprint() == first &&
+                   System.currentTimeMillis() < deadline) {
+                Thread.sleep(10L);
+            }
+            Assert.assertNotSame(first, collector.fingerprint());
+            Assert.assertEquals(first, collector.fingerprint());
+        }
+    }
+
+    @Test
+    public void testCheckLicenseParams() throws Exception {
+        HostFingerprintCollector collector = new HostFingerprintCollector();
+        HostFingerprint host = collector.fingerprint();
+        String mac = host.macs().isEmpty() ?
+                     null : host.macs().iterator().next();
+        String ip = host.ips().isEmpty() ?
+                    null : host.ips().iterator().next();
+        String address = ip != null ? "\"ip\":\"" + ip + "\"" :
+                         mac != null ? "\"mac\":\"" + mac + "\"" : null;
+        if (address == null) {
+            // No network interface in this environment
+            return;
+        }
+        LicenseParams params = newParams("[{\"id\":\"server-0\"," +
+                                         "\"ip\":\"192.0.2.1\"}," +
+                                         "{\"id\":\"server-1\"," +
+                                         address + "}]");
+        Assert.assertEquals("server-1", collector.check(params).id());
+
+        LicenseParams other = newParams("[{\"id\":\"server-0\"," +
+                                        "\"ip\":\"192.0.2.1\"}]");
+        Assert.assertThrows(IllegalStateException.class, () -> {
+            collector.check(other);
+        }, e -> {
+            Assert.assertContains("This host is not authorized",
+                                  e.getMessage());
+        });
+    }
+
+    private static HostFingerprint newFingerprint() {
+        return new HostFingerprint(new HashSet<>(Arrays.asList("10.0.0.1")),
+                                   new HashSet<>(Arrays.asList(
+                                                 "6c92bf3afeb0")),
+                                   8, 16384L, 4096L, 0L);
+    }
+
+    private static List<LicenseExtraParam> readParams(String json)
+                                                      throws Exception {
+        return MAPPER.readValue(
+               json, new TypeReference<List<LicenseExtraParam>>() { });
+    }
+
+    private static LicenseParams newParams(String extra) throws Exception {
+        ExtraParamIndex index = new ExtraParamIndex(readParams(extra));
+        Date now = new Date();
+        return new IndexedLicenseParams("hugegraph-evaluation", null, now,
+                                        now, now, "user", 1, index);
+    }
+}
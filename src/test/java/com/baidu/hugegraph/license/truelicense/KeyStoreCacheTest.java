@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.baidu.hugegraph.license.truelicense.TrueLicenseCreator.CustomKeyStoreParam;
+import com.baidu.hugegraph.testutil.Assert;
+
+import de.schlichtherle.license.KeyStoreParam;
+import de.schlichtherle.license.LicenseNotaryException;
+
+public class KeyStoreCacheTest {
+
+    private static final String DIR = "src/test/resources/";
+
+    private File store;
+
+    @Before
+    public void setup() throws IOException {
+        KeyStoreCache.invalidate();
+        this.store = File.createTempFile("privateKeys", ".store");
+        FileUtils.copyFile(new File(DIR + "privateKeys.store"), this.store);
+    }
+
+    @After
+    public void teardown() throws IOException {
+        KeyStoreCache.checkInterval(1000L);
+        KeyStoreCache.invalidate();
+        FileUtils.forceDelete(this.store);
+    }
+
+    @Test
+    public void testLoadKeysOnce() throws Exception {
+        PrivateKey key1 = KeyStoreCache.privateKey(this.newParam("privatekey"));
+        PrivateKey key2 = KeyStoreCache.privateKey(this.newParam("privatekey"));
+        Assert.assertSame(key1, key2);
+
+        PublicKey pubKey1 = KeyStoreCache.publicKey(new CustomKeyStoreParam(
+                                                    TrueLicenseCreator.class,
+                                                    DIR + "publicCerts.store",
+                                                    "publiccert", "a123456",
+                                                    null));
+        PublicKey pubKey2 = KeyStoreCache.publicKey(new CustomKeyStoreParam(
+                                                    TrueLicenseCreator.class,
+                                                    DIR + "publicCerts.store",
+                                                    "publiccert", "a123456",
+                                                    null));
+        Assert.assertSame(pubKey1, pubKey2);
+        Assert.assertEquals(2, KeyStoreCache.size());
+    }
+
+    @Test
+    public void testReloadIfStoreChanged() throws Exception {
+        KeyStoreCache.checkInterval(0L);
+
+        PrivateKey key1 = KeyStoreCache.privateKey(this.newParam("privatekey"));
+        Assert.assertSame(key1,
+                          KeyStoreCache.privateKey(this.newParam("privatekey")));
+
+        Assert.assertTrue(this.store.setLastModified(
+                          this.store.lastModified() - 10000L));
+        PrivateKey key2 = KeyStoreCache.privateKey(this.newParam("privatekey"));
+        Assert.assertNotSame(key1, key2);
+        Assert.assertEquals(key1, key2);
+        Assert.assertEquals(1, KeyStoreCache.size());
+    }
+
+    @Test
+    public void testLoadWithInvalidParams() throws Exception {
+        Assert.assertThrows(LicenseNotaryException.class, () -> {
+            KeyStoreCache.privateKey(this.newParam("unknown"));
+        });
+
+        KeyStoreParam param = new CustomKeyStoreParam(
+                              TrueLicenseCreator.class,
+                              this.store.getPath(), "privatekey",
+                              "a123456", "wrong-password");
+        Assert.assertThrows(Exception.class, () -> {
+            KeyStoreCache.privateKey(param);
+        });
+
+        // The failed keys are not cached, the right params still work
+        Assert.assertNotNull(KeyStoreCache.privateKey(
+                             this.newParam("privatekey")));
+    }
+
+    private KeyStoreParam newParam(String alias) {
+        return new CustomKeyStoreParam(TrueLicenseCreator.class,
+                                       this.store.getPath(), alias,
+                                       "a123456", "a123456");
+    }
+}
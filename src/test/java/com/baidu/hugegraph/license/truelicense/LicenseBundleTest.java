@@ -0,0 +1,347 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import com.baidu.hugegraph.license.LicenseInstallParam;
+import com.baidu.hugegraph.license.LicenseParams;
+import com.baidu.hugegraph.license.truelicense.TrueLicenseCreator.CustomKeyStoreParam;
+import com.baidu.hugegraph.testutil.Assert;
+
+import de.schlichtherle.license.LicenseContent;
+import de.schlichtherle.xml.GenericCertificateIntegrityException;
+
+public class LicenseBundleTest {
+
+    private static final String DIR = "src/test/resources/";
+    private static final String PASSWORD = "a123456";
+
+    private static final X500Principal ISSUER = new X500Principal(
+            "CN=liningrui, OU=baidu, O=hugegraph, L=beijing, ST=beijing, C=cn");
+
+    @After
+    public void teardown() throws IOException {
+        File lic = new File(DIR + "hugegraph-evaluation.license");
+        if (lic.exists()) {
+            FileUtils.forceDelete(lic);
+        }
+    }
+
+    @Test
+    public void testSignAndLookup() throws Exception {
+        PrivateKey privateKey = privateKey();
+        byte[] key = LicenseBundle.sign(newContent(100), privateKey,
+                                        SignatureProviders.of(privateKey))
+                                  .toBytes();
+        Assert.assertTrue(LicenseBundle.isBundle(key));
+        Assert.assertFalse(BinaryLicense.isBinary(key));
+        Assert.assertEquals(LicenseFormat.BUNDLE, LicenseFormat.of(key));
+
+        LicenseBundle bundle = LicenseBundle.parse(key);
+        Assert.assertEquals(100, bundle.size());
+        List<String> ids = bundle.ids();
+        List<String> sorted = new ArrayList<>(ids);
+        Collections.sort(sorted);
+        Assert.assertEquals(sorted, ids);
+
+        // The header holds the common fields only
+        bundle.header().verify(publicKey());
+        LicenseContent header = bundle.header().decode();
+        Assert.assertEquals("hugegraph-evaluation", header.getSubject());
+        Assert.assertEquals(new Date(1880121600000L), header.getNotAfter());
+        Assert.assertNull(header.getExtra());
+
+        for (String id : ids) {
+            BinaryLicense entry = BinaryLicense.parse(bundle.entry(id));
+            entry.verify(publicKey());
+            LicenseContent content = entry.decode();
+            Assert.assertEquals("hugegraph-evaluation", content.getSubject());
+            Assert.assertEquals(String.format("[{\"id\":\"%s\",\"graphs\":3}]",
+                                              id), content.getExtra());
+        }
+        Assert.assertNull(bundle.entry("server-100"));
+        Assert.assertNull(bundle.entry(""));
+    }
+
+    @Test
+    public void testVerifyWithTamperedEntry() throws Exception {
+        PrivateKey privateKey = privateKey();
+        byte[] key = LicenseBundle.sign(newContent(2), privateKey,
+                                        SignatureProviders.of(privateKey))
+                                  .toBytes();
+        // Tamper the last byte of the signature of server-1
+        key[key.length - 1] ^= 0x01;
+        LicenseBundle bundle = LicenseBundle.parse(key);
+
+        // Each entry is signed independently
+        BinaryLicense.parse(bundle.entry("server-0")).verify(publicKey());
+        BinaryLicense entry = BinaryLicense.parse(bundle.entry("server-1"));
+        Assert.assertThrows(GenericCertificateIntegrityException.class, () -> {
+            entry.verify(publicKey());
+        });
+    }
+
+    @Test
+    public void testSignWithInvalidExtraParams() throws Exception {
+        PrivateKey privateKey = privateKey();
+        SignatureProvider provider = SignatureProviders.of(privateKey);
+        LicenseContent content = newContent(1);
+        content.setExtra("[{\"graphs\":3}]");
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            LicenseBundle.sign(content, privateKey, provider);
+        }, e -> {
+            Assert.assertContains("The server id is required",
+                                  e.getMessage());
+        });
+
+        content.setExtra("[{\"id\":\"server-1\"},{\"id\":\"server-1\"}]");
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            LicenseBundle.sign(content, privateKey, provider);
+        }, e -> {
+            Assert.assertContains("Duplicate server id 'server-1'",
+                                  e.getMessage());
+        });
+
+        content.setExtra("{\"id\":\"server-1\"}");
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            LicenseBundle.sign(content, privateKey, provider);
+        }, e -> {
+            Assert.assertContains("must be a json array", e.getMessage());
+        });
+    }
+
+    @Test
+    public void testParseWithInvalidKey() throws Exception {
+        PrivateKey privateKey = privateKey();
+        byte[] key = LicenseBundle.sign(newContent(3), privateKey,
+                                        SignatureProviders.of(privateKey))
+                                  .toBytes();
+
+        Assert.assertFalse(LicenseBundle.isBundle(null));
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            LicenseBundle.parse(new byte[]{'<', 'x', 'm', 'l', '>'});
+        }, e -> {
+            Assert.assertContains("Invalid license bundle header",
+                                  e.getMessage());
+        });
+
+        byte[] newer = key.clone();
+        newer[4] = LicenseBundle.VERSION + 1;
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            LicenseBundle.parse(newer);
+        }, e -> {
+            Assert.assertContains("Unsupported license bundle version 2",
+                                  e.getMessage());
+        });
+
+        // Truncated in the last entry
+        LicenseBundle truncated = LicenseBundle.parse(
+                                  Arrays.copyOf(key, key.length - 1));
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            truncated.entry("server-2");
+        }, e -> {
+            Assert.assertContains("Invalid license bundle entry",
+                                  e.getMessage());
+        });
+    }
+
+    @Test
+    public void testInstallLicenseBundle() throws Exception {
+        TrueLicenseCreator creator = TrueLicenseCreator.build(
+                                     DIR + "create-license.json");
+        creator.format(LicenseFormat.BUNDLE);
+        creator.create();
+        File license = new File(DIR + "hugegraph-evaluation.license");
+        Assert.assertEquals(LicenseFormat.BUNDLE, LicenseFormat.of(
+                            FileUtils.readFileToByteArray(license)));
+
+        LicenseInstallParam param = TrueLicenseManagerTest.readInstallParam(
+                                    DIR + "verify-license.json");
+        TrueLicenseManager manager = new TrueLicenseManager(
+                                     TrueLicenseManagerTest.wrapLicenseParam(
+                                     param),
+                                     param, params -> { }, null,
+                                     new MemoryLicenseKeyStorage());
+        Assert.assertThrows(IllegalStateException.class, () -> {
+            manager.installLicense();
+        }, e -> {
+            Assert.assertContains("The server id is required",
+                                  e.getMessage());
+        });
+
+        manager.serverId("server-2");
+        Assert.assertThrows(IllegalStateException.class, () -> {
+            manager.installLicense();
+        }, e -> {
+            Assert.assertContains("'server-2' is not authorized",
+                                  e.getMessage());
+        });
+
+        manager.serverId("server-1");
+        LicenseParams params = manager.installLicense();
+        Assert.assertEquals(3, params.matchParam("server-1").graphs());
+        Assert.assertEquals("hugegraph-evaluation",
+                            manager.verifyLicense().subject());
+    }
+
+    @Test
+    public void testVerifyWithRenamedEntry() throws Exception {
+        PrivateKey privateKey = privateKey();
+        byte[] key = LicenseBundle.sign(newContent(2), privateKey,
+                                        SignatureProviders.of(privateKey))
+                                  .toBytes();
+        // The ids aren't signed, rename server-0 to server-2
+        byte[] id = "server-0".getBytes("UTF-8");
+        int index = indexOf(key, id);
+        key[index + id.length - 1] = '2';
+        Assert.assertNotNull(LicenseBundle.parse(key).entry("server-2"));
+
+        TrueLicenseManager manager = newManager(key);
+        manager.serverId("server-2");
+        Assert.assertThrows(IllegalStateException.class, () -> {
+            manager.verifyLicense();
+        }, e -> {
+            Assert.assertContains("entry of server 'server-2' is not " +
+                                  "issued to it", e.getMessage());
+        });
+    }
+
+    @Test
+    public void testVerifyWithReplacedHeader() throws Exception {
+        PrivateKey privateKey = privateKey();
+        SignatureProvider provider = SignatureProviders.of(privateKey);
+        LicenseContent content = newContent(2);
+        byte[] key = LicenseBundle.sign(content, privateKey, provider)
+                                  .toBytes();
+        // Replace the header with the one of other content of same length
+        content.setInfo("descriptioN");
+        byte[] header = LicenseBundle.parse(key).header().toBytes();
+        byte[] other;
+        do {
+            // The length of the DER encoded signature may differ
+            other = LicenseBundle.sign(content, privateKey, provider)
+                                 .header().toBytes();
+        } while (other.length != header.length);
+        System.arraycopy(other, 0, key, indexOf(key, header), other.length);
+        LicenseBundle.parse(key).header().verify(publicKey());
+
+        TrueLicenseManager manager = newManager(key);
+        manager.serverId("server-1");
+        Assert.assertThrows(IllegalStateException.class, () -> {
+            manager.verifyLicense();
+        }, e -> {
+            Assert.assertContains("doesn't match the bundle header",
+                                  e.getMessage());
+        });
+    }
+
+    @Test
+    public void testReadLicenseKeyLargerThanLegacyLimit() throws IOException {
+        // A bundle of thousands of servers is larger than 1MB
+        File file = Files.createTempFile("license", ".key").toFile();
+        try {
+            byte[] key = new byte[3 * 1024 * 1024 + 7];
+            for (int i = 0; i < key.length; i++) {
+                key[i] = (byte) i;
+            }
+            Files.write(file.toPath(), key);
+            Assert.assertArrayEquals(key,
+                                     TrueLicenseManager.readLicenseKey(file));
+        } finally {
+            Files.delete(file.toPath());
+        }
+    }
+
+    private static TrueLicenseManager newManager(byte[] key)
+                                                 throws IOException {
+        LicenseInstallParam param = TrueLicenseManagerTest.readInstallParam(
+                                    DIR + "verify-license.json");
+        LicenseKeyStorage storage = new MemoryLicenseKeyStorage();
+        storage.store(key);
+        return new TrueLicenseManager(TrueLicenseManagerTest.wrapLicenseParam(
+                                      param),
+                                      param, params -> { }, null, storage);
+    }
+
+    private static int indexOf(byte[] bytes, byte[] target) {
+        for (int i = 0; i <= bytes.length - target.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(bytes, i,
+                                                 i + target.length),
+                              target)) {
+                return i;
+            }
+        }
+        throw new AssertionError("Not found");
+    }
+
+    private static LicenseContent newContent(int servers) {
+        StringBuilder extra = new StringBuilder("[");
+        // Add in reverse order to check the entries are sorted
+        for (int i = servers - 1; i >= 0; i--) {
+            if (extra.length() > 1) {
+                extra.append(',');
+            }
+            extra.append(String.format("{\"id\":\"server-%s\",\"graphs\":3}",
+                                       i));
+        }
+        LicenseContent content = new LicenseContent();
+        content.setHolder(ISSUER);
+        content.setIssuer(ISSUER);
+        content.setSubject("hugegraph-evaluation");
+        content.setIssued(new Date(1564588800000L));
+        content.setNotBefore(new Date(1564588800000L));
+        content.setNotAfter(new Date(1880121600000L));
+        content.setConsumerType("user");
+        content.setConsumerAmount(1);
+        content.setInfo("description");
+        content.setExtra(extra.append(']').toString());
+        return content;
+    }
+
+    private static PrivateKey privateKey() throws Exception {
+        return KeyStoreCache.privateKey(new CustomKeyStoreParam(
+                                        TrueLicenseCreator.class,
+                                        DIR + "privateKeys.store",
+                                        "privatekey", PASSWORD, PASSWORD));
+    }
+
+    private static PublicKey publicKey() throws Exception {
+        return KeyStoreCache.publicKey(new CustomKeyStoreParam(
+                                       TrueLicenseManager.class,
+                                       DIR + "publicCerts.store",
+                                       "publiccert", PASSWORD, null));
+    }
+}
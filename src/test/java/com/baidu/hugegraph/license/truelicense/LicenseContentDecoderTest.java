@@ -0,0 +1,180 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.junit.Test;
+
+import com.baidu.hugegraph.license.truelicense.TrueLicenseCreator.CustomKeyStoreParam;
+import com.baidu.hugegraph.testutil.Assert;
+
+import de.schlichtherle.license.LicenseContent;
+import de.schlichtherle.xml.GenericCertificate;
+import de.schlichtherle.xml.PersistenceService;
+
+public class LicenseContentDecoderTest {
+
+    private static final X500Principal ISSUER = new X500Principal(
+            "CN=liningrui, OU=baidu, O=hugegraph, L=beijing, ST=beijing, C=cn");
+
+    @Test
+    public void testDecode() throws Exception {
+        LicenseContent content = newContent();
+        assertDecodeSame(content);
+    }
+
+    @Test
+    public void testDecodeWithEscapedChars() throws Exception {
+        LicenseContent content = newContent();
+        content.setInfo("<description> & \"quoted\" 'single' 中文 \r\n\t" +
+                        "\u0001\u001f end  ");
+        content.setExtra("[{\"id\":\"server-<1>&\",\"graphs\":3}]");
+        assertDecodeSame(content);
+    }
+
+    @Test
+    public void testDecodeWithDifferentPrincipals() throws Exception {
+        LicenseContent content = newContent();
+        content.setHolder(new X500Principal("CN=holder, O=hugegraph"));
+        assertDecodeSame(content);
+    }
+
+    @Test
+    public void testDecodeWithDefaultValues() throws Exception {
+        assertDecodeSame(new LicenseContent());
+
+        LicenseContent content = newContent();
+        content.setInfo("");
+        content.setExtra(null);
+        content.setConsumerAmount(8);
+        assertDecodeSame(content);
+    }
+
+    @Test
+    public void testDecodeWithFallback() throws Exception {
+        LicenseContent content = newContent();
+        // The fast decoder doesn't support collection extra
+        content.setExtra(new ArrayList<>(Arrays.asList("server-1")));
+        String text = PersistenceService.store2String(content);
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            LicenseContentDecoder.fastDecode(text);
+        }, e -> {
+            Assert.assertContains("Unsupported object class " +
+                                  "'java.util.ArrayList'", e.getMessage());
+        });
+        Assert.assertEquals(content, LicenseContentDecoder.decode(text));
+    }
+
+    @Test
+    public void testDecodeCertificate() throws Exception {
+        GenericCertificate certificate = new ConcurrentLicenseNotary(
+                                         new CustomKeyStoreParam(
+                                         TrueLicenseCreator.class,
+                                         "src/test/resources/" +
+                                         "privateKeys.store",
+                                         "privatekey", "a123456",
+                                         "a123456"))
+                                         .sign(newContent());
+        String text = PersistenceService.store2String(certificate);
+
+        GenericCertificate decoded = LicenseContentDecoder
+                                     .fastDecodeCertificate(text);
+        Assert.assertEquals(certificate.getEncoded(), decoded.getEncoded());
+        Assert.assertEquals(certificate.getSignature(),
+                            decoded.getSignature());
+        Assert.assertEquals(certificate.getSignatureAlgorithm(),
+                            decoded.getSignatureAlgorithm());
+        Assert.assertEquals(certificate.getSignatureEncoding(),
+                            decoded.getSignatureEncoding());
+
+        // The license content isn't a certificate
+        String content = PersistenceService.store2String(newContent());
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            LicenseContentDecoder.fastDecodeCertificate(content);
+        });
+        Assert.assertThrows(Exception.class, () -> {
+            LicenseContentDecoder.decodeCertificate(content);
+        }, e -> {
+            Assert.assertContains("Invalid license certificate type",
+                                  e.getMessage());
+        });
+    }
+
+    @Test
+    public void testDecodeWithInvalidText() throws Exception {
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            LicenseContentDecoder.fastDecode("<java><string>x</string>" +
+                                             "</java>");
+        }, e -> {
+            Assert.assertContains("Expect <object> of " +
+                                  "de.schlichtherle.license.LicenseContent",
+                                  e.getMessage());
+        });
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            LicenseContentDecoder.fastDecode("<java><object class=\"" +
+                                             LicenseContent.class.getName() +
+                                             "\"><void property=\"unknown\">" +
+                                             "<string>x</string></void>" +
+                                             "</object></java>");
+        }, e -> {
+            Assert.assertContains("Unsupported property 'unknown'",
+                                  e.getMessage());
+        });
+    }
+
+    private static void assertDecodeSame(LicenseContent content)
+                                         throws Exception {
+        String text = PersistenceService.store2String(content);
+        Object expected = LicenseContentDecoder.xmlDecode(text);
+        LicenseContent actual = LicenseContentDecoder.fastDecode(text);
+
+        Assert.assertEquals(content, expected);
+        Assert.assertEquals(expected, actual);
+        LicenseContent other = (LicenseContent) expected;
+        Assert.assertEquals(other.getInfo(), actual.getInfo());
+        Assert.assertEquals(other.getExtra(), actual.getExtra());
+        Assert.assertEquals(other.getConsumerAmount(),
+                            actual.getConsumerAmount());
+        Assert.assertEquals(other.getIssued(), actual.getIssued());
+        Assert.assertEquals(other.getNotAfter(), actual.getNotAfter());
+    }
+
+    private static LicenseContent newContent() {
+        LicenseContent content = new LicenseContent();
+        content.setHolder(ISSUER);
+        content.setIssuer(ISSUER);
+        content.setSubject("hugegraph-evaluation");
+        content.setIssued(new Date(1564588800000L));
+        content.setNotBefore(new Date(1564588800000L));
+        content.setNotAfter(new Date(1880121600000L));
+        content.setConsumerType("user");
+        content.setConsumerAmount(1);
+        content.setInfo("description");
+        content.setExtra("[{\"id\":\"server-1\",\"graphs\":3}]");
+        return content;
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.PrivateKey;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import com.baidu.hugegraph.license.LicenseInstallParam;
+import com.baidu.hugegraph.license.LicenseParams;
+import com.baidu.hugegraph.license.truelicense.LicenseExpiryScheduler.State;
+import com.baidu.hugegraph.license.truelicense.TrueLicenseCreator.CustomKeyStoreParam;
+import com.baidu.hugegraph.testutil.Assert;
+
+import de.schlichtherle.license.LicenseContent;
+import de.schlichtherle.license.LicenseContentException;
+import de.schlichtherle.license.NoLicenseInstalledException;
+
+public class LicenseExpirySchedulerTest {
+
+    private static final String DIR = "src/test/resources/";
+
+    @After
+    public void teardown() throws IOException {
+        File lic = new File(DIR + "hugegraph-evaluation.license");
+        if (lic.exists()) {
+            FileUtils.forceDelete(lic);
+        }
+    }
+
+    @Test
+    public void testFireAtBoundaries() throws Exception {
+        try (LicenseExpiryScheduler scheduler = new LicenseExpiryScheduler(
+                                                newManager(), 200L)) {
+            BlockingQueue<Event> events = listen(scheduler);
+            long now = System.currentTimeMillis();
+            LicenseParams params = newParams(now + 200L, now + 600L);
+            scheduler.arm(params);
+            Assert.assertEquals(State.NOT_YET_VALID, scheduler.state());
+            Assert.assertThrows(LicenseContentException.class, () -> {
+                scheduler.verifyLicense();
+            });
+
+            Event event = poll(events);
+            Assert.assertEquals("activated", event.name);
+            Assert.assertTrue(event.time >= params.notBefore().getTime());
+            // Not called on the timer thread
+            Assert.assertEquals("license-expiry-listener", event.thread);
+            Assert.assertSame(params, scheduler.verifyLicense());
+
+            event = poll(events);
+            Assert.assertEquals("expiring", event.name);
+            Assert.assertTrue(event.time >= params.notAfter().getTime() -
+                                            200L);
+
+            event = poll(events);
+            Assert.assertEquals("expired", event.name);
+            Assert.assertTrue(event.time >= params.notAfter().getTime());
+            Assert.assertEquals(State.EXPIRED, scheduler.state());
+            Assert.assertThrows(LicenseContentException.class, () -> {
+                scheduler.verifyLicense();
+            });
+        }
+    }
+
+    @Test
+    public void testArmWithPassedWarnings() throws Exception {
+        try (LicenseExpiryScheduler scheduler = new LicenseExpiryScheduler(
+                                                newManager(), 1000L, 500L,
+                                                50L)) {
+            BlockingQueue<Event> events = listen(scheduler);
+            long now = System.currentTimeMillis();
+            scheduler.arm(newParams(now - 1000L, now + 300L));
+            Assert.assertEquals(State.VALID, scheduler.state());
+            Assert.assertEquals("activated", poll(events).name);
+            // Only one warning for the passed warnings
+            Assert.assertEquals("expiring", poll(events).name);
+            Assert.assertNull(events.poll(100L, TimeUnit.MILLISECONDS));
+
+            // The timers of the last license are discarded
+            LicenseParams renewed = newParams(now - 1000L, now + 60000L);
+            scheduler.arm(renewed);
+            Assert.assertNull(events.poll(500L, TimeUnit.MILLISECONDS));
+            Assert.assertEquals(State.VALID, scheduler.state());
+            Assert.assertSame(renewed, scheduler.verifyLicense());
+
+            scheduler.arm(newParams(now - 1000L, now - 1L));
+            Assert.assertEquals("expired", poll(events).name);
+            Assert.assertEquals(State.EXPIRED, scheduler.state());
+        }
+    }
+
+    @Test
+    public void testInstallAndUninstall() throws Exception {
+        TrueLicenseCreator.build(DIR + "create-license.json").create();
+        try (LicenseExpiryScheduler scheduler = new LicenseExpiryScheduler(
+                                                newManager())) {
+            Assert.assertThrows(IllegalStateException.class, () -> {
+                scheduler.verifyLicense();
+            });
+            Assert.assertThrows(NoLicenseInstalledException.class, () -> {
+                scheduler.start();
+            });
+
+            LicenseParams params = scheduler.installLicense();
+            Assert.assertEquals(State.VALID, scheduler.state());
+            Assert.assertSame(params, scheduler.verifyLicense());
+            scheduler.start();
+            Assert.assertEquals(State.VALID, scheduler.state());
+
+            scheduler.uninstallLicense();
+            Assert.assertEquals(State.UNINSTALLED, scheduler.state());
+            Assert.assertThrows(NoLicenseInstalledException.class, () -> {
+                scheduler.verifyLicense();
+            });
+        }
+    }
+
+    @Test
+    public void testStartWithExpiredLicense() throws Exception {
+        long now = System.currentTimeMillis();
+        try (LicenseExpiryScheduler scheduler = new LicenseExpiryScheduler(
+                                                newManager(newLicenseKey(
+                                                now - 60000L, now - 1L)))) {
+            BlockingQueue<Event> events = listen(scheduler);
+            scheduler.start();
+            Assert.assertEquals(State.EXPIRED, scheduler.state());
+            Assert.assertEquals("expired", poll(events).name);
+            Assert.assertThrows(LicenseContentException.class, () -> {
+                scheduler.verifyLicense();
+            });
+        }
+    }
+
+    @Test
+    public void testStartWithNotYetValidLicense() throws Exception {
+        long now = System.currentTimeMillis();
+        try (LicenseExpiryScheduler scheduler = new LicenseExpiryScheduler(
+                                                newManager(newLicenseKey(
+                                                now + 300L, now + 60000L)))) {
+            BlockingQueue<Event> events = listen(scheduler);
+            scheduler.start();
+            Assert.assertEquals(State.NOT_YET_VALID, scheduler.state());
+            Assert.assertThrows(LicenseContentException.class, () -> {
+                scheduler.verifyLicense();
+            });
+
+            Assert.assertEquals("activated", poll(events).name);
+            Assert.assertEquals(State.VALID, scheduler.state());
+            Assert.assertEquals("hugegraph-evaluation",
+                                scheduler.verifyLicense().subject());
+        }
+    }
+
+    @Test
+    public void testStartWithRejectedLicense() throws Exception {
+        long now = System.currentTimeMillis();
+        try (LicenseExpiryScheduler scheduler = new LicenseExpiryScheduler(
+                                                newManager(newLicenseKey(
+                                                "hugegraph", now - 60000L,
+                                                now + 60000L)))) {
+            // Rejected for the subject rather than the dates
+            Assert.assertThrows(LicenseContentException.class, () -> {
+                scheduler.start();
+            });
+            Assert.assertNull(scheduler.state());
+        }
+    }
+
+    private static Event poll(BlockingQueue<Event> events)
+                              throws InterruptedException {
+        Event event = events.poll(10L, TimeUnit.SECONDS);
+        Assert.assertNotNull(event);
+        return event;
+    }
+
+    private static BlockingQueue<Event> listen(
+                                        LicenseExpiryScheduler scheduler) {
+        BlockingQueue<Event> events = new LinkedBlockingQueue<>();
+        scheduler.listen(new LicenseExpiryListener() {
+            @Override
+            public void onActivated(LicenseParams params) {
+                events.add(new Event("activated"));
+            }
+
+            @Override
+            public void onExpiring(LicenseParams params, long remaining) {
+                events.add(new Event("expiring"));
+            }
+
+            @Override
+            public void onExpired(LicenseParams params) {
+                events.add(new Event("expired"));
+            }
+        });
+        return events;
+    }
+
+    private static LicenseParams newParams(long notBefore, long notAfter) {
+        return new LicenseParams("hugegraph-evaluation", null, new Date(),
+                                 new Date(notBefore), new Date(notAfter),
+                                 "user", 1, Collections.emptyList());
+    }
+
+    private static TrueLicenseManager newManager() throws IOException {
+        return newManager(null);
+    }
+
+    private static TrueLicenseManager newManager(byte[] key)
+                                                 throws IOException {
+        LicenseInstallParam param = TrueLicenseManagerTest.readInstallParam(
+                                    DIR + "verify-license.json");
+        LicenseKeyStorage storage = new MemoryLicenseKeyStorage();
+        if (key != null) {
+            storage.store(key);
+        }
+        return new TrueLicenseManager(TrueLicenseManagerTest.wrapLicenseParam(
+                                      param),
+                                      param, params -> { }, null, storage);
+    }
+
+    private static byte[] newLicenseKey(long notBefore, long notAfter)
+                                        throws Exception {
+        return newLicenseKey("hugegraph-evaluation", notBefore, notAfter);
+    }
+
+    private static byte[] newLicenseKey(String subject, long notBefore,
+                                        long notAfter) throws Exception {
+        X500Principal issuer = new X500Principal(
+                               "CN=liningrui, OU=baidu, O=hugegraph, " +
+                               "L=beijing, ST=beijing, C=cn");
+        LicenseContent content = new LicenseContent();
+        content.setHolder(issuer);
+        content.setIssuer(issuer);
+        content.setSubject(subject);
+        content.setIssued(new Date(notBefore));
+        content.setNotBefore(new Date(notBefore));
+        content.setNotAfter(new Date(notAfter));
+        content.setConsumerType("user");
+        content.setConsumerAmount(1);
+        content.setExtra("[{\"id\":\"server-1\",\"graphs\":3}]");
+        PrivateKey key = KeyStoreCache.privateKey(new CustomKeyStoreParam(
+                                       TrueLicenseCreator.class,
+                                       DIR + "privateKeys.store",
+                                       "privatekey", "a123456", "a123456"));
+        return BinaryLicense.sign(content, key, SignatureProviders.of(key))
+                            .toBytes();
+    }
+
+    private static final class Event {
+
+        private final String name;
+        private final long time;
+        private final String thread;
+
+        public Event(String name) {
+            this.name = name;
+            this.time = System.currentTimeMillis();
+            this.thread = Thread.currentThread().getName();
+        }
+    }
+}
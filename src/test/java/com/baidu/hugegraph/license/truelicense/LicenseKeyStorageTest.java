@@ -0,0 +1,162 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.baidu.hugegraph.license.LicenseInstallParam;
+import com.baidu.hugegraph.testutil.Assert;
+
+import de.schlichtherle.license.NoLicenseInstalledException;
+
+public class LicenseKeyStorageTest {
+
+    private static final String DIR = "src/test/resources/";
+
+    private File keyDir;
+
+    @Before
+    public void setup() throws IOException {
+        this.keyDir = Files.createTempDirectory("license-keys").toFile();
+    }
+
+    @After
+    public void teardown() throws IOException {
+        FileUtils.deleteDirectory(this.keyDir);
+        File lic = new File(DIR + "hugegraph-evaluation.license");
+        if (lic.exists()) {
+            FileUtils.forceDelete(lic);
+        }
+    }
+
+    @Test
+    public void testMemoryStorage() {
+        MemoryLicenseKeyStorage storage = new MemoryLicenseKeyStorage();
+        Assert.assertNull(storage.load());
+
+        byte[] key = {1, 2, 3};
+        storage.store(key);
+        key[0] = 9;
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, storage.load());
+
+        storage.remove();
+        Assert.assertNull(storage.load());
+    }
+
+    @Test
+    public void testFileStorage() throws IOException {
+        FileLicenseKeyStorage storage = new FileLicenseKeyStorage(
+                                        this.keyDir.getPath(), "hugegraph");
+        Path file = storage.file();
+        Assert.assertEquals("hugegraph.key", file.getFileName().toString());
+        Assert.assertNull(storage.load());
+
+        storage.store(new byte[]{1, 2, 3});
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, storage.load());
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, storage.load());
+        // No temporary file is left
+        Assert.assertEquals(1, this.keyDir.list().length);
+
+        Object version = storage.version();
+        Assert.assertEquals(version, storage.version());
+        storage.store(new byte[]{4, 5});
+        Assert.assertArrayEquals(new byte[]{4, 5}, storage.load());
+        Assert.assertNotEquals(version, storage.version());
+
+        // Reload if the file is changed by others
+        Files.write(file, new byte[]{6, 7, 8});
+        Assert.assertArrayEquals(new byte[]{6, 7, 8}, storage.load());
+
+        // Even rewritten in place in the same tick of the modified time
+        FileTime modified = Files.getLastModifiedTime(file);
+        version = storage.version();
+        Files.write(file, new byte[]{9, 9, 9});
+        Files.setLastModifiedTime(file, modified);
+        Assert.assertNotEquals(version, storage.version());
+        Assert.assertArrayEquals(new byte[]{9, 9, 9}, storage.load());
+
+        // The stat is trusted once the file is older than the granularity
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() -
+                                           60000L);
+        Files.setLastModifiedTime(file, old);
+        version = storage.version();
+        Assert.assertEquals(version, storage.version());
+        storage.store(new byte[]{1, 1, 1});
+        Files.setLastModifiedTime(file, old);
+        // The file key is changed by the rename
+        Assert.assertNotEquals(version, storage.version());
+        Assert.assertArrayEquals(new byte[]{1, 1, 1}, storage.load());
+
+        storage.remove();
+        Assert.assertNull(storage.load());
+        Assert.assertNull(storage.version());
+        Assert.assertFalse(Files.exists(file));
+        storage.remove();
+    }
+
+    @Test
+    public void testVerifyLicenseWithStorages() throws Exception {
+        TrueLicenseCreator.build(DIR + "create-license.json").create();
+
+        LicenseKeyStorage[] storages = {
+            new MemoryLicenseKeyStorage(),
+            new FileLicenseKeyStorage(this.keyDir.getPath(), "hugegraph")
+        };
+        for (LicenseKeyStorage storage : storages) {
+            TrueLicenseManager manager = newManager(storage);
+            Assert.assertThrows(NoLicenseInstalledException.class, () -> {
+                manager.verifyLicense();
+            });
+
+            manager.installLicense();
+            Assert.assertNotNull(storage.load());
+            Assert.assertEquals("hugegraph-evaluation",
+                                manager.verifyLicense().subject());
+
+            // Another manager with the same storage sees the installed key
+            Assert.assertEquals("hugegraph-evaluation",
+                                newManager(storage).verifyLicense().subject());
+
+            manager.uninstallLicense();
+            Assert.assertNull(storage.load());
+            Assert.assertThrows(NoLicenseInstalledException.class, () -> {
+                manager.verifyLicense();
+            });
+        }
+    }
+
+    private static TrueLicenseManager newManager(LicenseKeyStorage storage)
+                                                 throws IOException {
+        LicenseInstallParam param = TrueLicenseManagerTest.readInstallParam(
+                                    DIR + "verify-license.json");
+        return new TrueLicenseManager(
+                   TrueLicenseManagerTest.wrapLicenseParam(param),
+                   param, params -> { }, null, storage);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.baidu.hugegraph.license.LicenseExtraParam;
+import com.baidu.hugegraph.license.LicenseParams;
+import com.baidu.hugegraph.license.truelicense.LicenseQuota.Resource;
+import com.baidu.hugegraph.testutil.Assert;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class LicenseQuotaTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void testAcquireAndRelease() throws Exception {
+        LicenseQuota quota = new LicenseQuota(readParam(
+                             "{\"id\":\"server-1\",\"graphs\":3," +
+                             "\"data_size\":100,\"threads\":-1}"));
+        Assert.assertEquals("server-1", quota.id());
+        Assert.assertEquals(3L, quota.limit(Resource.GRAPHS));
+
+        quota.acquire(Resource.GRAPHS, 2L);
+        Assert.assertTrue(quota.tryAcquire(Resource.GRAPHS, 1L));
+        Assert.assertFalse(quota.tryAcquire(Resource.GRAPHS, 1L));
+        Assert.assertEquals(3L, quota.used(Resource.GRAPHS));
+        Assert.assertEquals(0L, quota.available(Resource.GRAPHS));
+        Assert.assertThrows(IllegalStateException.class, () -> {
+            quota.acquire(Resource.GRAPHS, 1L);
+        }, e -> {
+            Assert.assertContains("The using graphs '4' exceeded " +
+                                  "authorized limit '3'", e.getMessage());
+        });
+
+        quota.release(Resource.GRAPHS, 1L);
+        Assert.assertEquals(1L, quota.available(Resource.GRAPHS));
+        Assert.assertThrows(IllegalStateException.class, () -> {
+            quota.release(Resource.GRAPHS, 3L);
+        });
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            quota.tryAcquire(Resource.GRAPHS, -1L);
+        });
+
+        Assert.assertFalse(quota.tryAcquire(Resource.DATA_SIZE, 101L));
+        Assert.assertTrue(quota.tryAcquire(Resource.DATA_SIZE, 100L));
+
+        // The unset or NO_LIMIT limits are unlimited, but still counted
+        for (Resource resource : new Resource[]{Resource.THREADS,
+                                                Resource.NODES}) {
+            Assert.assertEquals(LicenseQuota.UNLIMITED,
+                                quota.limit(resource));
+            quota.acquire(resource, Integer.MAX_VALUE);
+            Assert.assertEquals(Integer.MAX_VALUE, quota.used(resource));
+            Assert.assertEquals(LicenseQuota.UNLIMITED,
+                                quota.available(resource));
+        }
+    }
+
+    @Test
+    public void testUpdateLimits() throws Exception {
+        LicenseParams params = new LicenseParams(
+                               "hugegraph-evaluation", null, new Date(),
+                               new Date(), new Date(), "user", 1,
+                               readParams("[{\"id\":\"server-1\"," +
+                                          "\"graphs\":3}]"));
+        LicenseQuota quota = LicenseQuota.of(params, "server-1");
+        quota.acquire(Resource.GRAPHS, 3L);
+
+        // The usages are kept with the new limits
+        quota.limits(readParam("{\"id\":\"server-1\",\"graphs\":2}"));
+        Assert.assertEquals(3L, quota.used(Resource.GRAPHS));
+        Assert.assertFalse(quota.tryAcquire(Resource.GRAPHS, 0L));
+        quota.release(Resource.GRAPHS, 2L);
+        Assert.assertTrue(quota.tryAcquire(Resource.GRAPHS, 1L));
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            quota.limits(readParam("{\"id\":\"server-2\",\"graphs\":5}"));
+        });
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            LicenseQuota.of(params, "server-2");
+        }, e -> {
+            Assert.assertContains("The server id 'server-2' is not " +
+                                  "authorized", e.getMessage());
+        });
+    }
+
+    @Test
+    public void testAcquireConcurrently() throws Exception {
+        int threads = 8;
+        int times = 2000;
+        long limit = 5000L;
+        LicenseQuota quota = new LicenseQuota(readParam(
+                             "{\"id\":\"server-1\",\"data_size\":" +
+                             limit + "}"));
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    int acquired = 0;
+                    for (int j = 0; j < times; j++) {
+                        if (quota.tryAcquire(Resource.DATA_SIZE, 1L)) {
+                            acquired++;
+                        }
+                    }
+                    return acquired;
+                }));
+            }
+            long acquired = 0L;
+            for (Future<Integer> future : futures) {
+                acquired += future.get();
+            }
+            // Never exceed the limit under contention
+            Assert.assertEquals(limit, acquired);
+            Assert.assertEquals(limit, quota.used(Resource.DATA_SIZE));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static LicenseExtraParam readParam(String json)
+                                               throws Exception {
+        return MAPPER.readValue(json, LicenseExtraParam.class);
+    }
+
+    private static List<LicenseExtraParam> readParams(String json)
+                                                      throws Exception {
+        return TrueLicenseManager.readExtraParamIndex(json).params();
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.baidu.hugegraph.license.LicenseInstallParam;
+import com.baidu.hugegraph.testutil.Assert;
+
+import de.schlichtherle.license.LicenseParam;
+
+public class LicenseRegistryTest {
+
+    private static final String DIR = "src/test/resources/";
+    private static final String SUBJECT = "hugegraph-evaluation";
+
+    private LicenseInstallParam param;
+
+    @Before
+    public void setup() throws Exception {
+        TrueLicenseCreator.build(DIR + "create-license.json").create();
+        this.param = TrueLicenseManagerTest.readInstallParam(
+                     DIR + "verify-license.json");
+    }
+
+    @After
+    public void teardown() throws IOException {
+        File lic = new File(DIR + "hugegraph-evaluation.license");
+        if (lic.exists()) {
+            FileUtils.forceDelete(lic);
+        }
+    }
+
+    @Test
+    public void testRegisterTenants() throws Exception {
+        LicenseRegistry registry = newRegistry(2);
+        TrueLicenseManager managerA = registry.register(
+                                      "tenant-a", this.param, params -> { });
+        TrueLicenseManager managerB = registry.register(
+                                      "tenant-b", this.param, params -> { });
+        Assert.assertEquals(2, registry.size());
+        Assert.assertSame(managerA, registry.manager(SUBJECT, "tenant-a"));
+        // The managers with the same key store share the notary
+        Assert.assertSame(managerA.getLicenseNotary(),
+                          managerB.getLicenseNotary());
+        // The license keys of tenants are stored separately
+        Assert.assertNotSame(managerA.storage(), managerB.storage());
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            registry.register("tenant-a", this.param, params -> { });
+        }, e -> {
+            Assert.assertContains("has been registered", e.getMessage());
+        });
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            registry.manager(SUBJECT, "tenant-c");
+        }, e -> {
+            Assert.assertContains("is not registered", e.getMessage());
+        });
+
+        registry.unregister(SUBJECT, "tenant-b");
+        Assert.assertEquals(1, registry.size());
+        Assert.assertFalse(registry.licensed(SUBJECT, "tenant-b"));
+    }
+
+    @Test
+    public void testLicensedLookups() throws Exception {
+        LicenseRegistry registry = newRegistry(2);
+        AtomicInteger callbacks = new AtomicInteger();
+        registry.register("tenant-a", this.param, params -> {
+            callbacks.incrementAndGet();
+        });
+        registry.register("tenant-b", this.param, params -> {
+            throw new IllegalStateException("Rejected by tenant-b");
+        });
+        registry.register("tenant-c", this.param, params -> { });
+
+        registry.installLicense(SUBJECT, "tenant-a");
+        Assert.assertThrows(IllegalStateException.class, () -> {
+            registry.installLicense(SUBJECT, "tenant-b");
+        });
+        Assert.assertEquals(1, callbacks.get());
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(registry.licensed(SUBJECT, "tenant-a"));
+            Assert.assertTrue(registry.licensed(SUBJECT, "tenant-a",
+                                                "server-1"));
+            Assert.assertFalse(registry.licensed(SUBJECT, "tenant-a",
+                                                 "server-2"));
+        }
+        // The verified params are reused
+        Assert.assertEquals(1, callbacks.get());
+        Assert.assertEquals(3, registry.matchParam(SUBJECT, "tenant-a",
+                                                   "server-1").graphs());
+
+        Assert.assertFalse(registry.licensed(SUBJECT, "tenant-b"));
+        // Not installed
+        Assert.assertFalse(registry.licensed(SUBJECT, "tenant-c"));
+        Assert.assertFalse(registry.licensed(SUBJECT, "tenant-d"));
+        Assert.assertFalse(registry.licensed("hugegraph", "tenant-a"));
+
+        // The evicted tenant is verified again
+        registry.installLicense(SUBJECT, "tenant-c");
+        Assert.assertTrue(registry.licensed(SUBJECT, "tenant-c"));
+        registry.invalidate(SUBJECT, "tenant-a");
+        Assert.assertTrue(registry.cachedSize() <= 2L);
+        Assert.assertTrue(registry.licensed(SUBJECT, "tenant-a"));
+        Assert.assertEquals(2, callbacks.get());
+
+        registry.uninstallLicense(SUBJECT, "tenant-a");
+        Assert.assertFalse(registry.licensed(SUBJECT, "tenant-a"));
+    }
+
+    @Test
+    public void testVerifyRacingWithInvalidate() throws Exception {
+        LicenseRegistry registry = newRegistry(2);
+        AtomicBoolean blocking = new AtomicBoolean();
+        CountDownLatch verifying = new CountDownLatch(1);
+        CountDownLatch invalidated = new CountDownLatch(1);
+        registry.register("tenant-a", this.param, params -> {
+            if (blocking.get()) {
+                verifying.countDown();
+                try {
+                    invalidated.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        registry.installLicense(SUBJECT, "tenant-a");
+        registry.invalidate(SUBJECT, "tenant-a");
+        Assert.assertEquals(0L, registry.cachedSize());
+
+        blocking.set(true);
+        CompletableFuture<Boolean> licensed = CompletableFuture.supplyAsync(
+                                              () -> registry.licensed(
+                                                    SUBJECT, "tenant-a"));
+        Assert.assertTrue(verifying.await(10L, TimeUnit.SECONDS));
+        // Verified before the invalidation, so it's not cached
+        registry.invalidate(SUBJECT, "tenant-a");
+        invalidated.countDown();
+        Assert.assertTrue(licensed.get(10L, TimeUnit.SECONDS));
+        Assert.assertEquals(0L, registry.cachedSize());
+
+        blocking.set(false);
+        Assert.assertTrue(registry.licensed(SUBJECT, "tenant-a"));
+        Assert.assertEquals(1L, registry.cachedSize());
+    }
+
+    private static LicenseRegistry newRegistry(int capacity) {
+        return new LicenseRegistry(60000L, capacity,
+                                   (subject, tenant) -> {
+                                       return new MemoryLicenseKeyStorage();
+                                   }) {
+            @Override
+            protected LicenseParam newLicenseParam(LicenseInstallParam param) {
+                return TrueLicenseManagerTest.wrapLicenseParam(param);
+            }
+        };
+    }
+}
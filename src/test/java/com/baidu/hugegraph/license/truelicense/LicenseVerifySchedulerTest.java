@@ -0,0 +1,176 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.baidu.hugegraph.license.LicenseInstallParam;
+import com.baidu.hugegraph.license.LicenseParams;
+import com.baidu.hugegraph.license.truelicense.LicenseVerifyScheduler.Verdict;
+import com.baidu.hugegraph.testutil.Assert;
+
+import de.schlichtherle.license.NoLicenseInstalledException;
+
+public class LicenseVerifySchedulerTest {
+
+    private static final String DIR = "src/test/resources/";
+
+    private AtomicBoolean broken;
+    private DefaultLicenseMetrics metrics;
+    private TrueLicenseManager manager;
+
+    @Before
+    public void setup() throws IOException {
+        TrueLicenseCreator.build(DIR + "create-license.json").create();
+
+        LicenseInstallParam param = TrueLicenseManagerTest.readInstallParam(
+                                    DIR + "verify-license.json");
+        this.broken = new AtomicBoolean(false);
+        this.metrics = new DefaultLicenseMetrics();
+        LicenseKeyStorage storage = new MemoryLicenseKeyStorage() {
+            @Override
+            public byte[] load() {
+                if (broken.get()) {
+                    throw new UncheckedIOException(new IOException(
+                              "Failed to read license key"));
+                }
+                return super.load();
+            }
+        };
+        this.manager = new TrueLicenseManager(
+                       TrueLicenseManagerTest.wrapLicenseParam(param),
+                       param, params -> { }, null, storage);
+        this.manager.metrics(this.metrics);
+    }
+
+    @After
+    public void teardown() throws IOException {
+        File lic = new File(DIR + "hugegraph-evaluation.license");
+        if (lic.exists()) {
+            FileUtils.forceDelete(lic);
+        }
+    }
+
+    @Test
+    public void testVerifyLicenseWithLastVerdict() throws Exception {
+        try (LicenseVerifyScheduler scheduler = new LicenseVerifyScheduler(
+                                                this.manager, 60000L,
+                                                0.1D, 0L)) {
+            Assert.assertThrows(IllegalStateException.class, () -> {
+                scheduler.verifyLicense();
+            }, e -> {
+                Assert.assertContains("is not started", e.getMessage());
+            });
+
+            LicenseParams params = scheduler.installLicense();
+            scheduler.start();
+            for (int i = 0; i < 10; i++) {
+                Assert.assertEquals(params.notAfter(),
+                                    scheduler.verifyLicense().notAfter());
+            }
+            // Only the check on start did verify
+            Assert.assertEquals(1L, this.metrics.counter("verify.success"));
+            Assert.assertTrue(scheduler.verdict().valid());
+
+            scheduler.uninstallLicense();
+            Assert.assertFalse(scheduler.verdict().valid());
+            Assert.assertThrows(NoLicenseInstalledException.class, () -> {
+                scheduler.verifyLicense();
+            });
+        }
+    }
+
+    @Test
+    public void testVerifyLicenseWithGracePeriod() throws Exception {
+        try (LicenseVerifyScheduler scheduler = new LicenseVerifyScheduler(
+                                                this.manager, 60000L,
+                                                0.0D, 60000L)) {
+            scheduler.installLicense();
+            scheduler.start();
+
+            this.broken.set(true);
+            scheduler.check();
+            Verdict verdict = scheduler.verdict();
+            Assert.assertTrue(verdict.inGracePeriod());
+            Assert.assertTrue(verdict.failingSince() > 0L);
+            Assert.assertNotNull(scheduler.verifyLicense());
+
+            this.broken.set(false);
+            scheduler.check();
+            Assert.assertTrue(scheduler.verdict().valid());
+            Assert.assertFalse(scheduler.verdict().inGracePeriod());
+        }
+
+        try (LicenseVerifyScheduler scheduler = new LicenseVerifyScheduler(
+                                                this.manager, 60000L,
+                                                0.0D, 0L)) {
+            scheduler.start();
+            this.broken.set(true);
+            scheduler.check();
+            Assert.assertFalse(scheduler.verdict().valid());
+            Assert.assertThrows(UncheckedIOException.class, () -> {
+                scheduler.verifyLicense();
+            });
+        }
+    }
+
+    @Test
+    public void testNextDelay() throws Exception {
+        try (LicenseVerifyScheduler scheduler = new LicenseVerifyScheduler(
+                                                this.manager, 10000L,
+                                                0.5D, 0L)) {
+            scheduler.installLicense();
+            Verdict verdict = scheduler.verdict();
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < 100; i++) {
+                long delay = scheduler.nextDelay(verdict, now);
+                Assert.assertTrue(delay >= 5000L && delay <= 15000L);
+            }
+
+            // Re-check right after the notAfter crossed
+            Date notAfter = verdict.params().notAfter();
+            long delay = scheduler.nextDelay(verdict,
+                                             notAfter.getTime() - 100L);
+            Assert.assertEquals(101L, delay);
+        }
+    }
+
+    @Test
+    public void testCreateWithInvalidArgs() {
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            new LicenseVerifyScheduler(this.manager, 0L, 0.1D, 0L);
+        });
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            new LicenseVerifyScheduler(this.manager, 1000L, 1.0D, 0L);
+        });
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            new LicenseVerifyScheduler(this.manager, 1000L, 0.1D, -1L);
+        });
+    }
+}
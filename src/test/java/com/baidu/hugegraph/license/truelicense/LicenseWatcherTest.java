@@ -0,0 +1,135 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import com.baidu.hugegraph.license.LicenseInstallParam;
+import com.baidu.hugegraph.license.LicenseParams;
+import com.baidu.hugegraph.testutil.Assert;
+
+public class LicenseWatcherTest {
+
+    private static final String DIR = "src/test/resources/";
+
+    @After
+    public void teardown() throws IOException {
+        File lic = new File(DIR + "hugegraph-evaluation.license");
+        if (lic.exists()) {
+            FileUtils.forceDelete(lic);
+        }
+    }
+
+    @Test
+    public void testReloadLicense() throws Exception {
+        TrueLicenseCreator creator = TrueLicenseCreator.build(
+                                     DIR + "create-license.json");
+        creator.create();
+        MemoryLicenseKeyStorage storage = new MemoryLicenseKeyStorage();
+        TrueLicenseManager manager = newManager(storage);
+        manager.installLicense();
+        byte[] installed = storage.load();
+
+        // The invalid license is not installed
+        File license = new File(DIR + "hugegraph-evaluation.license");
+        FileUtils.writeStringToFile(license, "invalid", "UTF-8");
+        Assert.assertThrows(Exception.class, () -> {
+            manager.reloadLicense();
+        });
+        Assert.assertArrayEquals(installed, storage.load());
+        manager.verifyLicense();
+
+        creator.format(LicenseFormat.BINARY);
+        creator.create();
+        Assert.assertEquals("hugegraph-evaluation",
+                            manager.reloadLicense().subject());
+        Assert.assertEquals(LicenseFormat.BINARY,
+                            LicenseFormat.of(storage.load()));
+        manager.verifyLicense();
+    }
+
+    @Test
+    public void testWatchLicenseFile() throws Exception {
+        TrueLicenseCreator creator = TrueLicenseCreator.build(
+                                     DIR + "create-license.json");
+        creator.create();
+        MemoryLicenseKeyStorage storage = new MemoryLicenseKeyStorage();
+        TrueLicenseManager manager = newManager(storage);
+        manager.snapshotTtl(60000L);
+        manager.installLicense();
+
+        BlockingQueue<Object> reloads = new LinkedBlockingQueue<>();
+        try (LicenseWatcher watcher = new LicenseWatcher(manager, 100L) {
+            @Override
+            protected void onReloaded(LicenseParams params) {
+                reloads.add(params);
+            }
+
+            @Override
+            protected void onReloadFailed(Exception e) {
+                reloads.add(e);
+            }
+        }) {
+            Assert.assertEquals(new File(DIR + "publicCerts.store")
+                                .getAbsoluteFile().toPath(),
+                                watcher.keyStoreFile());
+            watcher.start();
+            Assert.assertThrows(IllegalStateException.class, () -> {
+                watcher.start();
+            });
+
+            File license = new File(DIR + "hugegraph-evaluation.license");
+            FileUtils.writeStringToFile(license, "invalid", "UTF-8");
+            Object result = reloads.poll(10L, TimeUnit.SECONDS);
+            Assert.assertTrue(String.valueOf(result),
+                              result instanceof Exception);
+            // The installed license keeps working
+            Assert.assertEquals(LicenseFormat.XML,
+                                LicenseFormat.of(storage.load()));
+            manager.verifyLicense();
+
+            creator.format(LicenseFormat.BINARY);
+            creator.create();
+            result = reloads.poll(10L, TimeUnit.SECONDS);
+            Assert.assertTrue(String.valueOf(result),
+                              result instanceof LicenseParams);
+            Assert.assertEquals(LicenseFormat.BINARY,
+                                LicenseFormat.of(storage.load()));
+            manager.verifyLicense();
+        }
+    }
+
+    private static TrueLicenseManager newManager(LicenseKeyStorage storage)
+                                                 throws IOException {
+        LicenseInstallParam param = TrueLicenseManagerTest.readInstallParam(
+                                    DIR + "verify-license.json");
+        return new TrueLicenseManager(TrueLicenseManagerTest.wrapLicenseParam(
+                                      param),
+                                      param, params -> { }, null, storage);
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.baidu.hugegraph.license.LicenseInstallParam;
+import com.baidu.hugegraph.testutil.Assert;
+
+import de.schlichtherle.license.LicenseContent;
+import de.schlichtherle.license.NoLicenseInstalledException;
+
+public class SharedLicenseVerdictTest {
+
+    private static final String DIR = "src/test/resources/";
+
+    private static final byte[] SECRET = "a123456".getBytes(
+                                         StandardCharsets.UTF_8);
+    private static final long TTL = 60000L;
+
+    private File verdictDir;
+
+    @Before
+    public void setup() throws IOException {
+        this.verdictDir = Files.createTempDirectory("license-verdict")
+                               .toFile();
+    }
+
+    @After
+    public void teardown() throws IOException {
+        FileUtils.deleteDirectory(this.verdictDir);
+        File lic = new File(DIR + "hugegraph-evaluation.license");
+        if (lic.exists()) {
+            FileUtils.forceDelete(lic);
+        }
+    }
+
+    @Test
+    public void testPublishAndRead() throws IOException {
+        try (SharedLicenseVerdict writer = this.newVerdict(SECRET);
+             SharedLicenseVerdict reader = this.newVerdict(SECRET)) {
+            long now = System.currentTimeMillis();
+            Assert.assertEquals(0L, reader.sequence());
+            Assert.assertNull(reader.read(now));
+
+            long sequence = writer.publish(newContent(null));
+            Assert.assertEquals(2L, sequence);
+            Assert.assertEquals(sequence, reader.sequence());
+            SharedLicenseVerdict.Verdict verdict = reader.read(now);
+            Assert.assertEquals(sequence, verdict.sequence());
+            Assert.assertEquals("hugegraph-evaluation",
+                                verdict.content().getSubject());
+            Assert.assertEquals(verdict.publishedAt() + TTL,
+                                verdict.expiredAt());
+            Assert.assertNull(reader.read(verdict.expiredAt()));
+
+            // The verdict expires with the license
+            Date notAfter = new Date(now + 1000L);
+            Assert.assertEquals(4L, writer.publish(newContent(notAfter)));
+            verdict = reader.read(now);
+            Assert.assertEquals(notAfter.getTime(), verdict.expiredAt());
+
+            writer.invalidate();
+            Assert.assertEquals(6L, reader.sequence());
+            Assert.assertNull(reader.read(now));
+        }
+    }
+
+    @Test
+    public void testPublishIfChanged() throws IOException {
+        try (SharedLicenseVerdict writer = this.newVerdict(SECRET);
+             SharedLicenseVerdict other = this.newVerdict(SECRET)) {
+            LicenseContent content = newContent(null);
+            Assert.assertEquals(2L, writer.publishIfChanged(content));
+            // The same content isn't written again
+            Assert.assertEquals(2L, writer.publishIfChanged(content));
+            Assert.assertEquals(2L, writer.sequence());
+
+            LicenseContent changed = newContent(null);
+            changed.setConsumerAmount(2);
+            Assert.assertEquals(4L, writer.publishIfChanged(changed));
+
+            // Published again after overwritten or invalidated
+            Assert.assertEquals(6L, other.publish(content));
+            Assert.assertEquals(8L, writer.publishIfChanged(changed));
+            writer.invalidate();
+            Assert.assertEquals(12L, writer.publishIfChanged(changed));
+        }
+    }
+
+    @Test
+    public void testReadWithForgedVerdict() throws IOException {
+        try (SharedLicenseVerdict writer = this.newVerdict(SECRET);
+             SharedLicenseVerdict other = this.newVerdict(new byte[]{7})) {
+            long now = System.currentTimeMillis();
+            long sequence = writer.publish(newContent(null));
+
+            // Published with another secret
+            Assert.assertNull(other.read(now));
+
+            try (RandomAccessFile file = new RandomAccessFile(
+                                         writer.file().toFile(), "rw")) {
+                // Being published by a writer
+                file.seek(8L);
+                file.writeLong(sequence + 1L);
+                Assert.assertNull(writer.read(now));
+                file.seek(8L);
+                file.writeLong(sequence);
+                Assert.assertNotNull(writer.read(now));
+
+                // Modified content
+                file.seek(100L);
+                int b = file.read();
+                file.seek(100L);
+                file.write(b ^ 0x01);
+                Assert.assertNull(writer.read(now));
+            }
+
+            // Recover after the next publishing
+            Assert.assertEquals(sequence + 2L,
+                                writer.publish(newContent(null)));
+            Assert.assertNotNull(writer.read(now));
+        }
+    }
+
+    @Test
+    public void testPublishWithExceedCapacity() throws IOException {
+        try (SharedLicenseVerdict verdict = new SharedLicenseVerdict(
+                                            this.verdictDir.getPath(),
+                                            "hugegraph", SECRET, TTL, 128)) {
+            Assert.assertEquals(0L, verdict.publish(newContent(null)));
+            Assert.assertNull(verdict.read(System.currentTimeMillis()));
+        }
+    }
+
+    @Test
+    public void testVerifyLicenseWithSharedVerdict() throws Exception {
+        TrueLicenseCreator.build(DIR + "create-license.json").create();
+
+        AtomicInteger callbacks = new AtomicInteger();
+        TrueLicenseManager manager = this.newManager(callbacks);
+        manager.installLicense();
+        Assert.assertEquals(1, callbacks.get());
+
+        // Like another process without the license key installed
+        AtomicInteger otherCallbacks = new AtomicInteger();
+        DefaultLicenseMetrics metrics = new DefaultLicenseMetrics();
+        TrueLicenseManager other = this.newManager(otherCallbacks);
+        other.metrics(metrics);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals("hugegraph-evaluation",
+                                other.verifyLicense().subject());
+        }
+        Assert.assertEquals(3L, metrics.counter(LicenseMetrics.SHARED_HIT));
+        Assert.assertEquals(0L, metrics.timer(LicenseMetrics.SIGNATURE)
+                                       .getCount());
+        // The callback is called once for each published verdict
+        Assert.assertEquals(1, otherCallbacks.get());
+
+        // The verdict is published again by the re-install
+        manager.installLicense();
+        other.verifyLicense();
+        Assert.assertEquals(2, otherCallbacks.get());
+
+        // Fall back to local verification after the verdict is invalidated
+        manager.uninstallLicense();
+        Assert.assertThrows(NoLicenseInstalledException.class, () -> {
+            other.verifyLicense();
+        });
+        Assert.assertEquals(1L, metrics.counter(LicenseMetrics.SHARED_MISS));
+    }
+
+    @Test
+    public void testVerifyLicenseWithRejectedVerdict() throws Exception {
+        TrueLicenseCreator.build(DIR + "create-license.json").create();
+
+        AtomicInteger rejections = new AtomicInteger();
+        DefaultLicenseMetrics metrics = new DefaultLicenseMetrics();
+        LicenseInstallParam param = TrueLicenseManagerTest.readInstallParam(
+                                    DIR + "verify-license.json");
+        TrueLicenseManager manager = new TrueLicenseManager(
+                                     TrueLicenseManagerTest.wrapLicenseParam(
+                                     param),
+                                     param, params -> {
+            if (rejections.getAndDecrement() > 0) {
+                throw new IllegalStateException("Rejected");
+            }
+        }, null, new MemoryLicenseKeyStorage());
+        SharedLicenseVerdict shared = this.newVerdict(SECRET);
+        manager.sharedVerdict(shared);
+        manager.metrics(metrics);
+        manager.installLicense();
+        long sequence = shared.sequence();
+
+        // Verify locally if the verdict is rejected, like a failed callback
+        rejections.set(1);
+        Assert.assertEquals("hugegraph-evaluation",
+                            manager.verifyLicense().subject());
+        Assert.assertEquals(1L, metrics.counter(LicenseMetrics.SHARED_MISS));
+        // The unchanged content isn't published again
+        Assert.assertEquals(sequence, shared.sequence());
+
+        // The rejected verdict is skipped without validating it again
+        manager.verifyLicense();
+        Assert.assertEquals(2L, metrics.counter(LicenseMetrics.SHARED_MISS));
+        Assert.assertEquals(0L, metrics.counter(LicenseMetrics.SHARED_HIT));
+        Assert.assertEquals(sequence, shared.sequence());
+    }
+
+    @Test
+    public void testVerifyLicenseWithVerdictOfOtherServer() throws Exception {
+        TrueLicenseCreator creator = TrueLicenseCreator.build(
+                                     DIR + "create-license.json");
+        creator.format(LicenseFormat.BUNDLE);
+        creator.create();
+
+        AtomicInteger callbacks = new AtomicInteger();
+        TrueLicenseManager manager = this.newManager(callbacks);
+        manager.serverId("server-1");
+        manager.installLicense();
+
+        // The entry of server-1 isn't taken by server-2
+        AtomicInteger otherCallbacks = new AtomicInteger();
+        DefaultLicenseMetrics metrics = new DefaultLicenseMetrics();
+        TrueLicenseManager other = this.newManager(otherCallbacks);
+        other.serverId("server-2");
+        other.metrics(metrics);
+        Assert.assertThrows(NoLicenseInstalledException.class, () -> {
+            other.verifyLicense();
+        });
+        Assert.assertEquals(1L, metrics.counter(LicenseMetrics.SHARED_MISS));
+        Assert.assertEquals(0L, metrics.counter(LicenseMetrics.SHARED_HIT));
+        Assert.assertEquals(0, otherCallbacks.get());
+
+        // But by server-1 once the entry is published again
+        other.serverId("server-1");
+        manager.installLicense();
+        Assert.assertEquals("hugegraph-evaluation",
+                            other.verifyLicense().subject());
+        Assert.assertEquals(1L, metrics.counter(LicenseMetrics.SHARED_HIT));
+    }
+
+    private SharedLicenseVerdict newVerdict(byte[] secret)
+                                            throws IOException {
+        return new SharedLicenseVerdict(this.verdictDir.getPath(),
+                                        "hugegraph", secret, TTL);
+    }
+
+    private TrueLicenseManager newManager(AtomicInteger callbacks)
+                                          throws IOException {
+        LicenseInstallParam param = TrueLicenseManagerTest.readInstallParam(
+                                    DIR + "verify-license.json");
+        TrueLicenseManager manager = new TrueLicenseManager(
+                                     TrueLicenseManagerTest.wrapLicenseParam(
+                                     param),
+                                     param, params -> {
+                                         callbacks.incrementAndGet();
+                                     }, null, new MemoryLicenseKeyStorage());
+        manager.sharedVerdict(this.newVerdict(SECRET));
+        return manager;
+    }
+
+    private static LicenseContent newContent(Date notAfter) {
+        LicenseContent content = new LicenseContent();
+        X500Principal principal = new X500Principal("CN=hugegraph");
+        content.setSubject("hugegraph-evaluation");
+        content.setHolder(principal);
+        content.setIssuer(principal);
+        content.setIssued(new Date());
+        content.setNotAfter(notAfter);
+        content.setConsumerType("user");
+        content.setConsumerAmount(1);
+        content.setExtra("[{\"id\":\"server-1\"}]");
+        return content;
+    }
+}
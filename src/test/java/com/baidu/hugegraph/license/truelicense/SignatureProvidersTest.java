@@ -0,0 +1,212 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.baidu.hugegraph.license.truelicense.TrueLicenseCreator.CustomKeyStoreParam;
+import com.baidu.hugegraph.testutil.Assert;
+
+import de.schlichtherle.license.KeyStoreParam;
+import de.schlichtherle.license.LicenseContent;
+import de.schlichtherle.xml.GenericCertificate;
+import de.schlichtherle.xml.GenericCertificateIntegrityException;
+
+public class SignatureProvidersTest {
+
+    private static final String DIR = "src/test/resources/";
+    private static final String PASSWORD = "a123456";
+
+    @Test
+    public void testDefaultProviderOfKey() throws Exception {
+        KeyPair dsa = KeyPairGenerator.getInstance("DSA").generateKeyPair();
+        KeyPair ec = ecKeyPair();
+        KeyPairGenerator rsaGenerator = KeyPairGenerator.getInstance("RSA");
+        rsaGenerator.initialize(2048);
+        KeyPair rsa = rsaGenerator.generateKeyPair();
+
+        Assert.assertEquals(SignatureProviders.SHA1_WITH_DSA,
+                            SignatureProviders.of(dsa.getPrivate())
+                                              .algorithm());
+        Assert.assertEquals(SignatureProviders.SHA256_WITH_ECDSA,
+                            SignatureProviders.of(ec.getPublic())
+                                              .algorithm());
+        Assert.assertEquals(SignatureProviders.SHA256_WITH_RSA,
+                            SignatureProviders.of(rsa.getPrivate())
+                                              .algorithm());
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            SignatureProviders.get("NONEwithDSA");
+        }, e -> {
+            Assert.assertContains("Unsupported signature algorithm " +
+                                  "'NONEwithDSA'", e.getMessage());
+        });
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            SignatureProviders.of(SignatureProviders.SHA256_WITH_ECDSA,
+                                  rsa.getPublic());
+        }, e -> {
+            Assert.assertContains("The signature algorithm " +
+                                  "'SHA256withECDSA' can't use RSA key",
+                                  e.getMessage());
+        });
+    }
+
+    @Test
+    public void testEcdsaWithKeyOfOtherCurve() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp384r1"));
+        KeyPair p384 = generator.generateKeyPair();
+
+        SignatureProvider provider = SignatureProviders.get(
+                                     SignatureProviders.SHA256_WITH_ECDSA);
+        Assert.assertTrue(provider.supports(ecKeyPair().getPrivate()));
+        Assert.assertFalse(provider.supports(p384.getPrivate()));
+        Assert.assertFalse(provider.supports(p384.getPublic()));
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            SignatureProviders.of(p384.getPrivate());
+        }, e -> {
+            Assert.assertContains("The signature algorithm " +
+                                  "'SHA256withECDSA' can't use EC key on " +
+                                  "384-bit curve", e.getMessage());
+        });
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            SignatureProviders.of(SignatureProviders.SHA256_WITH_ECDSA,
+                                  p384.getPublic());
+        }, e -> {
+            Assert.assertContains("can't use EC key on 384-bit curve",
+                                  e.getMessage());
+        });
+    }
+
+    @Test
+    public void testSignatureEngineCachedPerThread() throws Exception {
+        SignatureProvider provider = SignatureProviders.get(
+                                     SignatureProviders.SHA256_WITH_ECDSA);
+        Signature signature = provider.signature();
+        Assert.assertSame(signature, provider.signature());
+
+        Signature[] other = new Signature[1];
+        Thread thread = new Thread(() -> {
+            try {
+                other[0] = provider.signature();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        thread.join();
+        Assert.assertNotNull(other[0]);
+        Assert.assertNotSame(signature, other[0]);
+    }
+
+    @Test
+    public void testRegisterProvider() throws Exception {
+        String algorithm = "SHA512withECDSA";
+        SignatureProviders.register(new SignatureProviders.JcaSignatureProvider(
+                                    algorithm, "EC"));
+        KeyPair ec = ecKeyPair();
+        BinaryLicense license = BinaryLicense.sign(
+                                newContent(), ec.getPrivate(),
+                                SignatureProviders.get(algorithm));
+        Assert.assertEquals(algorithm, license.algorithm());
+        BinaryLicense.parse(license.toBytes()).verify(ec.getPublic());
+
+        // Verify with the other EC key
+        Assert.assertThrows(GenericCertificateIntegrityException.class, () -> {
+            license.verify(ecKeyPair().getPublic());
+        });
+    }
+
+    @Test
+    public void testNotarySignWithEcdsa() throws Exception {
+        ConcurrentLicenseNotary signer = new ConcurrentLicenseNotary(
+                                         keyStoreParam("ecPrivateKeys.store",
+                                                       "privatekey",
+                                                       PASSWORD));
+        ConcurrentLicenseNotary verifier = new ConcurrentLicenseNotary(
+                                           keyStoreParam("ecPublicCerts.store",
+                                                         "publiccert", null));
+        GenericCertificate certificate = signer.sign(newContent());
+        Assert.assertEquals(SignatureProviders.SHA256_WITH_ECDSA,
+                            certificate.getSignatureAlgorithm());
+        // Verify the unlocked copy like the one decrypted from license key
+        verifier.verify(new GenericCertificate(certificate));
+
+        // The specified provider must match the private key
+        SignatureProvider rsa = SignatureProviders.get(
+                                SignatureProviders.SHA256_WITH_RSA);
+        ConcurrentLicenseNotary rsaSigner = new ConcurrentLicenseNotary(
+                                            keyStoreParam("ecPrivateKeys.store",
+                                                          "privatekey",
+                                                          PASSWORD),
+                                            rsa);
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            rsaSigner.sign(newContent());
+        }, e -> {
+            Assert.assertContains("can't use EC key", e.getMessage());
+        });
+
+        // The legacy DSA notary still works
+        ConcurrentLicenseNotary dsaSigner = new ConcurrentLicenseNotary(
+                                            keyStoreParam("privateKeys.store",
+                                                          "privatekey",
+                                                          PASSWORD));
+        ConcurrentLicenseNotary dsaVerifier = new ConcurrentLicenseNotary(
+                                              keyStoreParam(
+                                              "publicCerts.store",
+                                              "publiccert", null));
+        GenericCertificate dsaCertificate = dsaSigner.sign(newContent());
+        Assert.assertEquals(SignatureProviders.SHA1_WITH_DSA,
+                            dsaCertificate.getSignatureAlgorithm());
+        dsaVerifier.verify(new GenericCertificate(dsaCertificate));
+    }
+
+    private static KeyPair ecKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        return generator.generateKeyPair();
+    }
+
+    private static KeyStoreParam keyStoreParam(String store, String alias,
+                                               String keyPassword) {
+        return new CustomKeyStoreParam(SignatureProvidersTest.class,
+                                       DIR + store, alias, PASSWORD,
+                                       keyPassword);
+    }
+
+    private static LicenseContent newContent() {
+        LicenseContent content = new LicenseContent();
+        content.setSubject("hugegraph-evaluation");
+        content.setIssued(new Date(1564588800000L));
+        content.setNotBefore(new Date(1564588800000L));
+        content.setNotAfter(new Date(1880121600000L));
+        content.setConsumerType("user");
+        content.setConsumerAmount(1);
+        content.setExtra("[{\"id\":\"server-1\",\"graphs\":3}]");
+        return content;
+    }
+}
@@ -38,6 +38,12 @@ public class TrueLicenseCreatorTest {
         if (lic.exists()) {
             FileUtils.forceDelete(lic);
         }
+        for (int i = 1; i <= 3; i++) {
+            File batchLic = new File(DIR + "hugegraph-batch-" + i + ".license");
+            if (batchLic.exists()) {
+                FileUtils.forceDelete(batchLic);
+            }
+        }
     }
 
     @Test
@@ -129,4 +135,37 @@ public class TrueLicenseCreatorTest {
 
         Assert.assertFalse(lic.exists());
     }
+
+    @Test
+    public void testCreateLicenseBatch() throws Exception {
+        String manifestPath = DIR + "create-license-batch.json";
+        TrueLicenseBatchCreator creator = TrueLicenseBatchCreator.build(
+                                          manifestPath, 2);
+        TrueLicenseBatchCreator.BatchResult batch = creator.create();
+
+        Assert.assertEquals(3, batch.results().size());
+        Assert.assertEquals(2L, batch.successes());
+        Assert.assertEquals(1L, batch.failures());
+        Assert.assertTrue(batch.throughput() > 0.0D);
+
+        // The results keep the order of manifest
+        for (int i = 1; i <= 3; i++) {
+            TrueLicenseBatchCreator.Result result = batch.results().get(i - 1);
+            String path = DIR + "hugegraph-batch-" + i + ".license";
+            Assert.assertEquals(path, result.licensePath());
+            Assert.assertEquals(i != 3, result.success());
+            Assert.assertEquals(i != 3, new File(path).exists());
+        }
+        Throwable error = batch.results().get(2).error();
+        Assert.assertContains("Failed to generate license", error.getMessage());
+        Assert.assertContains("Invalid ip address '8.8.8.888'",
+                              error.getCause().getMessage());
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            TrueLicenseBatchCreator.build(manifestPath, 0);
+        }, e -> {
+            Assert.assertContains("The parallelism must be > 0",
+                                  e.getMessage());
+        });
+    }
 }
@@ -22,6 +22,17 @@ package com.baidu.hugegraph.license.truelicense;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.prefs.Preferences;
 
 import org.apache.commons.codec.Charsets;
@@ -53,7 +64,9 @@ public class TrueLicenseManagerTest {
     @After
     public void teardown() throws IOException {
         File lic = new File(DIR + "hugegraph-evaluation.license");
-        FileUtils.forceDelete(lic);
+        if (lic.exists()) {
+            FileUtils.forceDelete(lic);
+        }
     }
 
     @Test
@@ -67,6 +80,131 @@ public class TrueLicenseManagerTest {
                                                          "server-1", 2);
         verifier.install();
         verifier.verify();
+
+        ExtraParamIndex index = verifier.manager.extraParamIndex();
+        Assert.assertEquals(1, index.size());
+        Assert.assertEquals(3, index.matchId("server-1").graphs());
+    }
+
+    @Test
+    public void testVerifyLicenseWithMetrics() throws Exception {
+        String createConfigPath = DIR + "create-license.json";
+        TrueLicenseCreator creator = TrueLicenseCreator.build(createConfigPath);
+        creator.create();
+
+        String verifyConfigPath = DIR + "verify-license.json";
+        LicenseVerifier verifier = LicenseVerifier.build(verifyConfigPath,
+                                                         "server-1", 2);
+        DefaultLicenseMetrics metrics = new DefaultLicenseMetrics();
+        verifier.manager.metrics(metrics);
+        verifier.install();
+        verifier.verify();
+        verifier.verify();
+
+        Assert.assertEquals(1L, metrics.counter("install.success"));
+        Assert.assertEquals(2L, metrics.counter("verify.success"));
+        Assert.assertEquals(1L, metrics.timer(LicenseMetrics.INSTALL)
+                                       .getCount());
+        Assert.assertEquals(2L, metrics.timer(LicenseMetrics.VERIFY)
+                                       .getCount());
+        for (String timer : new String[]{LicenseMetrics.DECRYPT,
+                                         LicenseMetrics.SIGNATURE,
+                                         LicenseMetrics.DECODE,
+                                         LicenseMetrics.VALIDATE,
+                                         LicenseMetrics.CALLBACK}) {
+            Assert.assertEquals(3L, metrics.timer(timer).getCount());
+        }
+
+        LicenseVerifier otherVerifier = LicenseVerifier.build(
+                                        verifyConfigPath, "server-2", 2);
+        otherVerifier.manager.metrics(metrics);
+        Assert.assertThrows(IllegalStateException.class, () -> {
+            otherVerifier.verify();
+        });
+        Assert.assertEquals(1L, metrics.counter(
+                                "verify.failure.IllegalStateException"));
+        Assert.assertEquals(1L, metrics.counter(
+                                "callback.failure.IllegalStateException"));
+
+        verifier.manager.snapshotTtl(60000L);
+        verifier.verify();
+        verifier.verify();
+        Assert.assertEquals(1L, metrics.counter(LicenseMetrics.SNAPSHOT_MISS));
+        Assert.assertEquals(1L, metrics.counter(LicenseMetrics.SNAPSHOT_HIT));
+
+        verifier.manager.metrics(LicenseMetrics.NONE);
+        verifier.verify();
+        Assert.assertEquals(1L, metrics.counter(LicenseMetrics.SNAPSHOT_HIT));
+    }
+
+    @Test
+    public void testVerifyBinaryLicense() throws Exception {
+        String createConfigPath = DIR + "create-license.json";
+        TrueLicenseCreator creator = TrueLicenseCreator.build(createConfigPath);
+        creator.format(LicenseFormat.BINARY);
+        creator.create();
+
+        File license = new File(DIR + "hugegraph-evaluation.license");
+        byte[] key = FileUtils.readFileToByteArray(license);
+        Assert.assertEquals(LicenseFormat.BINARY, LicenseFormat.of(key));
+
+        String verifyConfigPath = DIR + "verify-license.json";
+        LicenseVerifier verifier = LicenseVerifier.build(verifyConfigPath,
+                                                         "server-1", 2);
+        verifier.install();
+        verifier.verify();
+        ExtraParamIndex index = verifier.manager.extraParamIndex();
+        Assert.assertEquals(3, index.matchId("server-1").graphs());
+
+        // The legacy XML license is still accepted
+        creator.format(LicenseFormat.XML);
+        creator.create();
+        Assert.assertEquals(LicenseFormat.XML, LicenseFormat.of(
+                            FileUtils.readFileToByteArray(license)));
+        verifier.install();
+        verifier.verify();
+
+        // The binary license with tampered content is rejected
+        key[key.length / 2] ^= 0x01;
+        FileUtils.writeByteArrayToFile(license, key);
+        Assert.assertThrows(Exception.class, () -> {
+            verifier.install();
+        });
+        // The installed license is not changed
+        verifier.verify();
+    }
+
+    @Test
+    public void testVerifyLicenseSignedByEcdsa() throws Exception {
+        String createConfigPath = DIR + "create-license-ec.json";
+        TrueLicenseCreator creator = TrueLicenseCreator.build(createConfigPath);
+        creator.create();
+
+        String verifyConfigPath = DIR + "verify-license-ec.json";
+        LicenseVerifier verifier = LicenseVerifier.build(verifyConfigPath,
+                                                         "server-1", 2);
+        verifier.install();
+        verifier.verify();
+
+        creator.format(LicenseFormat.BINARY);
+        creator.create();
+        File license = new File(DIR + "hugegraph-evaluation.license");
+        Assert.assertEquals(SignatureProviders.SHA256_WITH_ECDSA,
+                            BinaryLicense.parse(FileUtils.readFileToByteArray(
+                                                license)).algorithm());
+        verifier.install();
+        verifier.verify();
+
+        // The license signed by DSA key can't be verified by EC key
+        TrueLicenseCreator dsaCreator = TrueLicenseCreator.build(
+                                        DIR + "create-license.json");
+        dsaCreator.create();
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            verifier.install();
+        }, e -> {
+            Assert.assertContains("The signature algorithm 'SHA1withDSA' " +
+                                  "can't use EC key", e.getMessage());
+        });
     }
 
     @Test
@@ -165,12 +303,290 @@ public class TrueLicenseManagerTest {
         });
     }
 
+    @Test
+    public void testVerifyLicenseWithSnapshot() throws Exception {
+        String createConfigPath = DIR + "create-license.json";
+        TrueLicenseCreator creator = TrueLicenseCreator.build(createConfigPath);
+        creator.create();
+
+        String verifyConfigPath = DIR + "verify-license.json";
+        LicenseVerifier verifier = LicenseVerifier.build(verifyConfigPath,
+                                                         "server-1", 2);
+        verifier.manager.snapshotTtl(60 * 1000L);
+        Assert.assertEquals(60 * 1000L, verifier.manager.snapshotTtl());
+
+        verifier.install();
+        Assert.assertEquals(1, verifier.validatedTimes.get());
+        for (int i = 0; i < 10; i++) {
+            verifier.verify();
+        }
+        // The verified snapshot is reused without calling callback again
+        Assert.assertEquals(1, verifier.validatedTimes.get());
+
+        verifier.uninstall();
+        Assert.assertThrows(NoLicenseInstalledException.class, () -> {
+            verifier.verify();
+        });
+
+        verifier.install();
+        verifier.verify();
+        Assert.assertEquals(2, verifier.validatedTimes.get());
+
+        // Disable snapshot mode, each verify will call callback
+        verifier.manager.snapshotTtl(0L);
+        verifier.verify();
+        verifier.verify();
+        Assert.assertEquals(4, verifier.validatedTimes.get());
+    }
+
+    @Test
+    public void testVerifyLicenseWithFailureBackoff() throws Exception {
+        String createConfigPath = DIR + "create-license.json";
+        TrueLicenseCreator creator = TrueLicenseCreator.build(createConfigPath);
+        creator.create();
+
+        String verifyConfigPath = DIR + "verify-license.json";
+        LicenseVerifier verifier = LicenseVerifier.build(verifyConfigPath,
+                                                         "server-1", 2);
+        verifier.install();
+
+        LicenseVerifier otherVerifier = LicenseVerifier.build(
+                                        verifyConfigPath, "server-2", 2);
+        DefaultLicenseMetrics metrics = new DefaultLicenseMetrics();
+        otherVerifier.manager.metrics(metrics);
+        otherVerifier.manager.failureBackoff(60 * 1000L, 600 * 1000L);
+        Exception error = null;
+        try {
+            otherVerifier.verify();
+            Assert.fail("Expect verification failure");
+        } catch (IllegalStateException e) {
+            error = e;
+        }
+        Exception backoff = null;
+        for (int i = 0; i < 4; i++) {
+            try {
+                otherVerifier.verify();
+                Assert.fail("Expect verification failure");
+            } catch (LicenseBackoffException e) {
+                // The failure is the cause of one stackless error
+                Assert.assertSame(error, e.getCause());
+                Assert.assertEquals(0, e.getStackTrace().length);
+                if (backoff != null) {
+                    Assert.assertSame(backoff, e);
+                }
+                backoff = e;
+            }
+        }
+        // The failure is thrown again without verifying
+        Assert.assertEquals(1, otherVerifier.validatedTimes.get());
+        Assert.assertEquals(4L, metrics.counter(LicenseMetrics.NEGATIVE_HIT));
+        Assert.assertEquals(1L, metrics.counter(
+                                "verify.failure.IllegalStateException"));
+        Assert.assertEquals(4L, metrics.counter(
+                                "verify.failure.LicenseBackoffException"));
+
+        // Re-check at once if the license key is changed
+        creator.create();
+        verifier.install();
+        Assert.assertThrows(IllegalStateException.class, () -> {
+            otherVerifier.verify();
+        });
+        Assert.assertEquals(2, otherVerifier.validatedTimes.get());
+
+        // Re-check after the backoff elapsed
+        otherVerifier.manager.failureBackoff(20L, 40L);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertThrows(IllegalStateException.class, () -> {
+                otherVerifier.verify();
+            });
+            Thread.sleep(50L);
+        }
+        Assert.assertEquals(5, otherVerifier.validatedTimes.get());
+
+        // Disable the negative cache
+        otherVerifier.manager.failureBackoff(0L, 0L);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertThrows(IllegalStateException.class, () -> {
+                otherVerifier.verify();
+            });
+        }
+        Assert.assertEquals(8, otherVerifier.validatedTimes.get());
+    }
+
+    @Test
+    public void testFailureBackoffReusesKeyDigest() throws Exception {
+        TrueLicenseCreator.build(DIR + "create-license.json").create();
+        AtomicInteger loads = new AtomicInteger();
+        MemoryLicenseKeyStorage storage = new MemoryLicenseKeyStorage() {
+            @Override
+            public byte[] load() {
+                loads.incrementAndGet();
+                return super.load();
+            }
+        };
+        AtomicBoolean rejecting = new AtomicBoolean(false);
+        LicenseInstallParam param = readInstallParam(DIR +
+                                                     "verify-license.json");
+        TrueLicenseManager manager = new TrueLicenseManager(
+                                     wrapLicenseParam(param), param,
+                                     params -> {
+            if (rejecting.get()) {
+                throw new IllegalStateException("Rejected");
+            }
+        }, null, storage);
+        manager.failureBackoff(60 * 1000L, 600 * 1000L);
+        manager.installLicense();
+        rejecting.set(true);
+        Assert.assertThrows(IllegalStateException.class, () -> {
+            manager.verifyLicense();
+        });
+
+        int loaded = loads.get();
+        for (int i = 0; i < 10; i++) {
+            Assert.assertThrows(LicenseBackoffException.class, () -> {
+                manager.verifyLicense();
+            });
+        }
+        // The key isn't loaded until the storage version changes
+        Assert.assertEquals(loaded, loads.get());
+
+        // The same key stored again is loaded once and still backed off
+        storage.store(storage.load());
+        loaded = loads.get();
+        for (int i = 0; i < 10; i++) {
+            Assert.assertThrows(LicenseBackoffException.class, () -> {
+                manager.verifyLicense();
+            });
+        }
+        Assert.assertEquals(loaded + 1, loads.get());
+    }
+
+    @Test
+    public void testParseExtraParamsWithCache() throws Exception {
+        String extra = "[{\"id\":\"server-cache\",\"graphs\":3}," +
+                       "{\"id\":\"server-cache-2\",\"graphs\":5}]";
+        List<LicenseExtraParam> params = TrueLicenseManager.parseExtraParams(
+                                         extra);
+        Assert.assertEquals(2, params.size());
+        Assert.assertEquals("server-cache", params.get(0).id());
+        Assert.assertEquals(5, params.get(1).graphs());
+
+        // The same content will share the parsed params
+        String sameExtra = new String(extra.toCharArray());
+        Assert.assertSame(params,
+                          TrueLicenseManager.parseExtraParams(sameExtra));
+        Assert.assertThrows(UnsupportedOperationException.class, () -> {
+            params.clear();
+        });
+
+        Assert.assertThrows(IllegalStateException.class, () -> {
+            TrueLicenseManager.parseExtraParams("[{\"id\": 1");
+        }, e -> {
+            Assert.assertEquals("Failed to read extra params",
+                                e.getMessage());
+        });
+    }
+
+    @Test
+    public void testVerifyLicenseConcurrently() throws Exception {
+        String createConfigPath = DIR + "create-license.json";
+        TrueLicenseCreator creator = TrueLicenseCreator.build(createConfigPath);
+        creator.create();
+
+        int threads = 4;
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        AtomicBoolean verifying = new AtomicBoolean(false);
+        LicenseInstallParam param = readInstallParam(DIR +
+                                                     "verify-license.json");
+        TrueLicenseManager manager = new TrueLicenseManager(
+                                     wrapLicenseParam(param), param,
+                                     params -> {
+            /*
+             * All verifiers must be in the callback at the same time,
+             * otherwise the barrier will be timeout
+             */
+            if (verifying.get()) {
+                barrier.await(10L, TimeUnit.SECONDS);
+            }
+        });
+        manager.installLicense();
+        verifying.set(true);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<LicenseParams>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(pool.submit(manager::verifyLicense));
+            }
+            for (Future<LicenseParams> future : futures) {
+                LicenseParams params = future.get(30L, TimeUnit.SECONDS);
+                Assert.assertEquals("hugegraph-evaluation", params.subject());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testVerifyLicenseWithoutExclusiveLock() throws Exception {
+        String createConfigPath = DIR + "create-license.json";
+        TrueLicenseCreator creator = TrueLicenseCreator.build(createConfigPath);
+        creator.create();
+
+        AtomicBoolean blockNext = new AtomicBoolean(false);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        LicenseInstallParam param = readInstallParam(DIR +
+                                                     "verify-license.json");
+        TrueLicenseManager manager = new TrueLicenseManager(
+                                     wrapLicenseParam(param), param,
+                                     params -> {
+            if (blockNext.compareAndSet(true, false)) {
+                entered.countDown();
+                released.await(10L, TimeUnit.SECONDS);
+            }
+        });
+        DefaultLicenseMetrics metrics = new DefaultLicenseMetrics();
+        manager.metrics(metrics);
+        manager.installLicense();
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            // Hold the verification in the callback, under the read lock
+            blockNext.set(true);
+            Future<LicenseParams> held = pool.submit(manager::verifyLicense);
+            Assert.assertTrue(entered.await(10L, TimeUnit.SECONDS));
+
+            // Another verification neither waits nor blocks
+            Assert.assertEquals("hugegraph-evaluation",
+                                manager.verifyLicense().subject());
+            Assert.assertEquals(0L, metrics.timer(LicenseMetrics.LOCK_WAIT)
+                                           .getCount());
+
+            // While the install waits for the verification to finish
+            Future<LicenseParams> install = pool.submit(
+                                            manager::installLicense);
+            Assert.assertThrows(TimeoutException.class, () -> {
+                install.get(200L, TimeUnit.MILLISECONDS);
+            });
+            released.countDown();
+            held.get(10L, TimeUnit.SECONDS);
+            install.get(10L, TimeUnit.SECONDS);
+            Assert.assertEquals(1L, metrics.timer(LicenseMetrics.LOCK_WAIT)
+                                           .getCount());
+        } finally {
+            released.countDown();
+            pool.shutdownNow();
+        }
+    }
+
     private static class LicenseVerifier {
 
         private final TrueLicenseManager manager;
 
         private final String serverId;
         private final int usingGraphs;
+        private final AtomicInteger validatedTimes;
 
         public LicenseVerifier(LicenseInstallParam param,
                                String serverId, int usingGraphs) {
@@ -178,6 +594,7 @@ public class TrueLicenseManagerTest {
                                                   param, this::validate);
             this.serverId = serverId;
             this.usingGraphs = usingGraphs;
+            this.validatedTimes = new AtomicInteger();
         }
 
         public void install() throws Exception {
@@ -193,6 +610,7 @@ public class TrueLicenseManagerTest {
         }
 
         protected void validate(LicenseParams params) {
+            this.validatedTimes.incrementAndGet();
             // Verify the customized license parameters.
             LicenseExtraParam param = params.matchParam(this.serverId);
             if (param == null) {
@@ -209,21 +627,25 @@ public class TrueLicenseManagerTest {
         public static LicenseVerifier build(String path,
                                             String serverId, int usingGraphs)
                                             throws IOException {
-            File file = FileUtils.getFile(path);
-            String json;
-            try {
-                json = FileUtils.readFileToString(file, CHARSET);
-            } catch (IOException e) {
-                throw new RuntimeException(String.format(
-                          "Failed to read file '%s'", path));
-            }
-            LicenseInstallParam param = MAPPER.readValue(
-                                        json, LicenseInstallParam.class);
+            LicenseInstallParam param = readInstallParam(path);
             return new LicenseVerifier(param, serverId, usingGraphs);
         }
     }
 
-    private static LicenseParam wrapLicenseParam(LicenseInstallParam param) {
+    static LicenseInstallParam readInstallParam(String path)
+                                                throws IOException {
+        File file = FileUtils.getFile(path);
+        String json;
+        try {
+            json = FileUtils.readFileToString(file, CHARSET);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format(
+                      "Failed to read file '%s'", path));
+        }
+        return MAPPER.readValue(json, LicenseInstallParam.class);
+    }
+
+    static LicenseParam wrapLicenseParam(LicenseInstallParam param) {
         Preferences preferences = Preferences.userNodeForPackage(
                                   TrueLicenseCreator.class);
         CipherParam cipherParam = new DefaultCipherParam(
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import com.baidu.hugegraph.testutil.Assert;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+public class TrueLicensePipelineTest {
+
+    private static final String DIR = "src/test/resources/";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @After
+    public void teardown() throws IOException {
+        for (int i = 1; i <= 3; i++) {
+            File lic = new File(DIR + "hugegraph-batch-" + i + ".license");
+            if (lic.exists()) {
+                FileUtils.forceDelete(lic);
+            }
+        }
+    }
+
+    @Test
+    public void testRunPipeline() throws Exception {
+        // Each line of NDJSON is a create param of the batch manifest
+        JsonNode manifest = MAPPER.readTree(FileUtils.readFileToString(
+                            new File(DIR + "create-license-batch.json"),
+                            StandardCharsets.UTF_8));
+        StringBuilder input = new StringBuilder();
+        input.append(MAPPER.writeValueAsString(manifest.get(0))).append('\n');
+        input.append("{invalid json\n");
+        input.append('\n');
+        input.append(MAPPER.writeValueAsString(manifest.get(2))).append('\n');
+        ObjectNode noPath = (ObjectNode) manifest.get(1).deepCopy();
+        noPath.remove("license_path");
+        input.append(MAPPER.writeValueAsString(noPath)).append('\n');
+        input.append(MAPPER.writeValueAsString(manifest.get(1)));
+
+        StringWriter output = new StringWriter();
+        TrueLicensePipeline pipeline = new TrueLicensePipeline(2, 2);
+        TrueLicensePipeline.Summary summary = pipeline.run(
+                new BufferedReader(new StringReader(input.toString())),
+                output);
+        Assert.assertEquals(2L, summary.successes());
+        Assert.assertEquals(3L, summary.failures());
+
+        List<JsonNode> results = new ArrayList<>();
+        for (String line : output.toString().split("\n")) {
+            results.add(MAPPER.readTree(line));
+        }
+        // One result per record in the input order, blank lines skipped
+        Assert.assertEquals(5, results.size());
+        long[] lines = {1L, 2L, 4L, 5L, 6L};
+        boolean[] successes = {true, false, false, false, true};
+        for (int i = 0; i < results.size(); i++) {
+            Assert.assertEquals(lines[i], results.get(i).get("line").asLong());
+            Assert.assertEquals(successes[i],
+                                results.get(i).get("success").asBoolean());
+        }
+        Assert.assertContains("Failed to parse create param",
+                              results.get(1).get("error").asText());
+        Assert.assertContains("Invalid ip address '8.8.8.888'",
+                              results.get(2).get("error").asText());
+        Assert.assertContains("The license_path can't be empty",
+                              results.get(3).get("error").asText());
+
+        Assert.assertTrue(new File(DIR + "hugegraph-batch-1.license")
+                          .exists());
+        Assert.assertTrue(new File(DIR + "hugegraph-batch-2.license")
+                          .exists());
+        Assert.assertFalse(new File(DIR + "hugegraph-batch-3.license")
+                           .exists());
+    }
+
+    @Test
+    public void testRunPipelineWithManyRecords() throws Exception {
+        JsonNode record = MAPPER.readTree(FileUtils.readFileToString(
+                          new File(DIR + "create-license-batch.json"),
+                          StandardCharsets.UTF_8)).get(0);
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            input.append(MAPPER.writeValueAsString(record)).append('\n');
+        }
+
+        StringWriter output = new StringWriter();
+        // The window is much smaller than the input
+        TrueLicensePipeline pipeline = new TrueLicensePipeline(2, 3);
+        TrueLicensePipeline.Summary summary = pipeline.run(
+                new BufferedReader(new StringReader(input.toString())),
+                output);
+        Assert.assertEquals(50L, summary.successes());
+        Assert.assertEquals(0L, summary.failures());
+        Assert.assertEquals(50, output.toString().split("\n").length);
+    }
+}
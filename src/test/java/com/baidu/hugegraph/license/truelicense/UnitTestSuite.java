@@ -25,7 +25,26 @@ import org.junit.runners.Suite;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
     TrueLicenseManagerTest.class,
-    TrueLicenseCreatorTest.class
+    TrueLicenseCreatorTest.class,
+    LicenseContentDecoderTest.class,
+    ExtraParamIndexTest.class,
+    KeyStoreCacheTest.class,
+    DefaultLicenseMetricsTest.class,
+    LicenseVerifySchedulerTest.class,
+    AsyncLicenseManagerTest.class,
+    LicenseKeyStorageTest.class,
+    TrueLicensePipelineTest.class,
+    VerifiedLicenseCacheTest.class,
+    BinaryLicenseTest.class,
+    SignatureProvidersTest.class,
+    HostFingerprintTest.class,
+    SharedLicenseVerdictTest.class,
+    LicenseQuotaTest.class,
+    LicenseWatcherTest.class,
+    LicenseRegistryTest.class,
+    LicenseExpirySchedulerTest.class,
+    LicenseBundleTest.class,
+    ByteBufferPrivacyGuardTest.class
 })
 public class UnitTestSuite {
 }
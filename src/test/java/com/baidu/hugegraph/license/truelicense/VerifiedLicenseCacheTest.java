@@ -0,0 +1,218 @@
+/*
+ * Copyright 2017 HugeGraph Authors
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.baidu.hugegraph.license.truelicense;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Base64;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.baidu.hugegraph.license.LicenseInstallParam;
+import com.baidu.hugegraph.testutil.Assert;
+
+public class VerifiedLicenseCacheTest {
+
+    private static final String DIR = "src/test/resources/";
+
+    private static final byte[] SECRET = "a123456".getBytes(
+                                         StandardCharsets.UTF_8);
+    private static final byte[] LICENSE_KEY = {1, 2, 3};
+    private static final byte[] FINGERPRINT = {4, 5, 6};
+
+    private File cacheDir;
+
+    @Before
+    public void setup() throws IOException {
+        this.cacheDir = Files.createTempDirectory("license-cache").toFile();
+    }
+
+    @After
+    public void teardown() throws IOException {
+        FileUtils.deleteDirectory(this.cacheDir);
+        File lic = new File(DIR + "hugegraph-evaluation.license");
+        if (lic.exists()) {
+            FileUtils.forceDelete(lic);
+        }
+    }
+
+    @Test
+    public void testGetAfterRestart() {
+        VerifiedLicenseCache cache = this.newCache(SECRET);
+        Assert.assertNull(cache.get(LICENSE_KEY, FINGERPRINT));
+        cache.put(LICENSE_KEY, FINGERPRINT, "<java>content</java>");
+        Assert.assertEquals("<java>content</java>",
+                            cache.get(LICENSE_KEY, FINGERPRINT));
+
+        // Like a restarted process
+        VerifiedLicenseCache other = this.newCache(SECRET);
+        Assert.assertEquals("<java>content</java>",
+                            other.get(LICENSE_KEY, FINGERPRINT));
+        Assert.assertNull(other.get(new byte[]{1, 2}, FINGERPRINT));
+        Assert.assertNull(other.get(LICENSE_KEY, new byte[]{4, 5}));
+
+        other.invalidate();
+        Assert.assertFalse(Files.exists(other.file()));
+        Assert.assertNull(this.newCache(SECRET).get(LICENSE_KEY,
+                                                     FINGERPRINT));
+    }
+
+    @Test
+    public void testGetWithForgedEntry() throws IOException {
+        VerifiedLicenseCache cache = this.newCache(SECRET);
+        cache.put(LICENSE_KEY, FINGERPRINT, "<java>content</java>");
+
+        // Signed with another secret
+        Assert.assertNull(this.newCache(new byte[]{7}).get(LICENSE_KEY,
+                                                            FINGERPRINT));
+
+        // Modified content
+        Path file = cache.file();
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            props.load(in);
+        }
+        props.setProperty("content", Base64.getEncoder().encodeToString(
+                                     "<java>forged!</java>".getBytes(
+                                     StandardCharsets.UTF_8)));
+        try (OutputStream out = Files.newOutputStream(file)) {
+            props.store(out, null);
+        }
+        Assert.assertNull(this.newCache(SECRET).get(LICENSE_KEY,
+                                                     FINGERPRINT));
+
+        Files.write(file, "garbage".getBytes(StandardCharsets.UTF_8));
+        Assert.assertNull(this.newCache(SECRET).get(LICENSE_KEY,
+                                                     FINGERPRINT));
+    }
+
+    @Test
+    public void testVerifyLicenseWithCache() throws Exception {
+        TrueLicenseCreator.build(DIR + "create-license.json").create();
+
+        AtomicInteger callbacks = new AtomicInteger();
+        MemoryLicenseKeyStorage storage = new MemoryLicenseKeyStorage();
+        DefaultLicenseMetrics metrics = new DefaultLicenseMetrics();
+        TrueLicenseManager manager = this.newManager(storage, callbacks);
+        manager.metrics(metrics);
+        manager.installLicense();
+        Assert.assertEquals(1L, metrics.counter(LicenseMetrics.CACHE_MISS));
+        Assert.assertEquals(1L, metrics.timer(LicenseMetrics.SIGNATURE)
+                                       .getCount());
+
+        // Like a restarted process, the signature check is skipped
+        DefaultLicenseMetrics restarted = new DefaultLicenseMetrics();
+        TrueLicenseManager other = this.newManager(storage, callbacks);
+        other.metrics(restarted);
+        Assert.assertEquals("hugegraph-evaluation",
+                            other.verifyLicense().subject());
+        Assert.assertEquals(1L, restarted.counter(LicenseMetrics.CACHE_HIT));
+        Assert.assertEquals(0L, restarted.timer(LicenseMetrics.SIGNATURE)
+                                         .getCount());
+        // The callback is still called on every verification
+        Assert.assertEquals(2, callbacks.get());
+
+        // Verify fully if the license key is changed
+        storage.store(new byte[]{1, 2, 3});
+        Assert.assertThrows(Exception.class, () -> {
+            other.verifyLicense();
+        });
+        Assert.assertEquals(1L, restarted.counter(LicenseMetrics.CACHE_MISS));
+    }
+
+    @Test
+    public void testVerifyLicenseBundleWithCache() throws Exception {
+        TrueLicenseCreator creator = TrueLicenseCreator.build(
+                                     DIR + "create-license.json");
+        creator.format(LicenseFormat.BUNDLE);
+        creator.create();
+
+        AtomicInteger callbacks = new AtomicInteger();
+        MemoryLicenseKeyStorage storage = new MemoryLicenseKeyStorage();
+        DefaultLicenseMetrics metrics = new DefaultLicenseMetrics();
+        TrueLicenseManager manager = this.newManager(storage, callbacks);
+        manager.metrics(metrics);
+        manager.serverId("server-1");
+        manager.installLicense();
+        Assert.assertEquals(1L, metrics.counter(LicenseMetrics.CACHE_MISS));
+        // Both the entry and the header are verified
+        Assert.assertEquals(2L, metrics.timer(LicenseMetrics.SIGNATURE)
+                                       .getCount());
+
+        // The whole bundle is cached once, the file isn't written again
+        Path file = manager.verifiedCache().file();
+        Object fileKey = Files.readAttributes(file, BasicFileAttributes.class)
+                              .fileKey();
+        FileTime modified = Files.getLastModifiedTime(file);
+        manager.verifyLicense();
+        manager.verifyLicense();
+        Assert.assertEquals(2L, metrics.counter(LicenseMetrics.CACHE_HIT));
+        Assert.assertEquals(1L, metrics.counter(LicenseMetrics.CACHE_MISS));
+        Assert.assertEquals(2L, metrics.timer(LicenseMetrics.SIGNATURE)
+                                       .getCount());
+        Assert.assertEquals(fileKey, Files.readAttributes(
+                                     file, BasicFileAttributes.class)
+                                          .fileKey());
+        Assert.assertEquals(modified, Files.getLastModifiedTime(file));
+        Assert.assertEquals(3, callbacks.get());
+
+        // The cached entry isn't accepted by another server
+        TrueLicenseManager other = this.newManager(storage, callbacks);
+        other.serverId("server-2");
+        Assert.assertThrows(IllegalStateException.class, () -> {
+            other.verifyLicense();
+        }, e -> {
+            Assert.assertContains("'server-2' is not authorized",
+                                  e.getMessage());
+        });
+    }
+
+    private VerifiedLicenseCache newCache(byte[] secret) {
+        return new VerifiedLicenseCache(this.cacheDir.getPath(),
+                                        "hugegraph", secret);
+    }
+
+    private TrueLicenseManager newManager(LicenseKeyStorage storage,
+                                          AtomicInteger callbacks)
+                                          throws IOException {
+        LicenseInstallParam param = TrueLicenseManagerTest.readInstallParam(
+                                    DIR + "verify-license.json");
+        TrueLicenseManager manager = new TrueLicenseManager(
+                                     TrueLicenseManagerTest.wrapLicenseParam(
+                                     param),
+                                     param, params -> {
+                                         callbacks.incrementAndGet();
+                                     }, null, storage);
+        manager.verifiedCache(this.newCache(SECRET));
+        return manager;
+    }
+}